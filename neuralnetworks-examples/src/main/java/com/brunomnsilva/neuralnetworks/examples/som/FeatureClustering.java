@@ -24,7 +24,6 @@
 
 package com.brunomnsilva.neuralnetworks.examples.som;
 
-import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
 import com.brunomnsilva.neuralnetworks.dataset.DatasetNormalization;
 import com.brunomnsilva.neuralnetworks.dataset.InvalidDatasetFormatException;
@@ -86,14 +85,19 @@ public class FeatureClustering {
     }
 
     private static void featureClustering(SelfOrganizingMap som, String[] inputNames) {
-        int dimensionality = som.getDimensionality();
+        // Extract all component planes in a single pass over the codebook
+        ComponentPlanes planes = ComponentPlanes.fromSelfOrganizingMap(som);
+
+        // Pairwise distances between all planes, computed once and in parallel.
+        // Other distances can be chosen from, e.g., ComponentPlanes.Distance.EUCLIDEAN or COSINE.
+        double[][] distances = planes.distanceMatrix(ComponentPlanes.Distance.PEARSON);
 
         List<ComponentPlaneWrapper> components = new ArrayList<>();
 
         // Create the component planes
-        for(int d=0; d < dimensionality; ++d) {
-            ComponentPlane cp = ComponentPlane.fromSelfOrganizingMap(som, d, inputNames[d]);
-            components.add( new ComponentPlaneWrapper(cp) );
+        ComponentPlane[] componentPlanes = planes.toComponentPlanes(inputNames);
+        for(int d=0; d < componentPlanes.length; ++d) {
+            components.add( new ComponentPlaneWrapper(componentPlanes[d], d, distances) );
         }
         // Hierarchical clustering usage
         HierarchicalClustering<ComponentPlaneWrapper> hclust = new HierarchicalClustering<>("complete");
@@ -137,18 +141,20 @@ public class FeatureClustering {
     private static class ComponentPlaneWrapper implements Clusterable<ComponentPlaneWrapper> {
 
         private final ComponentPlane componentPlane;
+        private final int index;
+        private final double[][] distances;
 
-        public ComponentPlaneWrapper(ComponentPlane componentPlane) {
+        public ComponentPlaneWrapper(ComponentPlane componentPlane, int index, double[][] distances) {
             this.componentPlane = componentPlane;
+            this.index = index;
+            this.distances = distances;
         }
 
         @Override
         public double clusterableDistance(ComponentPlaneWrapper other) {
             // This must implement some kind of metric distance to be used by the hierarchical clustering
-            // procedure. Below are three possible implementation examples you can choose from. You can derive your own.
-            return pearsonDistance(this.componentPlane, other.componentPlane);
-            //return euclideanDistance(this.componentPlane, other.componentPlane);
-            //return cosineDistance(this.componentPlane, other.componentPlane);
+            // procedure. The distances between all planes were already computed.
+            return distances[this.index][other.index];
         }
 
         @Override
@@ -161,49 +167,5 @@ public class FeatureClustering {
             return componentPlane.getName();
         }
 
-        private static double pearsonDistance(ComponentPlane cp1, ComponentPlane cp2) {
-            VectorN Ci = VectorN.fromArray( cp1.flatten() );
-            VectorN Cj = VectorN.fromArray( cp2.flatten() );
-
-            VectorN meanCi = VectorN.rep(Ci.dimensions(), Ci.mean());
-            VectorN meanCj = VectorN.rep(Cj.dimensions(), Cj.mean());
-
-            double stdCi = Ci.std();
-            double stdCj = Cj.std();
-
-            // adjust flattened vectors
-            Ci.subtract(meanCi);
-            Ci.divide(stdCi);
-
-            Cj.subtract(meanCj);
-            Cj.divide(stdCj);
-
-            double dot = Ci.dot(Cj);
-
-            double similarity = dot / Ci.dimensions(); // -1 to 1
-
-            return 1 - similarity;
-        }
-
-        private static double euclideanDistance(ComponentPlane cp1, ComponentPlane cp2) {
-            VectorN Ci = VectorN.fromArray(cp1.flatten());
-            VectorN Cj = VectorN.fromArray(cp2.flatten());
-
-            return Ci.distance(Cj);
-        }
-
-        private static double cosineDistance(ComponentPlane cp1, ComponentPlane cp2) {
-            VectorN Ci = VectorN.fromArray(cp1.flatten());
-            VectorN Cj = VectorN.fromArray(cp2.flatten());
-
-            double dot = Ci.dot(Cj);
-            double magCi = Ci.magnitude();
-            double magCj = Cj.magnitude();
-
-            double similarity = dot / (magCi * magCj); // -1 to 1
-
-            return 1 - similarity;
-        }
-
     }
 }
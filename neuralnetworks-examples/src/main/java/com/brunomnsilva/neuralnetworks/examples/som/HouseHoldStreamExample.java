@@ -24,7 +24,6 @@
 
 package com.brunomnsilva.neuralnetworks.examples.som;
 
-import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.*;
 import com.brunomnsilva.neuralnetworks.models.som.impl.StreamingSOM;
 import com.brunomnsilva.neuralnetworks.models.som.impl.UbiSOM;
@@ -35,6 +34,7 @@ import com.brunomnsilva.neuralnetworks.view.som.SelfOrganizingMapVisualizationFa
 
 import javax.swing.*;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class HouseHoldStreamExample {
 
@@ -50,6 +50,8 @@ public class HouseHoldStreamExample {
             final int height = 40;
             StreamingSOM ubiSOM = new UbiSOM(width, height, dataset.inputDimensionality(),
                     0.1, 0.08, 0.6, 0.2, 0.7, 2000);
+            // Refresh the visualizations at most 25 times per second, without slowing down learning
+            ubiSOM.setAsynchronousNotification(25);
 
 
             // Create window with grid layout
@@ -58,10 +60,19 @@ public class HouseHoldStreamExample {
             window.exitOnClose();
             window.setVisible(true);
 
-            // Run stream full-speed
+            // Run stream full-speed, in micro-batches; observers are notified once per batch
+            final int batchSize = 32;
+            double[][] batch = new double[batchSize][];
+            int count = 0;
             for (DatasetItem item : dataset) {
-                VectorN input = item.getInput();
-                ubiSOM.learn(input);
+                batch[count++] = item.getInput().values();
+                if(count == batchSize) {
+                    ubiSOM.learnBatch(batch);
+                    count = 0;
+                }
+            }
+            if(count > 0) {
+                ubiSOM.learnBatch(Arrays.copyOf(batch, count));
             }
 
             System.out.println("STREAM ENDED");
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.examples.som;
+
+import com.brunomnsilva.neuralnetworks.core.IngestionPipeline;
+import com.brunomnsilva.neuralnetworks.dataset.*;
+import com.brunomnsilva.neuralnetworks.models.som.impl.StreamingSOM;
+import com.brunomnsilva.neuralnetworks.models.som.impl.UbiSOM;
+
+import java.io.IOException;
+
+/**
+ * Feeds a UbiSOM from several producer threads through an {@link IngestionPipeline}, simulating
+ * concurrent sensor feeds. The model is only called from the pipeline's learner thread.
+ */
+public class MultiProducerStreamExample {
+
+    public static void main(String[] args) {
+        try {
+            Dataset dataset = new Dataset("datasets/household_power_sensor.data");
+            DatasetNormalization normalization = new MinMaxNormalization(dataset);
+            normalization.normalize(dataset);
+
+            StreamingSOM ubiSOM = new UbiSOM(20, 40, dataset.inputDimensionality(),
+                    0.1, 0.08, 0.6, 0.2, 0.7, 2000);
+
+            IngestionPipeline pipeline = IngestionPipeline.ofBatches(4096,
+                    IngestionPipeline.Backpressure.DROP_OLDEST, ubiSOM::learnBatch);
+            pipeline.start();
+
+            // Each producer streams an interleaved share of the dataset
+            final int producers = 4;
+            Thread[] threads = new Thread[producers];
+            for (int p = 0; p < producers; p++) {
+                final int offset = p;
+                threads[p] = new Thread(() -> {
+                    for (int i = offset; i < dataset.size(); i += producers) {
+                        pipeline.offer(dataset.get(i).getInput().values());
+                    }
+                });
+                threads[p].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            pipeline.close();
+
+            System.out.println(pipeline);
+            System.out.println("STREAM ENDED");
+
+        } catch (IOException | InvalidDatasetFormatException | InterruptedException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.examples.som;
+
+import com.brunomnsilva.neuralnetworks.core.SweepRunner;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.dataset.*;
+import com.brunomnsilva.neuralnetworks.models.art.StreamART2AWithConceptDrift;
+import com.brunomnsilva.neuralnetworks.models.som.impl.UbiSOM;
+
+import java.io.IOException;
+
+/**
+ * Sweeps UbiSOM and StreamART2A parameters in a single pass over the stream, using a {@link SweepRunner}.
+ * Each sample is normalized once and learned concurrently by all configurations.
+ */
+public class ParameterSweepExample {
+
+    public static void main(String[] args) {
+        try {
+            Dataset dataset = new Dataset("datasets/iris.data");
+            DatasetNormalization normalization = new MinMaxNormalization(dataset);
+            normalization.normalize(dataset);
+            int dimensionality = dataset.inputDimensionality();
+
+            SweepRunner sweep = new SweepRunner(4096);
+
+            for (double sigma : new double[]{0.4, 0.6, 0.8}) {
+                for (int T : new int[]{500, 2000}) {
+                    UbiSOM ubiSOM = new UbiSOM(20, 40, dimensionality, 0.1, 0.08, sigma, 0.2, 0.7, T);
+                    sweep.addBatchModel(String.format("UbiSOM sigma=%.1f T=%d", sigma, T), ubiSOM, UbiSOM::learnBatch)
+                            .metric("QE", UbiSOM::getCurrentQuantizationErrorValue)
+                            .metric("drift", UbiSOM::getCurrentDriftValue);
+                }
+            }
+
+            for (int q : new int[]{25, 50}) {
+                StreamART2AWithConceptDrift art = new StreamART2AWithConceptDrift(dimensionality, 0, 1,
+                        0.05, 1000, q, 1000);
+                sweep.addSampleModel("StreamART2A q=" + q, art, (model, sample) -> model.learn(VectorN.fromArray(sample)))
+                        .metric("QE", StreamART2AWithConceptDrift::getCurrentQuantizationErrorValue);
+            }
+
+            sweep.start();
+
+            // Replay the (small) dataset to simulate a longer stream; it is read once per pass for all models
+            final int passes = 100;
+            for (int p = 0; p < passes; p++) {
+                for (DatasetItem item : dataset) {
+                    sweep.offer(item.getInput().values());
+                }
+            }
+
+            sweep.close();
+
+            for (SweepRunner.Trial<?> trial : sweep.getTrials()) {
+                System.out.println(trial);
+            }
+
+        } catch (IOException | InvalidDatasetFormatException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
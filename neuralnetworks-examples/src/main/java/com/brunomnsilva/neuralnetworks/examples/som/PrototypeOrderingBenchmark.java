@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.examples.som;
+
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.models.som.*;
+import com.brunomnsilva.neuralnetworks.models.som.impl.BasicSOM;
+
+import java.util.Random;
+
+/**
+ * Benchmarks the storage order of the prototypes ({@link PrototypeOrdering}) for large lattices, in the two
+ * access patterns that benefit from locality: windowed neighborhood updates around random BMUs and a U-matrix pass.
+ */
+public class PrototypeOrderingBenchmark {
+
+    private static final int WIDTH = 512;
+    private static final int HEIGHT = 512;
+    private static final int DIMENSIONALITY = 16;
+
+    private static final int NEIGHBORHOOD_RADIUS = 8;
+    private static final int UPDATES = 20000;
+    private static final int REPETITIONS = 5;
+
+    public static void main(String[] args) {
+        System.out.printf("Lattice %d x %d x %d%n", WIDTH, HEIGHT, DIMENSIONALITY);
+
+        for (PrototypeOrdering ordering : PrototypeOrdering.values()) {
+            SelfOrganizingMap som = new BasicSOM(WIDTH, HEIGHT, DIMENSIONALITY,
+                    new SimpleRectangularLattice(), new EuclideanDistance(), ordering);
+
+            // Warm-up
+            neighborhoodUpdates(som, new Random(1));
+            uMatrixPass(som);
+
+            long updatesTime = Long.MAX_VALUE, uMatrixTime = Long.MAX_VALUE;
+            for (int r = 0; r < REPETITIONS; ++r) {
+                long start = System.nanoTime();
+                neighborhoodUpdates(som, new Random(r));
+                updatesTime = Math.min(updatesTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                uMatrixPass(som);
+                uMatrixTime = Math.min(uMatrixTime, System.nanoTime() - start);
+            }
+
+            System.out.printf("%-8s | neighborhood updates: %8.1f ms | U-matrix pass: %8.1f ms%n",
+                    ordering, updatesTime / 1e6, uMatrixTime / 1e6);
+        }
+    }
+
+    private static void neighborhoodUpdates(SelfOrganizingMap som, Random rnd) {
+        double[] input = new double[DIMENSIONALITY];
+
+        for (int u = 0; u < UPDATES; ++u) {
+            for (int d = 0; d < DIMENSIONALITY; ++d) {
+                input[d] = rnd.nextDouble();
+            }
+            int bmuX = rnd.nextInt(WIDTH);
+            int bmuY = rnd.nextInt(HEIGHT);
+
+            for (int x = Math.max(0, bmuX - NEIGHBORHOOD_RADIUS); x <= Math.min(WIDTH - 1, bmuX + NEIGHBORHOOD_RADIUS); ++x) {
+                for (int y = Math.max(0, bmuY - NEIGHBORHOOD_RADIUS); y <= Math.min(HEIGHT - 1, bmuY + NEIGHBORHOOD_RADIUS); ++y) {
+                    VectorN prototype = som.get(x, y).getPrototype();
+                    for (int d = 0; d < DIMENSIONALITY; ++d) {
+                        prototype.set(d, prototype.get(d) + 0.01 * (input[d] - prototype.get(d)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static double uMatrixPass(SelfOrganizingMap som) {
+        MetricDistance metric = som.getMetricDistance();
+        double total = 0;
+
+        for (PrototypeNeuron neuron : som) {
+            int x = neuron.getIndexX();
+            int y = neuron.getIndexY();
+
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if ((dx != 0 || dy != 0) && nx >= 0 && nx < WIDTH && ny >= 0 && ny < HEIGHT) {
+                        total += metric.distanceBetween(neuron.getPrototype(), som.get(nx, ny).getPrototype());
+                    }
+                }
+            }
+        }
+        return total;
+    }
+}
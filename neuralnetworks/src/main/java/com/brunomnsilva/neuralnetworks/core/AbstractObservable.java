@@ -24,24 +24,55 @@
 
 package com.brunomnsilva.neuralnetworks.core;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A base implementation of {@link Observable}, which can be extended by other classes that intend to be observed.
+ * <br/>
+ * By default, observers are notified synchronously, in the thread that calls {@link #notifyObservers()}.
+ * Alternatively, notifications can be made asynchronous and coalesced, see
+ * {@link #setAsynchronousNotification(double)}: the observable is only marked as changed and observers are
+ * notified in another thread, at most at a given rate; a burst of changes results in a single notification.
+ * <br/>
+ * Observers can be added and removed from any thread.
  *
  * @author brunomnsilva
  */
 public class AbstractObservable implements Observable {
 
+    /** Shared dispatcher of asynchronous notifications, when none is specified. */
+    private static final class DefaultDispatcher {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AbstractObservable-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     /** Holds the collection of Observers. */
-    private Set<Observer> observerSet;
+    private final Set<Observer> observerSet;
+
+    /** Dispatcher of asynchronous notifications; null when notifying synchronously. */
+    private volatile ScheduledExecutorService dispatcher;
+    /** Minimum interval between asynchronous notifications. */
+    private volatile long minIntervalNanos;
+    /** Whether a change is pending, i.e., an asynchronous notification is scheduled. */
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    /** Time of the last asynchronous notification. */
+    private volatile long lastDispatchNanos;
 
     /**
      * Default constructor. Initializes an empty collection of Observers.
      */
     public AbstractObservable() {
-        observerSet = new HashSet<>();
+        observerSet = new CopyOnWriteArraySet<>();
+        // As if the last notification happened long ago
+        lastDispatchNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
     }
 
     @Override
@@ -58,9 +89,94 @@ public class AbstractObservable implements Observable {
         observerSet.remove(observer);
     }
 
+    /**
+     * Notifies observers asynchronously, in a shared background thread, coalescing changes so that observers are
+     * notified at most <code>maxNotificationsPerSecond</code> times per second.
+     * @param maxNotificationsPerSecond the maximum notification rate
+     * @throws IllegalArgumentException if maxNotificationsPerSecond is not positive
+     */
+    public void setAsynchronousNotification(double maxNotificationsPerSecond) {
+        setAsynchronousNotification(maxNotificationsPerSecond, DefaultDispatcher.INSTANCE);
+    }
+
+    /**
+     * Notifies observers asynchronously, in the threads of <code>dispatcher</code>, coalescing changes so that
+     * observers are notified at most <code>maxNotificationsPerSecond</code> times per second.
+     * @param maxNotificationsPerSecond the maximum notification rate
+     * @param dispatcher the executor where observers are notified
+     * @throws IllegalArgumentException if maxNotificationsPerSecond is not positive or dispatcher is null
+     */
+    public void setAsynchronousNotification(double maxNotificationsPerSecond, ScheduledExecutorService dispatcher) {
+        Args.requireGreaterThan(maxNotificationsPerSecond, "maxNotificationsPerSecond", 0);
+        Args.nullNotPermitted(dispatcher, "dispatcher");
+
+        this.minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxNotificationsPerSecond);
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Notifies observers synchronously, in the thread that calls {@link #notifyObservers()}. This is the default.
+     */
+    public void setSynchronousNotification() {
+        this.dispatcher = null;
+    }
+
+    /**
+     * Checks whether observers are notified asynchronously.
+     * @return true if observers are notified asynchronously, false otherwise
+     */
+    public boolean isAsynchronousNotification() {
+        return dispatcher != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * With asynchronous notification, this only marks the observable as changed and schedules a notification,
+     * unless one is already pending. An observer that fails does not prevent the others from being notified; its
+     * failure is reported to the uncaught exception handler of the dispatcher thread.
+     * @throws java.util.concurrent.RejectedExecutionException if the dispatcher does not accept the notification;
+     *                                                         a later call will try to schedule it again
+     */
     @Override
     public void notifyObservers() {
+        ScheduledExecutorService dispatcher = this.dispatcher;
+        if (dispatcher == null) {
+            notifyEach(observerSet);
+            return;
+        }
+
+        if (dirty.compareAndSet(false, true)) {
+            long elapsed = System.nanoTime() - lastDispatchNanos;
+            long delay = Math.max(0, minIntervalNanos - elapsed);
+            try {
+                dispatcher.schedule(this::dispatch, delay, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                // Nothing is pending, so the next change must schedule a notification again
+                dirty.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void dispatch() {
+        // Cleared before notifying, so that changes made meanwhile schedule another notification
+        lastDispatchNanos = System.nanoTime();
+        dirty.set(false);
+
+        // Each observer is notified even if others fail; failures would otherwise be lost in the discarded future
+        Thread thread = Thread.currentThread();
         for (Observer o : observerSet) {
+            try {
+                o.onNotify(this);
+            } catch (Throwable e) {
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private void notifyEach(Set<Observer> observers) {
+        for (Observer o : observers) {
             o.onNotify(this);
         }
     }
@@ -56,8 +56,8 @@ public final class Args {
      */
     public static void requireEqual(int value1, String name1, int value2, String name2) {
         if(value1 != value2) {
-            throw new IllegalArgumentException(String.format("Require %d and %d to be equal.",
-                    name1, name2));
+            throw new IllegalArgumentException(String.format("Require %s (%d) and %s (%d) to be equal.",
+                    name1, value1, name2, value2));
         }
     }
 
@@ -137,6 +137,21 @@ public final class Args {
         }
     }
 
+    /**
+     * This method checks if a double value falls within a specified range.
+     * If the value is less than the lower bound or greater than the upper bound, an IllegalArgumentException is thrown.
+     * @param value the double value to check
+     * @param name the name of the value being checked
+     * @param lowerBound the lower bound of the range (inclusive)
+     * @param upperBound the upper bound of the range (inclusive)
+     * @throws IllegalArgumentException if the value is outside the specified range
+     */
+    public static void requireInRange(double value, String name, double lowerBound, double upperBound) {
+        if (!(value >= lowerBound && value <= upperBound)) {
+            throw new IllegalArgumentException("Require '" + name + "' (" + value + ") to be in the range " + lowerBound + " to " + upperBound);
+        }
+    }
+
     /**
      * Checks if the given double value is finite (i.e., not NaN or infinite).
      * @param value the double value to check for finiteness
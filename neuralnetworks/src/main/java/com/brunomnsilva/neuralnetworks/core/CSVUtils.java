@@ -26,6 +26,7 @@ package com.brunomnsilva.neuralnetworks.core;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 /**
  * Utility class for reading and writing CSV files.
@@ -41,8 +42,7 @@ public final class CSVUtils {
      * @throws IOException if the file cannot be written to
      */
     public static void appendValuesToFile(FileWriter fw, double ...values) throws IOException {
-        // By default values are comma-separated
-        appendValuesToFile(fw, ',', values);
+        appendValuesToFile((Writer) fw, values);
     }
 
     /**
@@ -53,6 +53,49 @@ public final class CSVUtils {
      * @throws IOException if the file cannot be written to
      */
     public static void appendValuesToFile(FileWriter fw, char separator, double ...values) throws IOException {
+        appendValuesToFile((Writer) fw, separator, values);
+    }
+
+    /**
+     * Appends a sequence of <i>String</i> values to a CSV file, using the default (comma) value separator.
+     * @param fw the file to write
+     * @param values the sequence of values
+     * @throws IOException if the file cannot be written to
+     */
+    public static void appendValuesToFile(FileWriter fw, String ...values) throws IOException {
+        appendValuesToFile((Writer) fw, values);
+    }
+
+    /**
+     * Appends a sequence of <i>String</i> values to a CSV file, using the specified value separator.
+     * @param fw the file to write
+     * @param separator the value separator to use
+     * @param values the sequence of values
+     * @throws IOException if the file cannot be written to
+     */
+    public static void appendValuesToFile(FileWriter fw, char separator, String ...values) throws IOException {
+        appendValuesToFile((Writer) fw, separator, values);
+    }
+
+    /**
+     * Appends a sequence of <i>double</i> values to a CSV file, using the default (comma) value separator.
+     * @param fw the writer of the file
+     * @param values the sequence of values
+     * @throws IOException if the file cannot be written to
+     */
+    public static void appendValuesToFile(Writer fw, double ...values) throws IOException {
+        // By default values are comma-separated
+        appendValuesToFile(fw, ',', values);
+    }
+
+    /**
+     * Appends a sequence of <i>double</i> values to a CSV file, using the specified value separator.
+     * @param fw the writer of the file
+     * @param separator the value separator to use
+     * @param values the sequence of values
+     * @throws IOException if the file cannot be written to
+     */
+    public static void appendValuesToFile(Writer fw, char separator, double ...values) throws IOException {
         StringBuilder sb = new StringBuilder();
         for(int i=0; i < values.length; ++i) {
             sb.append(values[i]);
@@ -66,23 +109,23 @@ public final class CSVUtils {
 
     /**
      * Appends a sequence of <i>String</i> values to a CSV file, using the default (comma) value separator.
-     * @param fw the file to write
+     * @param fw the writer of the file
      * @param values the sequence of values
      * @throws IOException if the file cannot be written to
      */
-    public static void appendValuesToFile(FileWriter fw, String ...values) throws IOException {
+    public static void appendValuesToFile(Writer fw, String ...values) throws IOException {
         // By default values are comma-separated
         appendValuesToFile(fw, ',', values);
     }
 
     /**
      * Appends a sequence of <i>String</i> values to a CSV file, using the default (comma) value separator.
-     * @param fw the file to write
+     * @param fw the writer of the file
      * @param separator the value separator to use
      * @param values the sequence of values
      * @throws IOException if the file cannot be written to
      */
-    public static void appendValuesToFile(FileWriter fw, char separator, String ...values) throws IOException {
+    public static void appendValuesToFile(Writer fw, char separator, String ...values) throws IOException {
         StringBuilder sb = new StringBuilder();
         for(int i=0; i < values.length; ++i) {
             sb.append(values[i]);
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * An asynchronous ingestion front-end for streaming models, e.g., <code>UbiSOM</code> or <code>StreamART2A</code>.
+ * <br/>
+ * Producers, from any number of threads, {@link #offer(double[])} samples to a lock-free {@link RingBuffer}, which
+ * is drained by a dedicated learner thread. Only the learner thread calls the model, so producers never contend on
+ * model state and the model does not need to be thread-safe.
+ * <br/>
+ * When the buffer is full, or filling up, samples are handled according to the {@link Backpressure} policy.
+ * The pipeline keeps counters of accepted, dropped, learned and lagging (waiting in the buffer) samples.
+ * <br/>
+ * Example:
+ * <pre>
+ * IngestionPipeline pipeline = IngestionPipeline.ofBatches(4096, IngestionPipeline.Backpressure.DROP_OLDEST,
+ *                                                          ubiSOM::learnBatch);
+ * pipeline.start();
+ * // ... producers call pipeline.offer(sample) ...
+ * pipeline.close();
+ * </pre>
+ *
+ * @author brunomnsilva
+ */
+public class IngestionPipeline implements AutoCloseable {
+
+    /**
+     * Policies applied to samples offered while the learner thread is falling behind.
+     */
+    public enum Backpressure {
+        /** Producers wait until there is space in the buffer; no sample is dropped. */
+        BLOCK,
+        /** The oldest sample in the buffer is dropped to make room for the new one. */
+        DROP_OLDEST,
+        /**
+         * Once the buffer is more than half full, new samples are accepted with a probability that decreases
+         * linearly with the free space, down to zero when the buffer is full.
+         */
+        SAMPLING
+    }
+
+    /** Maximum number of samples handed to the learner at once. */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /** Upper bound of the time the learner and blocked producers sleep before checking the buffer again. */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RingBuffer<double[]> buffer;
+    private final Backpressure backpressure;
+    private final Consumer<double[][]> learner;
+    private final Thread learnerThread;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder learned = new LongAdder();
+
+    private volatile boolean learnerWaiting;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a pipeline whose learner receives the drained samples in batches, e.g.,
+     * <code>StreamingSOM::learnBatch</code>.
+     * @param capacity the capacity of the buffer; rounded up to a power of two
+     * @param backpressure the backpressure policy
+     * @param batchLearner the learner of batches of samples, one per row; called from the learner thread only
+     * @return the new pipeline, not yet started
+     */
+    public static IngestionPipeline ofBatches(int capacity, Backpressure backpressure,
+                                              Consumer<double[][]> batchLearner) {
+        return new IngestionPipeline(capacity, backpressure, batchLearner);
+    }
+
+    /**
+     * Creates a pipeline whose learner receives the drained samples one at a time, e.g.,
+     * <code>sample -&gt; art.learn(VectorN.fromArray(sample))</code>.
+     * @param capacity the capacity of the buffer; rounded up to a power of two
+     * @param backpressure the backpressure policy
+     * @param sampleLearner the learner of single samples; called from the learner thread only
+     * @return the new pipeline, not yet started
+     */
+    public static IngestionPipeline ofSamples(int capacity, Backpressure backpressure,
+                                              Consumer<double[]> sampleLearner) {
+        Args.nullNotPermitted(sampleLearner, "sampleLearner");
+
+        return new IngestionPipeline(capacity, backpressure, batch -> {
+            for (double[] sample : batch) {
+                sampleLearner.accept(sample);
+            }
+        });
+    }
+
+    private IngestionPipeline(int capacity, Backpressure backpressure, Consumer<double[][]> learner) {
+        Args.nullNotPermitted(backpressure, "backpressure");
+        Args.nullNotPermitted(learner, "learner");
+
+        this.buffer = new RingBuffer<>(capacity);
+        this.backpressure = backpressure;
+        this.learner = learner;
+
+        this.learnerThread = new Thread(this::drain, "IngestionPipeline-learner");
+        this.learnerThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the learner thread.
+     * @throws IllegalStateException if the pipeline was already started
+     */
+    public void start() {
+        learnerThread.start();
+    }
+
+    /**
+     * Offers a sample to the pipeline. The array is handed to the learner as is, so it must not be modified afterwards.
+     * <br/>
+     * Depending on the backpressure policy, this method may block (<code>BLOCK</code>), evict the oldest waiting
+     * sample (<code>DROP_OLDEST</code>) or drop the offered sample (<code>SAMPLING</code>). A producer interrupted while
+     * blocked stops waiting: the sample is dropped and the interrupt status of the thread is kept.
+     *
+     * @param sample the sample
+     * @return true if the sample was accepted, false if it was dropped
+     * @throws IllegalArgumentException if sample is null
+     * @throws IllegalStateException if the pipeline was closed or its learner failed
+     */
+    public boolean offer(double[] sample) {
+        Args.nullNotPermitted(sample, "sample");
+        ensureOpen();
+
+        switch (backpressure) {
+            case BLOCK:
+                long parkNanos = 1000;
+                while (!buffer.offer(sample)) {
+                    ensureOpen();
+                    if (Thread.interrupted()) {
+                        Thread.currentThread().interrupt();
+                        dropped.increment();
+                        return false;
+                    }
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(MAX_PARK_NANOS, parkNanos * 2);
+                }
+                break;
+
+            case DROP_OLDEST:
+                while (!buffer.offer(sample)) {
+                    if (buffer.poll() != null) {
+                        dropped.increment();
+                        evicted.increment();
+                    }
+                }
+                break;
+
+            case SAMPLING:
+                int capacity = buffer.capacity();
+                int free = capacity - buffer.size();
+                boolean sampled = 2 * free >= capacity
+                        || ThreadLocalRandom.current().nextDouble() * capacity < 2 * free;
+                if (!sampled || !buffer.offer(sample)) {
+                    dropped.increment();
+                    return false;
+                }
+                break;
+        }
+
+        accepted.increment();
+        if (learnerWaiting) {
+            LockSupport.unpark(learnerThread);
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting samples, waits for the learner thread to learn the samples still in the buffer and stops it.
+     * Samples must not be offered concurrently with this call, otherwise they may be left unlearned.
+     * <br/>
+     * If the calling thread is interrupted while waiting, it keeps waiting for the learner thread and its interrupt
+     * status is restored before returning.
+     * @throws IllegalStateException if the learner failed
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(learnerThread);
+
+        boolean interrupted = false;
+        while (learnerThread.isAlive()) {
+            try {
+                learnerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException("Learner failed.", failure);
+        }
+    }
+
+    /**
+     * Returns the number of samples accepted into the buffer.
+     * @return the number of accepted samples
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of samples dropped, either rejected when offered or evicted from the buffer.
+     * @return the number of dropped samples
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of samples already passed to the learner.
+     * @return the number of learned samples
+     */
+    public long getLearnedCount() {
+        return learned.sum();
+    }
+
+    /**
+     * Returns the number of accepted samples still waiting in the buffer, i.e., by how much the learner lags behind
+     * the producers.
+     * @return the number of lagging samples
+     */
+    public long getLaggingCount() {
+        return Math.max(0, accepted.sum() - evicted.sum() - learned.sum());
+    }
+
+    /**
+     * Returns the backpressure policy of this pipeline.
+     * @return the backpressure policy
+     */
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IngestionPipeline{%s, accepted=%d, dropped=%d, learned=%d, lagging=%d}",
+                backpressure, getAcceptedCount(), getDroppedCount(), getLearnedCount(), getLaggingCount());
+    }
+
+    private void ensureOpen() {
+        if (failure != null) {
+            throw new IllegalStateException("Learner failed.", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Pipeline is closed.");
+        }
+    }
+
+    private void drain() {
+        double[][] batch = new double[MAX_BATCH_SIZE][];
+
+        try {
+            while (true) {
+                int count = 0;
+                double[] sample;
+                while (count < MAX_BATCH_SIZE && (sample = buffer.poll()) != null) {
+                    batch[count++] = sample;
+                }
+
+                if (count > 0) {
+                    learner.accept(Arrays.copyOf(batch, count));
+                    learned.add(count);
+                    continue;
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                // Wait for producers; the flag is set before re-checking the buffer so that no wake-up is missed
+                learnerWaiting = true;
+                if (buffer.isEmpty() && !closed) {
+                    LockSupport.parkNanos(MAX_PARK_NANOS);
+                }
+                learnerWaiting = false;
+            }
+        } catch (Throwable e) {
+            // Any failure, including an Error, is reported to producers and to close()
+            failure = e;
+        }
+    }
+}
@@ -24,6 +24,8 @@
 
 package com.brunomnsilva.neuralnetworks.core;
 
+import java.nio.ByteBuffer;
+
 /**
  * A simple implementation of a running mean filter that maintains a buffer of the last <code>windowSize</code> input values
  * and outputs their mean. The filter is updated incrementally and does not require recomputation of the
@@ -31,7 +33,7 @@ package com.brunomnsilva.neuralnetworks.core;
  *
  * @author brunomnsilva
  */
-public class SimpleRunningMeanFilter extends AbstractRunningMeanFilter {
+public class SimpleRunningMeanFilter extends AbstractRunningMeanFilter implements StatefulFilter {
 
     /**
      * Buffer to hold the input values, until a limit of <code>windowSize</code>.
@@ -89,4 +91,34 @@ public class SimpleRunningMeanFilter extends AbstractRunningMeanFilter {
         return lastOutput;
     }
 
+    @Override
+    public int stateSize() {
+        return 2 * Integer.BYTES + (2 + windowSize) * Double.BYTES;
+    }
+
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        buffer.putInt(windowSize);
+        buffer.putInt(bufferIndex);
+        buffer.putDouble(sum);
+        buffer.putDouble(lastOutput);
+
+        buffer.asDoubleBuffer().put(this.buffer);
+        buffer.position(buffer.position() + windowSize * Double.BYTES);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        Args.requireEqual(buffer.getInt(), "state window size", windowSize, "windowSize");
+
+        int index = buffer.getInt();
+        Args.requireInRange(index, "state buffer index", 0, windowSize - 1);
+        bufferIndex = index;
+        sum = buffer.getDouble();
+        lastOutput = buffer.getDouble();
+
+        buffer.asDoubleBuffer().get(this.buffer);
+        buffer.position(buffer.position() + windowSize * Double.BYTES);
+    }
+
 }
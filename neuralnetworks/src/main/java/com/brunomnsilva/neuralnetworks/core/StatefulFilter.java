@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The StatefulFilter interface is implemented by filters whose internal state can be saved to a buffer and
+ * restored later, e.g., to resume a learning process after a restart of the application.
+ *
+ * @see SimpleRunningMeanFilter
+ * @see TripleCascadedMeanFilter
+ *
+ * @author brunomnsilva
+ */
+public interface StatefulFilter {
+
+    /**
+     * Returns the number of bytes written by {@link #writeState(ByteBuffer)}.
+     * @return the size of the state of the filter, in bytes
+     */
+    int stateSize();
+
+    /**
+     * Writes the internal state of the filter, so that it can be later restored with {@link #readState(ByteBuffer)}.
+     * @param buffer the buffer to write to, at its current position
+     */
+    void writeState(ByteBuffer buffer);
+
+    /**
+     * Restores the internal state of the filter, previously written with {@link #writeState(ByteBuffer)}
+     * by a filter of the same type and window size.
+     * @param buffer the buffer to read from, at its current position
+     * @throws IllegalArgumentException if the state was written by a filter with a different window size
+     */
+    void readState(ByteBuffer buffer);
+}
@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Runs a hyperparameter sweep of streaming models in a single pass over the stream.
+ * <br/>
+ * Each sample is read (and normalized) once by the caller and {@link #offer(double[]) offered} to all models. Every
+ * model is fed by its own {@link IngestionPipeline}, hence learns in its own thread, so the configurations of a sweep
+ * are trained concurrently instead of replaying the stream once per configuration. Pipelines use the
+ * <code>BLOCK</code> backpressure policy, so every model learns every sample, in order; the producer advances at the
+ * pace of the slowest model, up to the buffer capacity.
+ * <br/>
+ * The metrics of each model are read through its existing getters, registered with {@link Trial#metric(String,
+ * ToDoubleFunction)}. They are evaluated by the learner thread after each learned batch, so the models need not be
+ * thread-safe.
+ * <br/>
+ * Example:
+ * <pre>
+ * SweepRunner sweep = new SweepRunner(4096);
+ * for (double sigma : new double[]{0.4, 0.6, 0.8}) {
+ *     UbiSOM som = new UbiSOM(20, 40, dim, 0.1, 0.08, sigma, 0.2, 0.7, 2000);
+ *     sweep.addBatchModel("sigma=" + sigma, som, UbiSOM::learnBatch)
+ *          .metric("QE", UbiSOM::getCurrentQuantizationErrorValue)
+ *          .metric("drift", UbiSOM::getCurrentDriftValue);
+ * }
+ * sweep.start();
+ * for (DatasetItem item : dataset) sweep.offer(item.getInput().values());
+ * sweep.close();
+ * sweep.getTrials().forEach(System.out::println);
+ * </pre>
+ *
+ * @author brunomnsilva
+ */
+public class SweepRunner implements AutoCloseable {
+
+    private final int capacity;
+    private final List<Trial<?>> trials;
+    private volatile boolean started;
+
+    /**
+     * Creates a new sweep runner.
+     * @param capacity the buffer capacity of each model's pipeline; rounded up to a power of two
+     */
+    public SweepRunner(int capacity) {
+        Args.requireGreaterEqualThan(capacity, "capacity", 1);
+
+        this.capacity = capacity;
+        this.trials = new ArrayList<>();
+    }
+
+    /**
+     * Adds a model that learns batches of samples, e.g., <code>UbiSOM::learnBatch</code>.
+     * @param label the label of the model's configuration
+     * @param model the model
+     * @param batchLearner the learner of batches of samples, one per row
+     * @param <M> the type of the model
+     * @return the trial of the model, to register its metrics
+     * @throws IllegalStateException if the sweep was already started
+     */
+    public <M> Trial<M> addBatchModel(String label, M model, BiConsumer<M, double[][]> batchLearner) {
+        Args.nullNotPermitted(batchLearner, "batchLearner");
+        return add(label, model, batchLearner);
+    }
+
+    /**
+     * Adds a model that learns one sample at a time, e.g.,
+     * <code>(art, sample) -&gt; art.learn(VectorN.fromArray(sample))</code>.
+     * @param label the label of the model's configuration
+     * @param model the model
+     * @param sampleLearner the learner of single samples
+     * @param <M> the type of the model
+     * @return the trial of the model, to register its metrics
+     * @throws IllegalStateException if the sweep was already started
+     */
+    public <M> Trial<M> addSampleModel(String label, M model, BiConsumer<M, double[]> sampleLearner) {
+        Args.nullNotPermitted(sampleLearner, "sampleLearner");
+        return add(label, model, (m, batch) -> {
+            for (double[] sample : batch) {
+                sampleLearner.accept(m, sample);
+            }
+        });
+    }
+
+    private <M> Trial<M> add(String label, M model, BiConsumer<M, double[][]> batchLearner) {
+        Args.nullNotPermitted(label, "label");
+        Args.nullNotPermitted(model, "model");
+        ensureNotStarted();
+
+        Trial<M> trial = new Trial<>(label, model, batchLearner, capacity);
+        trials.add(trial);
+        return trial;
+    }
+
+    /**
+     * Starts the learner threads of all models.
+     * @throws IllegalStateException if the sweep was already started or has no models
+     */
+    public void start() {
+        ensureNotStarted();
+        if (trials.isEmpty()) {
+            throw new IllegalStateException("No models to sweep.");
+        }
+
+        started = true;
+        for (Trial<?> trial : trials) {
+            trial.pipeline.start();
+        }
+    }
+
+    /**
+     * Offers a sample to all models. The same array is handed to every model, so it must not be modified afterwards;
+     * the models copy it before learning.
+     * <br/>
+     * Blocks while the buffer of any model is full.
+     *
+     * @param sample the sample
+     * @throws IllegalArgumentException if sample is null
+     * @throws IllegalStateException if the sweep was not started, was closed, or a model failed
+     */
+    public void offer(double[] sample) {
+        Args.nullNotPermitted(sample, "sample");
+        if (!started) {
+            throw new IllegalStateException("Sweep not started.");
+        }
+
+        for (Trial<?> trial : trials) {
+            trial.pipeline.offer(sample);
+        }
+    }
+
+    /**
+     * Waits for all models to learn the samples offered so far and stops their learner threads.
+     * If the calling thread is interrupted while waiting, its interrupt status is restored before returning.
+     * @throws IllegalStateException if a model failed
+     */
+    @Override
+    public void close() {
+        IllegalStateException failure = null;
+        for (Trial<?> trial : trials) {
+            try {
+                trial.pipeline.close();
+            } catch (IllegalStateException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Model '" + trial.label + "' failed.", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the trials of this sweep, in the order the models were added.
+     * @return an unmodifiable list of the trials
+     */
+    public List<Trial<?>> getTrials() {
+        return Collections.unmodifiableList(trials);
+    }
+
+    private void ensureNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Sweep already started.");
+        }
+    }
+
+    /**
+     * A model of the sweep, with its configuration label, metrics and throughput.
+     * @param <M> the type of the model
+     */
+    public final class Trial<M> {
+
+        private final String label;
+        private final M model;
+        private final IngestionPipeline pipeline;
+
+        private final Map<String, ToDoubleFunction<M>> metrics;
+        private volatile double[] metricValues;
+
+        /** Time spent by the learner thread in the model, in nanoseconds; written by the learner thread only. */
+        private volatile long busyNanos;
+
+        private Trial(String label, M model, BiConsumer<M, double[][]> batchLearner, int capacity) {
+            this.label = label;
+            this.model = model;
+            this.metrics = new LinkedHashMap<>();
+            this.metricValues = new double[0];
+
+            this.pipeline = IngestionPipeline.ofBatches(capacity, IngestionPipeline.Backpressure.BLOCK, batch -> {
+                long start = System.nanoTime();
+                batchLearner.accept(model, batch);
+                busyNanos += System.nanoTime() - start;
+
+                double[] values = new double[metrics.size()];
+                int i = 0;
+                for (ToDoubleFunction<M> metric : metrics.values()) {
+                    values[i++] = metric.applyAsDouble(model);
+                }
+                metricValues = values;
+            });
+        }
+
+        /**
+         * Registers a metric of the model, read through one of its getters, e.g.,
+         * <code>UbiSOM::getCurrentQuantizationErrorValue</code>.
+         * @param name the name of the metric
+         * @param getter the getter of the metric's current value
+         * @return this trial
+         * @throws IllegalStateException if the sweep was already started
+         */
+        public Trial<M> metric(String name, ToDoubleFunction<M> getter) {
+            Args.nullNotPermitted(name, "name");
+            Args.nullNotPermitted(getter, "getter");
+            ensureNotStarted();
+
+            metrics.put(name, getter);
+            metricValues = new double[metrics.size()];
+            Arrays.fill(metricValues, Double.NaN);
+            return this;
+        }
+
+        /**
+         * Returns the label of the model's configuration.
+         * @return the label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Returns the model. It must only be accessed after the sweep is closed.
+         * @return the model
+         */
+        public M getModel() {
+            return model;
+        }
+
+        /**
+         * Returns the number of samples learned by the model so far.
+         * @return the number of learned samples
+         */
+        public long getLearnedCount() {
+            return pipeline.getLearnedCount();
+        }
+
+        /**
+         * Returns the number of samples waiting to be learned by the model.
+         * @return the number of lagging samples
+         */
+        public long getLaggingCount() {
+            return pipeline.getLaggingCount();
+        }
+
+        /**
+         * Returns the throughput of the model, i.e., learned samples per second of learning time.
+         * @return the throughput, in samples per second; 0 if nothing was learned yet
+         */
+        public double getThroughput() {
+            long nanos = busyNanos;
+            return nanos == 0 ? 0 : pipeline.getLearnedCount() * 1e9 / nanos;
+        }
+
+        /**
+         * Returns the value of a metric after the last learned batch.
+         * @param name the name of the metric
+         * @return the value of the metric; <code>NaN</code> if nothing was learned yet
+         * @throws IllegalArgumentException if the metric is not registered
+         */
+        public double getMetric(String name) {
+            int i = 0;
+            for (String metric : metrics.keySet()) {
+                if (metric.equals(name)) {
+                    return metricValues[i];
+                }
+                i++;
+            }
+            throw new IllegalArgumentException("Unknown metric '" + name + "'.");
+        }
+
+        /**
+         * Returns the values of all metrics after the last learned batch, by name, in registration order.
+         * @return the values of the metrics
+         */
+        public Map<String, Double> getMetrics() {
+            double[] values = metricValues;
+            Map<String, Double> result = new LinkedHashMap<>();
+            int i = 0;
+            for (String metric : metrics.keySet()) {
+                result.put(metric, values[i++]);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(label).append(" {");
+            for (Map.Entry<String, Double> entry : getMetrics().entrySet()) {
+                sb.append(String.format("%s=%.6f, ", entry.getKey(), entry.getValue()));
+            }
+            sb.append(String.format("learned=%d, throughput=%.0f samples/s}", getLearnedCount(), getThroughput()));
+            return sb.toString();
+        }
+    }
+}
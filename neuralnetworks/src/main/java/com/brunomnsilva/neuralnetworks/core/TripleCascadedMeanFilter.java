@@ -24,6 +24,8 @@
 
 package com.brunomnsilva.neuralnetworks.core;
 
+import java.nio.ByteBuffer;
+
 /**
  * The purpose of this class is to approximate a Gaussian filter. Its internal implementation uses a sequence
  * of {@link SimpleRunningMeanFilter} with specific window sizes.
@@ -32,7 +34,7 @@ package com.brunomnsilva.neuralnetworks.core;
  *
  * @author brunomnsilva
  */
-public class TripleCascadedMeanFilter extends AbstractRunningMeanFilter {
+public class TripleCascadedMeanFilter extends AbstractRunningMeanFilter implements StatefulFilter {
 
     public static final double WINDOW_RATIO = 1.2067;
     public static final double CONSTANT = 2.08458;
@@ -70,6 +72,25 @@ public class TripleCascadedMeanFilter extends AbstractRunningMeanFilter {
         return filter3.lastOutput();
     }
 
+    @Override
+    public int stateSize() {
+        return filter1.stateSize() + filter2.stateSize() + filter3.stateSize();
+    }
+
+    @Override
+    public void writeState(ByteBuffer buffer) {
+        filter1.writeState(buffer);
+        filter2.writeState(buffer);
+        filter3.writeState(buffer);
+    }
+
+    @Override
+    public void readState(ByteBuffer buffer) {
+        filter1.readState(buffer);
+        filter2.readState(buffer);
+        filter3.readState(buffer);
+    }
+
     private int[] windowSizes(int windowSize) {
         //R = 1,2067, (1/R + 1/R^2 + 1/R^3)*CONSTANT = N
         //solution: CONSTANT = N / 2,08458
@@ -276,6 +276,17 @@ public class VectorN implements Comparable<VectorN> {
         return vector[index];
     }
 
+    /**
+     * Sets a component of this vector.
+     *
+     * @param index index of the component
+     * @param value the new component value
+     * @throws ArrayIndexOutOfBoundsException if index is invalid for this vector
+     */
+    public void set(int index, double value) {
+        vector[index] = value;
+    }
+
     /**
      * Returns the number of components (dimensions) of this vector.
      *
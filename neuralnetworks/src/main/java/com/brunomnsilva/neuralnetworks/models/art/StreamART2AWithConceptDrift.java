@@ -95,4 +95,12 @@ public class StreamART2AWithConceptDrift extends StreamART2A {
     public TimeSeries getQuantizationErrorTimeSeries() {
         return qeTimeSeries;
     }
+
+    /**
+     * Returns the current (running mean filtered) quantization error.
+     * @return the current quantization error
+     */
+    public double getCurrentQuantizationErrorValue() {
+        return codebookStorageQuantizationError.lastOutput();
+    }
 }
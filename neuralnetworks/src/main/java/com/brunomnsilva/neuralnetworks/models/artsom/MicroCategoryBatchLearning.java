@@ -30,9 +30,9 @@ import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.models.art.MicroCategory;
 import com.brunomnsilva.neuralnetworks.models.art.MicroCategoryUtils;
 import com.brunomnsilva.neuralnetworks.models.som.DecayFunction;
-import com.brunomnsilva.neuralnetworks.models.som.NeighboringFunction;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
+import com.brunomnsilva.neuralnetworks.models.som.WeightedBatchEngine;
+import com.brunomnsilva.neuralnetworks.models.som.WeightedInputs;
 
 import java.util.Collection;
 
@@ -40,7 +40,7 @@ import java.util.Collection;
  * A Batch learning algorithm, but where the input data consists in micro-categories from the StreamART2A model.
  * <br/>
  * The only different to the original Batch learning algorithm is that the prototype's adjustments are weighed by
- * the relative weights of the micro-categories.
+ * the relative weights of the micro-categories. The epochs are performed by a multi-threaded {@link WeightedBatchEngine}.
  *
  * The details of the algorithm can be found in my PhD thesis <a href="http://hdl.handle.net/10362/19974">here</a> at pp. 78.
  *
@@ -88,20 +88,14 @@ public class MicroCategoryBatchLearning {
         Args.requireEqual(som.getDimensionality(), "som.getDimensionality()",
                 first.getPrototype().dimensions(), "microCategory dimensionality");
 
-        // Prepare accumulators
-        VectorN[][] numerator = new VectorN[som.getWidth()][som.getHeight()];
-        double[][] denominator = new double[som.getWidth()][som.getHeight()];
-        for(int i=0; i < numerator.length; ++i) {
-            for(int j=0; j < numerator[0].length; ++j) {
-                numerator[i][j] = VectorN.zeros(som.getDimensionality());
-                denominator[i][j] = 0; // redundant
-            }
-        }
-
         int totalEpochs = orderEpochs + finetuneEpochs;
 
         // Used for scaling the prototype's adjustments
         double maxWeight = MicroCategoryUtils.maximumWeightAmong(microCategories);
+        WeightedInputs inputs = new MicroCategoryInputs(microCategories, maxWeight);
+
+        // The engine holds the (per-worker) accumulators
+        WeightedBatchEngine engine = new WeightedBatchEngine(som);
 
         /* Epoch training, recycling dataset training samples  */
         ConsoleProgressBar progress = new ConsoleProgressBar(totalEpochs);
@@ -112,53 +106,37 @@ public class MicroCategoryBatchLearning {
 
             double sigma = DecayFunction.exponential(iSigma, fSigma, e, orderEpochs);
 
-            for (MicroCategory category : microCategories) { // Epoch begin
-                VectorN input = category.getPrototype();
-                double categoryScaledWeight = category.getWeight() / maxWeight;
-
-                PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
-
-                for (PrototypeNeuron neuron : som) {
-                    double dist = som.latticeDistanceBetween(bmu, neuron);
-                    double neigh = NeighboringFunction.gaussian(dist, sigma);
-                    //double neigh = NeighboringFunction.bubble(dist, sigma);
-
-                    // Expecting a finite [0, 1] neighborhood function value.
-                    // We discard updates when the function value is < 0.01 - this has a negligible
-                    // influence the on final result and is much more performant during convergence phase
-                    if (neigh > 1 || neigh < 0.01 || Double.isInfinite(neigh) || Double.isInfinite(-neigh)) {
-                        continue;
-                    }
-
-                    int x = neuron.getIndexX();
-                    int y = neuron.getIndexY();
-
-                    VectorN acc = input.copy();
-                    acc.multiply( categoryScaledWeight * neigh ); //Scaled
-                    numerator[x][y].add(acc);
-
-                    denominator[x][y] += (categoryScaledWeight * neigh); //Scaled
-                }
-            } // Epoch end
-
-            // Adjust prototypes from accumulators
-            // and reset the later ones for the next epoch
-            for(int i=0; i < numerator.length; ++i) {
-                for(int j=0; j < numerator[0].length; ++j) {
-                    if(denominator[i][j] > 0) {
-                        VectorN prototype = som.get(i, j).getPrototype();
-                        prototype.fill(0); // Just to avoid new allocation
-                        prototype.add(numerator[i][j]);
-                        prototype.divide(denominator[i][j]);
-                    }
-
-                    // Reset accumulators
-                    numerator[i][j].fill(0);
-                    denominator[i][j] = 0;
-                }
-            }
+            engine.epoch(inputs, sigma);
 
             som.prototypesUpdated();
         }
     }
+
+    /**
+     * Indexed view of the micro-categories, weighed by their weight relative to the maximum weight.
+     */
+    private static class MicroCategoryInputs implements WeightedInputs {
+        private final MicroCategory[] categories;
+        private final double maxWeight;
+
+        public MicroCategoryInputs(Collection<MicroCategory> microCategories, double maxWeight) {
+            this.categories = microCategories.toArray(new MicroCategory[0]);
+            this.maxWeight = maxWeight;
+        }
+
+        @Override
+        public int size() {
+            return categories.length;
+        }
+
+        @Override
+        public VectorN inputAt(int index) {
+            return categories[index].getPrototype();
+        }
+
+        @Override
+        public double weightAt(int index) {
+            return categories[index].getWeight() / maxWeight;
+        }
+    }
 }
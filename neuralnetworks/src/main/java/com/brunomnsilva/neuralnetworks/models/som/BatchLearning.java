@@ -26,9 +26,7 @@ package com.brunomnsilva.neuralnetworks.models.som;
 
 import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.core.ConsoleProgressBar;
-import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
-import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
 
 /**
  * An implementation fo the Batch learning algorithm.
@@ -39,6 +37,8 @@ import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
  * <br/>
  * The Batch learning algorithm does not use a <i>learning rate</i> parameter.
  * <br/>
+ * The epochs are performed by a multi-threaded {@link WeightedBatchEngine}, where all inputs have a weight of 1.
+ * <br/>
  * The details of the algorithm can be found in my PhD thesis <a href="http://hdl.handle.net/10362/19974">here</a> at pp. 26.
  *
  * @author brunomnsilva
@@ -47,6 +47,7 @@ public class BatchLearning implements OfflineLearning {
 
     private final double iSigma, fSigma;
     private final int orderEpochs, convergenceEpochs;
+    private final OrderingDataSchedule orderingSchedule;
 
     /**
      * Constructor that initializes the parameters of the training algorithm.
@@ -57,6 +58,20 @@ public class BatchLearning implements OfflineLearning {
      */
     public BatchLearning(double iSigma, double fSigma,
                          int orderEpochs, int convergenceEpochs) {
+        this(iSigma, fSigma, orderEpochs, convergenceEpochs, OrderingDataSchedule.fullPasses());
+    }
+
+    /**
+     * Constructor that initializes the parameters of the training algorithm, with a data schedule
+     * for the ordering phase.
+     * @param iSigma the initial radius of the neighborhood function
+     * @param fSigma the final radius of the neighborhood function
+     * @param orderEpochs how many ordering epochs of the training algorithm are performed
+     * @param convergenceEpochs how many convergence epochs of the training algorithm are performed
+     * @param orderingSchedule the subsampling schedule of the dataset during the ordering epochs
+     */
+    public BatchLearning(double iSigma, double fSigma,
+                         int orderEpochs, int convergenceEpochs, OrderingDataSchedule orderingSchedule) {
         Args.requireNonNegative(iSigma, "iSigma");
         Args.requireNonNegative(fSigma, "fSigma");
         Args.requireNonNegative(orderEpochs, "orderEpochs");
@@ -66,6 +81,9 @@ public class BatchLearning implements OfflineLearning {
         this.fSigma = fSigma;
         this.orderEpochs = orderEpochs;
         this.convergenceEpochs = convergenceEpochs;
+
+        Args.nullNotPermitted(orderingSchedule, "orderingSchedule");
+        this.orderingSchedule = orderingSchedule;
     }
 
     @Override
@@ -73,18 +91,16 @@ public class BatchLearning implements OfflineLearning {
         Args.requireEqual(som.dimensionality, "som.dimensionality",
                 dataset.inputDimensionality(), "dataset.numberInputs()");
 
-        // Prepare accumulators
-        VectorN[][] numerator = new VectorN[som.getWidth()][som.getHeight()];
-        double[][] denominator = new double[som.getWidth()][som.getHeight()];
-        for(int i=0; i < numerator.length; ++i) {
-            for(int j=0; j < numerator[0].length; ++j) {
-                numerator[i][j] = VectorN.zeros(som.getDimensionality());
-                denominator[i][j] = 0; // redundant, but explicit
-            }
-        }
+        // The engine holds the (per-worker) accumulators
+        WeightedBatchEngine engine = new WeightedBatchEngine(som);
+        WeightedInputs inputs = WeightedInputs.of(dataset);
 
+        int nSamples = dataset.size();
         int totalEpochs = orderEpochs + convergenceEpochs;
 
+        // Dataset indices visited in the current epoch; ordering epochs may use a subsample
+        int[] epochIndices = new int[nSamples];
+
         ConsoleProgressBar progress = new ConsoleProgressBar(totalEpochs);
         int epochCount = 1;
 
@@ -95,62 +111,15 @@ public class BatchLearning implements OfflineLearning {
 
             // Ordering phase: Keep learning parameters high
             // Convergence phase: Decrease learning parameters monotonically
-            double sigma;
             if(e <= 0) {
-                sigma = iSigma;
+                int epochSize = orderingSchedule.sampleIndices(nSamples, e + orderEpochs - 1, orderEpochs, epochIndices);
+                engine.epoch(inputs, epochIndices, epochSize, iSigma);
             } else {
-                sigma = DecayFunction.exponential(iSigma, fSigma, e, convergenceEpochs);
+                double sigma = DecayFunction.exponential(iSigma, fSigma, e, convergenceEpochs);
+                engine.epoch(inputs, sigma);
             }
 
-            for (DatasetItem item : dataset) { // Epoch begin
-                VectorN input = item.getInput();
-
-                PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
-
-                for (PrototypeNeuron neuron : som) {
-                    double dist = som.latticeDistanceBetween(bmu, neuron);
-                    double neigh = NeighboringFunction.gaussian(dist, sigma);
-
-                    // Expecting a finite [0, 1] neighborhood function value.
-                    // We discard updates when the function value is < 0.01 - this has a negligible
-                    // influence the on final result and is much more performant during convergence phase
-                    if (neigh > 1 || neigh < 0.01 || Double.isInfinite(neigh) || Double.isInfinite(-neigh)) {
-                        continue;
-                    }
-
-                    int x = neuron.getIndexX();
-                    int y = neuron.getIndexY();
-
-                    VectorN acc = input.copy();
-                    acc.multiply(neigh);
-                    numerator[x][y].add(acc);
-
-                    denominator[x][y] += neigh;
-                }
-            } // Epoch end
-
-            adjustPrototypes(som, numerator, denominator);
-
             som.prototypesUpdated();
         }
     }
-
-    private void adjustPrototypes(SelfOrganizingMap som, VectorN[][] numerator, double[][] denominator) {
-        // Adjust prototypes from accumulators
-        // and reset the later ones for the next epoch
-        for(int i=0; i < numerator.length; ++i) {
-            for(int j=0; j < numerator[0].length; ++j) {
-                if(denominator[i][j] > 0) {
-                    VectorN prototype = som.get(i, j).getPrototype();
-                    prototype.fill(0); // Just to avoid new allocation
-                    prototype.add(numerator[i][j]);
-                    prototype.divide(denominator[i][j]);
-                }
-
-                // Reset accumulators
-                numerator[i][j].fill(0);
-                denominator[i][j] = 0;
-            }
-        }
-    }
 }
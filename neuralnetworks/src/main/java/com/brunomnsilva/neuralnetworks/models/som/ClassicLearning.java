@@ -51,6 +51,7 @@ public class ClassicLearning implements OfflineLearning {
 
     private final double iAlpha, fAlpha, iSigma, fSigma;
     private final int orderEpochs, convergenceEpochs;
+    private final OrderingDataSchedule orderingSchedule;
 
     /**
      * Constructor that initializes the parameters of the training algorithm.
@@ -63,6 +64,22 @@ public class ClassicLearning implements OfflineLearning {
      */
     public ClassicLearning(double iAlpha, double fAlpha, double iSigma, double fSigma,
                            int orderEpochs, int convergenceEpochs) {
+        this(iAlpha, fAlpha, iSigma, fSigma, orderEpochs, convergenceEpochs, OrderingDataSchedule.fullPasses());
+    }
+
+    /**
+     * Constructor that initializes the parameters of the training algorithm, with a data schedule
+     * for the ordering phase.
+     * @param iAlpha the initial learning rate
+     * @param fAlpha the final learning rate
+     * @param iSigma the initial radius of the neighborhood function
+     * @param fSigma the final radius of the neighborhood function
+     * @param orderEpochs how many ordering epochs of the training algorithm are performed
+     * @param convergenceEpochs how many convergence epochs of the training algorithm are performed
+     * @param orderingSchedule the subsampling schedule of the dataset during the ordering epochs
+     */
+    public ClassicLearning(double iAlpha, double fAlpha, double iSigma, double fSigma,
+                           int orderEpochs, int convergenceEpochs, OrderingDataSchedule orderingSchedule) {
         Args.requireNonNegative(iAlpha, "iAlpha");
         Args.requireNonNegative(fAlpha, "fAlpha");
         Args.requireNonNegative(iSigma, "iSigma");
@@ -76,6 +93,9 @@ public class ClassicLearning implements OfflineLearning {
         this.fSigma = fSigma;
         this.orderEpochs = orderEpochs;
         this.convergenceEpochs = convergenceEpochs;
+
+        Args.nullNotPermitted(orderingSchedule, "orderingSchedule");
+        this.orderingSchedule = orderingSchedule;
     }
 
     @Override
@@ -87,6 +107,9 @@ public class ClassicLearning implements OfflineLearning {
         int totalEpochs = orderEpochs + convergenceEpochs;
         int convergenceIterations = nSamples * convergenceEpochs;
 
+        // Dataset indices visited in the current epoch; ordering epochs may use a subsample
+        int[] epochIndices = new int[nSamples];
+
         ConsoleProgressBar progress = new ConsoleProgressBar(totalEpochs);
         int epochCount = 1;
 
@@ -96,7 +119,12 @@ public class ClassicLearning implements OfflineLearning {
 
             progress.update(epochCount++);
 
-            for (DatasetItem item : dataset) {
+            int epochSize = (e <= 0)
+                    ? orderingSchedule.sampleIndices(nSamples, e + orderEpochs - 1, orderEpochs, epochIndices)
+                    : nSamples;
+
+            for (int i = 0; i < epochSize; ++i) {
+                DatasetItem item = dataset.get( (e <= 0) ? epochIndices[i] : i );
 
                 // Ordering phase: Keep learning parameters high
                 // Convergence phase: Decrease learning parameters monotonically
@@ -141,6 +169,7 @@ public class ClassicLearning implements OfflineLearning {
             delta.multiply( alpha * neigh);
 
             neuron.getPrototype().add(delta);
+            som.prototypeAdjusted(neuron);
         }
     }
 }
@@ -0,0 +1,386 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, consistent view of the codebook (prototypes) of a {@link SelfOrganizingMap} at some point in time.
+ * <br/>
+ * Snapshots are published by the model each time {@link SelfOrganizingMap#prototypesUpdated()} is called,
+ * and obtained through {@link SelfOrganizingMap#snapshot()}. Threads other than the one training the model
+ * (e.g., visualizations or scoring threads) should read the model through a snapshot: it is never modified, so
+ * it cannot be observed half-updated, and obtaining it never blocks the learner.
+ * <br/>
+ * Snapshots are copy-on-write epochs: a new snapshot only copies the prototypes adjusted since the previous one
+ * and shares the others. References to the prototypes are kept in fixed-size chunks, and only the chunks holding
+ * adjusted prototypes are copied, so that publishing a snapshot costs little more than the adjusted prototypes,
+ * even for very large lattices.
+ * <br/>
+ * Each snapshot carries the {@link #getUpdatedRegion() region} of the lattice updated since the previous one.
+ * Readers that skip snapshots, e.g., with asynchronous notifications, obtain the region updated since the snapshot
+ * they last read with {@link #changedSince(CodebookSnapshot)}.
+ * <br/>
+ * Prototypes are kept in the storage order of the model, so that {@link #bestMatchingUnitFor(VectorN)} breaks ties
+ * exactly as {@link SelfOrganizingMap#bestMatchingUnitFor(VectorN)}.
+ *
+ * @author brunomnsilva
+ */
+public final class CodebookSnapshot {
+
+    private final long version;
+
+    private final int width;
+    private final int height;
+    private final int dimensionality;
+    private final Lattice lattice;
+    private final MetricDistance metricDistance;
+
+    /** Number of prototypes per chunk (a power of two). */
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    /** Private copies of the prototypes, in storage order, by chunk; never modified nor exposed. */
+    private final VectorN[][] chunks;
+    private final int size;
+    /** Storage indices of the prototypes copied from the model for this snapshot; null if all were. */
+    private final int[] changed;
+    /** Lattice coordinates of each prototype, in storage order. */
+    private final int[] xIndices;
+    private final int[] yIndices;
+    /** Translates a lattice cell (x * height + y) to its storage index; shared with the model, never modified. */
+    private final int[] storageIndex;
+
+    private CodebookSnapshot(long version, SelfOrganizingMap som, VectorN[][] chunks, int[] changed,
+                             int[] xIndices, int[] yIndices, int[] storageIndex) {
+        this.version = version;
+        this.width = som.getWidth();
+        this.height = som.getHeight();
+        this.dimensionality = som.getDimensionality();
+        this.lattice = som.getLattice();
+        this.metricDistance = som.getMetricDistance();
+        this.chunks = chunks;
+        this.size = xIndices.length;
+        this.changed = changed;
+        this.xIndices = xIndices;
+        this.yIndices = yIndices;
+        this.storageIndex = storageIndex;
+    }
+
+    /**
+     * Copies all prototypes of a model. Must be called from the thread that modifies the model.
+     * @param som the model
+     * @param version the version of the snapshot
+     * @param storageIndex the cell to storage index translation of the model
+     * @return the new snapshot
+     */
+    static CodebookSnapshot copyOf(SelfOrganizingMap som, long version, int[] storageIndex) {
+        int size = som.size();
+        VectorN[][] chunks = new VectorN[(size + CHUNK_MASK) >>> CHUNK_SHIFT][];
+        int[] xIndices = new int[size];
+        int[] yIndices = new int[size];
+
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = new VectorN[Math.min(CHUNK_MASK + 1, size - (c << CHUNK_SHIFT))];
+        }
+        for (int i = 0; i < size; i++) {
+            PrototypeNeuron neuron = som.get(i);
+            chunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK] = neuron.getPrototype().copy();
+            xIndices[i] = neuron.getIndexX();
+            yIndices[i] = neuron.getIndexY();
+        }
+
+        return new CodebookSnapshot(version, som, chunks, null, xIndices, yIndices, storageIndex);
+    }
+
+    /**
+     * Creates the next epoch of a snapshot, copying only the given prototypes and the chunks that hold them,
+     * and sharing all others. Must be called from the thread that modifies the model.
+     * @param som the model
+     * @param version the version of the snapshot
+     * @param changed storage indices of the prototypes changed since this snapshot
+     * @param changedCount number of valid entries in <code>changed</code>
+     * @return the new snapshot
+     */
+    CodebookSnapshot next(SelfOrganizingMap som, long version, int[] changed, int changedCount) {
+        VectorN[][] next = chunks.clone();
+        for (int k = 0; k < changedCount; k++) {
+            int i = changed[k];
+            int c = i >>> CHUNK_SHIFT;
+            if (next[c] == chunks[c]) {
+                next[c] = chunks[c].clone();
+            }
+            next[c][i & CHUNK_MASK] = som.get(i).getPrototype().copy();
+        }
+
+        return new CodebookSnapshot(version, som, next, Arrays.copyOf(changed, changedCount),
+                xIndices, yIndices, storageIndex);
+    }
+
+    /**
+     * Returns the version of this snapshot; versions increase with each publication.
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the dimensionality of the prototypes.
+     * @return the dimensionality
+     */
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    /**
+     * Returns the number of prototypes, i.e., <code>width * height</code>.
+     * @return the number of prototypes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the lattice of the model.
+     * @return the lattice
+     */
+    public Lattice getLattice() {
+        return lattice;
+    }
+
+    /**
+     * Returns the metric distance of the model.
+     * @return the metric distance
+     */
+    public MetricDistance getMetricDistance() {
+        return metricDistance;
+    }
+
+    /**
+     * Returns a component of the prototype at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param dimension the component index
+     * @return the component value
+     */
+    public double get(int x, int y, int dimension) {
+        return prototypeAt(indexOf(x, y)).get(dimension);
+    }
+
+    /**
+     * Returns a copy of the prototype at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return a copy of the prototype
+     */
+    public VectorN getPrototype(int x, int y) {
+        return prototypeAt(indexOf(x, y)).copy();
+    }
+
+    /**
+     * Returns the distance between the prototypes at two lattice locations, according to the model's metric.
+     * @param x1 the x coordinate of the first prototype
+     * @param y1 the y coordinate of the first prototype
+     * @param x2 the x coordinate of the second prototype
+     * @param y2 the y coordinate of the second prototype
+     * @return the distance between the prototypes
+     */
+    public double distanceBetweenPrototypes(int x1, int y1, int x2, int y2) {
+        return metricDistance.distanceBetween(prototypeAt(indexOf(x1, y1)), prototypeAt(indexOf(x2, y2)));
+    }
+
+    /**
+     * Returns the distance between an input and the prototype at a lattice location, according to the model's metric.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param input the input vector
+     * @return the distance
+     */
+    public double distanceTo(int x, int y, VectorN input) {
+        return metricDistance.distanceBetween(prototypeAt(indexOf(x, y)), input);
+    }
+
+    /**
+     * Computes the lattice cell (<code>x * height + y</code>) of the best matching unit of an input,
+     * without allocating.
+     * @param input the input vector
+     * @return the lattice cell of the best matching unit
+     */
+    public int bestMatchingCellFor(VectorN input) {
+        int best = 0;
+        double minDist = metricDistance.distanceBetween(chunks[0][0], input);
+
+        for (int c = 0; c < chunks.length; c++) {
+            VectorN[] chunk = chunks[c];
+            for (int j = (c == 0) ? 1 : 0; j < chunk.length; j++) {
+                double dist = metricDistance.distanceBetween(chunk[j], input);
+                if (dist < minDist) {
+                    best = (c << CHUNK_SHIFT) + j;
+                    minDist = dist;
+                }
+            }
+        }
+        return xIndices[best] * height + yIndices[best];
+    }
+
+    /**
+     * Computes the best matching unit of an input.
+     * <br/>
+     * The returned neuron is a detached copy: modifying it does not affect the snapshot nor the model.
+     * @param input the input vector
+     * @return a copy of the best matching unit
+     */
+    public PrototypeNeuron bestMatchingUnitFor(VectorN input) {
+        int cell = bestMatchingCellFor(input);
+        int x = cell / height;
+        int y = cell % height;
+
+        PrototypeNeuron neuron = new PrototypeNeuron(x, y, dimensionality);
+        neuron.setPrototype(prototypeAt(indexOf(x, y)));
+        return neuron;
+    }
+
+    /**
+     * Returns the prototype at a storage position, without copying; it must not be modified.
+     * @param storageIndex the storage position, in [0, size()[
+     * @return the prototype
+     */
+    VectorN prototypeAt(int storageIndex) {
+        return chunks[storageIndex >>> CHUNK_SHIFT][storageIndex & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the prototype at a lattice cell, without copying; it must not be modified.
+     * @param cell the lattice cell (<code>x * height + y</code>)
+     * @return the prototype
+     */
+    VectorN prototypeOfCell(int cell) {
+        return prototypeAt(storageIndex[cell]);
+    }
+
+    /**
+     * Returns the storage position of a lattice cell.
+     * @param cell the lattice cell (<code>x * height + y</code>)
+     * @return the storage position
+     */
+    int storageIndexOf(int cell) {
+        return storageIndex[cell];
+    }
+
+    /**
+     * Returns the region of the lattice updated since the previous snapshot of the model, i.e., whose prototypes
+     * were copied for this snapshot; the whole lattice for the first snapshot and for snapshots published
+     * without signaled adjustments.
+     * @return the updated region
+     */
+    public UpdatedRegion getUpdatedRegion() {
+        if (changed == null) {
+            return UpdatedRegion.full(width, height);
+        }
+
+        long[] bits = new long[(size + 63) >>> 6];
+        for (int i : changed) {
+            int cell = cellAt(i);
+            bits[cell >>> 6] |= 1L << cell;
+        }
+        return UpdatedRegion.of(width, height, bits);
+    }
+
+    /**
+     * Returns the region of the lattice whose prototypes differ between an older snapshot of the same model and this
+     * one, i.e., the union of the regions updated by all snapshots published in between. Only the chunks that are
+     * not shared between both snapshots are compared.
+     * @param older an older (or newer) snapshot of the same model; null for the whole lattice
+     * @return the region updated between both snapshots; empty if they are the same
+     * @throws IllegalArgumentException if the snapshot is of another model
+     */
+    public UpdatedRegion changedSince(CodebookSnapshot older) {
+        if (older == null) {
+            return UpdatedRegion.full(width, height);
+        }
+        if (older.storageIndex != storageIndex) {
+            throw new IllegalArgumentException("The snapshot is of another model.");
+        }
+        if (older.version == version - 1) {
+            return getUpdatedRegion();
+        }
+
+        long[] bits = new long[(size + 63) >>> 6];
+        for (int c = 0; c < chunks.length; c++) {
+            VectorN[] chunk = chunks[c];
+            VectorN[] olderChunk = older.chunks[c];
+            if (chunk == olderChunk) continue;
+
+            for (int j = 0; j < chunk.length; j++) {
+                if (chunk[j] != olderChunk[j]) {
+                    int cell = cellAt((c << CHUNK_SHIFT) + j);
+                    bits[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+        return UpdatedRegion.of(width, height, bits);
+    }
+
+    /**
+     * Returns the lattice cell (<code>x * height + y</code>) of the prototype at a storage position.
+     * @param storageIndex the storage position, in [0, size()[
+     * @return the lattice cell
+     */
+    int cellAt(int storageIndex) {
+        return xIndices[storageIndex] * height + yIndices[storageIndex];
+    }
+
+    private int indexOf(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return storageIndex[x * height + y];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CodebookSnapshot{version=%d, %d x %d x %d}", version, width, height, dimensionality);
+    }
+}
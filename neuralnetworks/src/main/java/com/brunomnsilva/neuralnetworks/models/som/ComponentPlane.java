@@ -33,6 +33,8 @@ import com.brunomnsilva.neuralnetworks.core.Args;
  * <br/>
  * It may be useful for further processing of component planes, e.g., for feature clustering.
  *
+ * @see ComponentPlanes
+ *
  * @author brunomnsilva
  */
 public class ComponentPlane {
@@ -55,6 +57,9 @@ public class ComponentPlane {
 
     /**
      * Creates a component plane instance by extracting a plane from an existing self-organizing map model.
+     * <br/>
+     * To extract all planes, prefer {@link ComponentPlanes#fromSelfOrganizingMap(SelfOrganizingMap)},
+     * which does so in a single pass.
      * @param som the self-organizing map model
      * @param componentIndex the index of the plane from the self-organizing map model
      * @param name the name for the component plane
@@ -63,14 +68,14 @@ public class ComponentPlane {
     public static ComponentPlane fromSelfOrganizingMap(SelfOrganizingMap som, int componentIndex, String name) {
         Args.nullNotPermitted(som, "som");
         Args.nullNotPermitted(name, "name");
-        Args.requireNonNegative(componentIndex, "componentIndex");
+        Args.requireInRange(componentIndex, "componentIndex", 0, som.getDimensionality() - 1);
 
         double[][] values = new double[som.getWidth()][som.getHeight()];
 
         for (PrototypeNeuron p : som) {
             int x = p.getIndexX();
             int y = p.getIndexY();
-            double value = p.getPrototype().values()[componentIndex];
+            double value = p.getPrototype().get(componentIndex);
 
             values[x][y] = value;
         }
@@ -0,0 +1,377 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A columnar (transposed) copy of the codebook of a self-organizing map, i.e., all of its component planes.
+ * <br/>
+ * Plane <code>d</code> holds the <code>d</code>-th component of every prototype in a contiguous array, indexed by
+ * lattice cell (<code>x * height + y</code>). All planes are extracted in a single pass over the codebook, instead
+ * of one pass per plane as with {@link ComponentPlane#fromSelfOrganizingMap(SelfOrganizingMap, int, String)}.
+ * <br/>
+ * The planes can be compared pairwise with {@link #correlationMatrix()} and {@link #distanceMatrix(Distance)},
+ * e.g., for feature clustering; the pairs are computed in parallel.
+ * <br/>
+ * Instances are immutable.
+ *
+ * @see ComponentPlane
+ *
+ * @author brunomnsilva
+ */
+public final class ComponentPlanes {
+
+    /** Number of lattice cells per parallel extraction task. */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Distances between two component planes.
+     */
+    public enum Distance {
+        /** One minus the Pearson correlation of the planes, in [0, 2]. */
+        PEARSON,
+        /** Euclidean distance between the planes. */
+        EUCLIDEAN,
+        /** One minus the cosine similarity of the planes, in [0, 2]. */
+        COSINE
+    }
+
+    private final int width;
+    private final int height;
+    /** planes[d][x * height + y] */
+    private final double[][] planes;
+
+    private ComponentPlanes(int width, int height, double[][] planes) {
+        this.width = width;
+        this.height = height;
+        this.planes = planes;
+    }
+
+    /**
+     * Extracts all component planes of a self-organizing map. Must not be called while the model is learning;
+     * use {@link #fromSnapshot(CodebookSnapshot)} in that case.
+     * @param som the self-organizing map
+     * @return the component planes
+     */
+    public static ComponentPlanes fromSelfOrganizingMap(SelfOrganizingMap som) {
+        Args.nullNotPermitted(som, "som");
+
+        int height = som.getHeight();
+        double[][] planes = new double[som.getDimensionality()][som.size()];
+
+        forEachCell(som.size(), i -> {
+            PrototypeNeuron neuron = som.get(i);
+            int cell = neuron.getIndexX() * height + neuron.getIndexY();
+            VectorN prototype = neuron.getPrototype();
+            for (int d = 0; d < planes.length; d++) {
+                planes[d][cell] = prototype.get(d);
+            }
+        });
+
+        return new ComponentPlanes(som.getWidth(), height, planes);
+    }
+
+    /**
+     * Extracts all component planes of a codebook snapshot.
+     * @param snapshot the codebook snapshot
+     * @return the component planes
+     */
+    public static ComponentPlanes fromSnapshot(CodebookSnapshot snapshot) {
+        Args.nullNotPermitted(snapshot, "snapshot");
+
+        double[][] planes = new double[snapshot.getDimensionality()][snapshot.size()];
+
+        forEachCell(snapshot.size(), i -> {
+            int cell = snapshot.cellAt(i);
+            VectorN prototype = snapshot.prototypeAt(i);
+            for (int d = 0; d < planes.length; d++) {
+                planes[d][cell] = prototype.get(d);
+            }
+        });
+
+        return new ComponentPlanes(snapshot.getWidth(), snapshot.getHeight(), planes);
+    }
+
+    /**
+     * Extracts all component planes of a memory-mapped codebook.
+     * @param codebook the memory-mapped codebook
+     * @return the component planes
+     */
+    public static ComponentPlanes fromMappedCodebook(MappedCodebook codebook) {
+        Args.nullNotPermitted(codebook, "codebook");
+
+        int width = codebook.getWidth();
+        int height = codebook.getHeight();
+        double[][] planes = new double[codebook.getDimensionality()][width * height];
+
+        forEachCell(width * height, cell -> {
+            int x = cell / height;
+            int y = cell % height;
+            for (int d = 0; d < planes.length; d++) {
+                planes[d][cell] = codebook.get(x, y, d);
+            }
+        });
+
+        return new ComponentPlanes(width, height, planes);
+    }
+
+    private static void forEachCell(int size, IntConsumer action) {
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            for (int i = c * CHUNK_SIZE, end = Math.min(size, (c + 1) * CHUNK_SIZE); i < end; i++) {
+                action.accept(i);
+            }
+        });
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of component planes, i.e., the dimensionality of the prototypes.
+     * @return the number of component planes
+     */
+    public int getDimensionality() {
+        return planes.length;
+    }
+
+    /**
+     * Returns a component of the prototype at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param dimension the component index
+     * @return the component value
+     */
+    public double get(int x, int y, int dimension) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+        Args.requireInRange(dimension, "dimension", 0, planes.length - 1);
+
+        return planes[dimension][x * height + y];
+    }
+
+    /**
+     * Returns a copy of a component plane, indexed by lattice cell (<code>x * height + y</code>).
+     * @param dimension the component index
+     * @return a copy of the component plane
+     */
+    public double[] getPlane(int dimension) {
+        Args.requireInRange(dimension, "dimension", 0, planes.length - 1);
+
+        return planes[dimension].clone();
+    }
+
+    /**
+     * Creates a {@link ComponentPlane} from one of the planes.
+     * @param dimension the component index
+     * @param name the name for the component plane
+     * @return a component plane
+     */
+    public ComponentPlane toComponentPlane(int dimension, String name) {
+        Args.requireInRange(dimension, "dimension", 0, planes.length - 1);
+
+        double[] plane = planes[dimension];
+        double[][] values = new double[width][height];
+        for (int x = 0; x < width; x++) {
+            System.arraycopy(plane, x * height, values[x], 0, height);
+        }
+
+        return new ComponentPlane(values, name);
+    }
+
+    /**
+     * Creates a {@link ComponentPlane} for each of the planes.
+     * @param names the names of the component planes; must match the dimensionality
+     * @return the component planes, by component index
+     */
+    public ComponentPlane[] toComponentPlanes(String[] names) {
+        Args.nullNotPermitted(names, "names");
+        Args.requireEqual(names.length, "names.length", planes.length, "dimensionality");
+
+        ComponentPlane[] componentPlanes = new ComponentPlane[planes.length];
+        for (int d = 0; d < planes.length; d++) {
+            componentPlanes[d] = toComponentPlane(d, names[d]);
+        }
+        return componentPlanes;
+    }
+
+    /**
+     * Computes the Pearson correlation between every pair of component planes.
+     * <br/>
+     * The correlation of a constant plane with any other plane is undefined and reported as zero;
+     * the diagonal is always one.
+     * @return the symmetric <code>dimensionality x dimensionality</code> correlation matrix
+     */
+    public double[][] correlationMatrix() {
+        int size = width * height;
+        double[] means = new double[planes.length];
+        double[] norms = new double[planes.length];
+
+        IntStream.range(0, planes.length).parallel().forEach(d -> {
+            double[] plane = planes[d];
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += plane[i];
+            }
+            double mean = sum / size;
+
+            double squares = 0;
+            for (int i = 0; i < size; i++) {
+                double diff = plane[i] - mean;
+                squares += diff * diff;
+            }
+            means[d] = mean;
+            norms[d] = Math.sqrt(squares);
+        });
+
+        return pairwise(1, (a, b) -> {
+            if (norms[a] == 0 || norms[b] == 0) {
+                return 0;
+            }
+            double[] pa = planes[a], pb = planes[b];
+            double ma = means[a], mb = means[b];
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += (pa[i] - ma) * (pb[i] - mb);
+            }
+            // Rounding may slightly exceed the valid range
+            return Math.max(-1, Math.min(1, sum / (norms[a] * norms[b])));
+        });
+    }
+
+    /**
+     * Computes the distance between every pair of component planes.
+     * <br/>
+     * For {@link Distance#PEARSON} and {@link Distance#COSINE}, the similarity of a constant (respectively, zero)
+     * plane with any other plane is reported as zero, i.e., their distance is one.
+     * @param distance the distance between planes
+     * @return the symmetric <code>dimensionality x dimensionality</code> distance matrix, with a zero diagonal
+     */
+    public double[][] distanceMatrix(Distance distance) {
+        Args.nullNotPermitted(distance, "distance");
+
+        int size = width * height;
+        switch (distance) {
+            case PEARSON: {
+                double[][] matrix = correlationMatrix();
+                for (double[] row : matrix) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] = 1 - row[j];
+                    }
+                }
+                return matrix;
+            }
+            case EUCLIDEAN:
+                return pairwise(0, (a, b) -> {
+                    double[] pa = planes[a], pb = planes[b];
+                    double sum = 0;
+                    for (int i = 0; i < size; i++) {
+                        double diff = pa[i] - pb[i];
+                        sum += diff * diff;
+                    }
+                    return Math.sqrt(sum);
+                });
+            case COSINE: {
+                double[] norms = new double[planes.length];
+                IntStream.range(0, planes.length).parallel().forEach(d -> norms[d] = Math.sqrt(dot(d, d)));
+
+                return pairwise(0, (a, b) -> {
+                    if (norms[a] == 0 || norms[b] == 0) {
+                        return 1;
+                    }
+                    double similarity = dot(a, b) / (norms[a] * norms[b]);
+                    return 1 - Math.max(-1, Math.min(1, similarity));
+                });
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported distance: " + distance);
+        }
+    }
+
+    private double dot(int a, int b) {
+        double[] pa = planes[a], pb = planes[b];
+        double sum = 0;
+        for (int i = 0; i < pa.length; i++) {
+            sum += pa[i] * pb[i];
+        }
+        return sum;
+    }
+
+    /** A symmetric function of two planes. */
+    private interface PlanePair {
+        double apply(int a, int b);
+    }
+
+    /**
+     * Evaluates a symmetric function for every pair of distinct planes, in parallel.
+     * Each pair is computed sequentially, so the result does not depend on the number of threads.
+     */
+    private double[][] pairwise(double diagonal, PlanePair function) {
+        int n = planes.length;
+        int pairs = n * (n - 1) / 2;
+        int[] first = new int[pairs];
+        int[] second = new int[pairs];
+        for (int a = 0, p = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++, p++) {
+                first[p] = a;
+                second[p] = b;
+            }
+        }
+
+        double[][] matrix = new double[n][n];
+        IntStream.range(0, pairs).parallel().forEach(p -> {
+            double value = function.apply(first[p], second[p]);
+            matrix[first[p]][second[p]] = value;
+            matrix[second[p]][first[p]] = value;
+        });
+        for (int d = 0; d < n; d++) {
+            matrix[d][d] = diagonal;
+        }
+        return matrix;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ComponentPlanes{%d x %d, %d planes}", width, height, planes.length);
+    }
+}
@@ -0,0 +1,761 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.dataset.Dataset;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, compiled form of a trained self-organizing map for scoring inputs, i.e., computing their best
+ * matching unit (BMU), quantization error and whether they are anomalous.
+ * <br/>
+ * Unlike a {@link SelfOrganizingMap}, an inference model is never modified and not observable, so that any number
+ * of threads may score concurrently. Scoring allocates nothing: inputs are plain arrays and results are written into
+ * a caller-provided {@link Score} (or arrays, for batches), which each thread can reuse.
+ * <br/>
+ * The prototypes are held in a flat array, with their precomputed norms. For the {@link EuclideanDistance} and the
+ * {@link ManhattanDistance}, the prototypes are sorted by norm and searched outwards from the norm of the input;
+ * since <code>|norm(input) - norm(prototype)|</code> is a lower bound of their distance, the search stops as soon as
+ * no remaining prototype can be closer, and each distance is abandoned as soon as it exceeds the best one.
+ * For the {@link CosineDistance}, the norms of the prototypes are not recomputed for each input. Other metrics are
+ * supported through their {@link MetricDistance#distanceBetween(VectorN, VectorN)}.
+ * <br/>
+ * The search is exact: the BMUs and distances are the same as those of the model, including how ties are broken.
+ * <br/>
+ * Instances are created through a {@link Builder}, from a model, a {@link CodebookSnapshot} or a
+ * {@link MappedCodebook}, optionally with a label for each neuron and an anomaly threshold.
+ *
+ * @author brunomnsilva
+ */
+public final class InferenceModel {
+
+    /** Number of components summed between checks of a partial distance against the best one. */
+    private static final int BLOCK = 8;
+
+    /** How the distances between inputs and prototypes are computed. */
+    private enum Kernel { EUCLIDEAN, MANHATTAN, COSINE, GENERIC }
+
+    private final int width;
+    private final int height;
+    private final int dimensionality;
+    private final int size;
+    private final MetricDistance metricDistance;
+    private final Kernel kernel;
+
+    /** Whether the prototypes are sorted by norm; otherwise they are in storage order. */
+    private final boolean normOrdered;
+    /** Prototypes in search order, one after the other: codebook[k * dimensionality + d]. */
+    private final double[] codebook;
+    /** Norm of each prototype, in search order: L1 for the Manhattan distance, L2 otherwise. */
+    private final double[] norms;
+    /** Storage index of each prototype, in search order; breaks ties. */
+    private final int[] storage;
+    /** Search position of each storage index. */
+    private final int[] positions;
+    /** Lattice cell (x * height + y) of each prototype, in search order. */
+    private final int[] cells;
+
+    /** Prototypes in storage order, only for generic metrics. */
+    private final VectorN[] prototypes;
+    /** Per-thread input vector, only for generic metrics. */
+    private final ThreadLocal<VectorN> inputs;
+
+    /** Label of each lattice cell; may be null. */
+    private final String[] labels;
+    private final double anomalyThreshold;
+
+    private InferenceModel(Builder builder) {
+        this.width = builder.width;
+        this.height = builder.height;
+        this.dimensionality = builder.dimensionality;
+        this.size = width * height;
+        this.metricDistance = builder.metricDistance;
+        this.labels = builder.labels;
+
+        Class<?> metricClass = metricDistance.getClass();
+        if (metricClass == EuclideanDistance.class) {
+            kernel = Kernel.EUCLIDEAN;
+        } else if (metricClass == ManhattanDistance.class) {
+            kernel = Kernel.MANHATTAN;
+        } else if (metricClass == CosineDistance.class) {
+            kernel = Kernel.COSINE;
+        } else {
+            kernel = Kernel.GENERIC;
+        }
+
+        double[] storageNorms = new double[size];
+        boolean finite = true;
+        for (int i = 0; i < size; i++) {
+            storageNorms[i] = norm(builder.codebook, i * dimensionality);
+            finite &= Double.isFinite(storageNorms[i]);
+        }
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        normOrdered = finite && (kernel == Kernel.EUCLIDEAN || kernel == Kernel.MANHATTAN);
+        if (normOrdered) {
+            Arrays.sort(order, (a, b) -> Double.compare(storageNorms[a], storageNorms[b]));
+        }
+
+        codebook = new double[size * dimensionality];
+        norms = new double[size];
+        storage = new int[size];
+        positions = new int[size];
+        cells = new int[size];
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            System.arraycopy(builder.codebook, i * dimensionality, codebook, k * dimensionality, dimensionality);
+            norms[k] = storageNorms[i];
+            storage[k] = i;
+            positions[i] = k;
+            cells[k] = builder.cells[i];
+        }
+
+        if (kernel == Kernel.GENERIC) {
+            prototypes = new VectorN[size];
+            for (int i = 0; i < size; i++) {
+                prototypes[i] = VectorN.fromArray(Arrays.copyOfRange(builder.codebook,
+                        i * dimensionality, (i + 1) * dimensionality));
+            }
+            inputs = ThreadLocal.withInitial(() -> VectorN.zeros(dimensionality));
+        } else {
+            prototypes = null;
+            inputs = null;
+        }
+
+        this.anomalyThreshold = (builder.calibration != null)
+                ? calibrateThreshold(builder.calibration, builder.quantile)
+                : builder.anomalyThreshold;
+    }
+
+    /**
+     * Creates an inference model of a self-organizing map, without labels nor anomaly threshold.
+     * @param som the self-organizing map
+     * @return the inference model
+     */
+    public static InferenceModel of(SelfOrganizingMap som) {
+        return new Builder(som).build();
+    }
+
+    /**
+     * Scores an input. Thread-safe and allocation-free.
+     * @param input the input, with <code>getDimensionality()</code> components
+     * @param result where the score is written
+     * @return <code>result</code>
+     */
+    public Score score(double[] input, Score result) {
+        Args.nullNotPermitted(result, "result");
+        requireInput(input);
+
+        int k = search(input);
+        double error = distance(k, input);
+        int cell = cells[k];
+
+        result.cell = cell;
+        result.x = cell / height;
+        result.y = cell % height;
+        result.quantizationError = error;
+        result.anomaly = error > anomalyThreshold;
+        result.label = (labels != null) ? labels[cell] : null;
+        return result;
+    }
+
+    /**
+     * Scores a batch of inputs, in the calling thread. Thread-safe and allocation-free.
+     * @param inputs the inputs, each with <code>getDimensionality()</code> components
+     * @param bmuCells where the lattice cell (<code>x * height + y</code>) of the BMU of each input is written
+     * @param quantizationErrors where the quantization error of each input is written; may be null
+     * @param anomalies where the anomaly flag of each input is written; may be null
+     */
+    public void score(double[][] inputs, int[] bmuCells, double[] quantizationErrors, boolean[] anomalies) {
+        Args.nullNotPermitted(inputs, "inputs");
+        Args.nullNotPermitted(bmuCells, "bmuCells");
+        Args.requireGreaterEqualThan(bmuCells.length, "bmuCells.length", inputs.length);
+        if (quantizationErrors != null) {
+            Args.requireGreaterEqualThan(quantizationErrors.length, "quantizationErrors.length", inputs.length);
+        }
+        if (anomalies != null) {
+            Args.requireGreaterEqualThan(anomalies.length, "anomalies.length", inputs.length);
+        }
+
+        for (int i = 0; i < inputs.length; i++) {
+            double[] input = inputs[i];
+            requireInput(input);
+
+            int k = search(input);
+            bmuCells[i] = cells[k];
+            if (quantizationErrors != null || anomalies != null) {
+                double error = distance(k, input);
+                if (quantizationErrors != null) {
+                    quantizationErrors[i] = error;
+                }
+                if (anomalies != null) {
+                    anomalies[i] = error > anomalyThreshold;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the lattice cell (<code>x * height + y</code>) of the BMU of an input. Thread-safe and allocation-free.
+     * @param input the input, with <code>getDimensionality()</code> components
+     * @return the lattice cell of the BMU
+     */
+    public int bestMatchingCellFor(double[] input) {
+        requireInput(input);
+
+        return cells[search(input)];
+    }
+
+    /**
+     * Computes the quantization error of an input, i.e., its distance to its BMU. Thread-safe and allocation-free.
+     * @param input the input, with <code>getDimensionality()</code> components
+     * @return the quantization error
+     */
+    public double quantizationErrorFor(double[] input) {
+        requireInput(input);
+
+        return distance(search(input), input);
+    }
+
+    private void requireInput(double[] input) {
+        Args.nullNotPermitted(input, "input");
+        Args.requireEqual(input.length, "input.length", dimensionality, "dimensionality");
+    }
+
+    /**
+     * Returns the search position of the BMU of an input.
+     */
+    private int search(double[] input) {
+        if (normOrdered) {
+            double inputNorm = norm(input, 0);
+            if (Double.isFinite(inputNorm)) {
+                return normSearch(input, inputNorm);
+            }
+        }
+        return linearSearch(input);
+    }
+
+    /**
+     * Visits the prototypes in storage order and keeps the first closest one, exactly as
+     * {@link SelfOrganizingMap#bestMatchingUnitFor(VectorN)}.
+     */
+    private int linearSearch(double[] input) {
+        if (kernel == Kernel.GENERIC) {
+            VectorN vector = inputs.get();
+            for (int d = 0; d < dimensionality; d++) {
+                vector.set(d, input[d]);
+            }
+
+            int best = 0;
+            double minDist = metricDistance.distanceBetween(prototypes[0], vector);
+            for (int i = 1; i < size; i++) {
+                double dist = metricDistance.distanceBetween(prototypes[i], vector);
+                if (dist < minDist) {
+                    best = i;
+                    minDist = dist;
+                }
+            }
+            return positions[best];
+        }
+
+        double inputNorm = (kernel == Kernel.COSINE) ? norm(input, 0) : 0;
+
+        int best = positions[0];
+        double minDist = distance(best, input, inputNorm);
+        for (int i = 1; i < size; i++) {
+            int k = positions[i];
+            double dist = distance(k, input, inputNorm);
+            if (dist < minDist) {
+                best = k;
+                minDist = dist;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Visits the prototypes by increasing difference between their norm and the norm of the input, until that
+     * difference, a lower bound of their distance, exceeds the best distance found. Ties are broken by storage order,
+     * so the result is the same as {@link #linearSearch(double[])} for finite inputs and prototypes.
+     */
+    private int normSearch(double[] input, double inputNorm) {
+        // Bound of the rounding errors of the norms and distances, relative to their magnitude
+        double tolerance = 2 * (dimensionality + 4) * Math.ulp(1.0);
+        boolean euclidean = (kernel == Kernel.EUCLIDEAN);
+
+        int hi = lowerBound(norms, inputNorm);
+        int lo = hi - 1;
+
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        // Largest partial sum that may still match bestDist (squared distances, for the Euclidean distance)
+        double limit = Double.POSITIVE_INFINITY;
+
+        while (lo >= 0 || hi < size) {
+            double gapLo = (lo >= 0) ? inputNorm - norms[lo] : Double.POSITIVE_INFINITY;
+            double gapHi = (hi < size) ? norms[hi] - inputNorm : Double.POSITIVE_INFINITY;
+
+            int k;
+            double gap;
+            if (gapLo <= gapHi) {
+                k = lo--;
+                gap = gapLo;
+            } else {
+                k = hi++;
+                gap = gapHi;
+            }
+
+            // The other side is even further away
+            if (gap - tolerance * (inputNorm + norms[k]) > bestDist) {
+                break;
+            }
+
+            double partial = euclidean ? partialSquaredEuclidean(k, input, limit) : partialManhattan(k, input, limit);
+            if (partial > limit) {
+                continue;
+            }
+
+            double dist = euclidean ? StrictMath.sqrt(partial) : partial;
+            if (best < 0 || dist < bestDist || (dist == bestDist && storage[k] < storage[best])) {
+                best = k;
+                bestDist = dist;
+                limit = euclidean ? squaredLimit(partial, dist) : dist;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the largest sum whose square root is still <code>dist</code>.
+     */
+    private static double squaredLimit(double sum, double dist) {
+        if (Double.isInfinite(sum)) {
+            return sum;
+        }
+        double limit = sum;
+        while (StrictMath.sqrt(Math.nextUp(limit)) == dist) {
+            limit = Math.nextUp(limit);
+        }
+        return limit;
+    }
+
+    /**
+     * Sums the squared differences between an input and the prototype at a search position, in the same order as
+     * {@link EuclideanDistance}; gives up, returning a partial sum, once the sum exceeds the limit.
+     */
+    private double partialSquaredEuclidean(int k, double[] input, double limit) {
+        int base = k * dimensionality;
+        double sum = 0;
+        int d = 0;
+        // The limit is checked once per block, so that the sum is not interrupted by a branch at each component
+        for (int end = dimensionality - BLOCK; d <= end; ) {
+            for (int blockEnd = d + BLOCK; d < blockEnd; d++) {
+                double diff = codebook[base + d] - input[d];
+                sum += diff * diff;
+            }
+            if (sum > limit) {
+                return sum;
+            }
+        }
+        for (; d < dimensionality; d++) {
+            double diff = codebook[base + d] - input[d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Sums the absolute differences between an input and the prototype at a search position, in the same order as
+     * {@link ManhattanDistance}; gives up, returning a partial sum, once the sum exceeds the limit.
+     */
+    private double partialManhattan(int k, double[] input, double limit) {
+        int base = k * dimensionality;
+        double sum = 0;
+        int d = 0;
+        for (int end = dimensionality - BLOCK; d <= end; ) {
+            for (int blockEnd = d + BLOCK; d < blockEnd; d++) {
+                sum += Math.abs(codebook[base + d] - input[d]);
+            }
+            if (sum > limit) {
+                return sum;
+            }
+        }
+        for (; d < dimensionality; d++) {
+            sum += Math.abs(codebook[base + d] - input[d]);
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the distance between an input and the prototype at a search position, exactly as the metric does.
+     */
+    private double distance(int k, double[] input) {
+        if (kernel == Kernel.GENERIC) {
+            VectorN vector = inputs.get();
+            for (int d = 0; d < dimensionality; d++) {
+                vector.set(d, input[d]);
+            }
+            return metricDistance.distanceBetween(prototypes[storage[k]], vector);
+        }
+        return distance(k, input, (kernel == Kernel.COSINE) ? norm(input, 0) : 0);
+    }
+
+    private double distance(int k, double[] input, double inputNorm) {
+        switch (kernel) {
+            case EUCLIDEAN:
+                return StrictMath.sqrt(partialSquaredEuclidean(k, input, Double.POSITIVE_INFINITY));
+            case MANHATTAN:
+                return partialManhattan(k, input, Double.POSITIVE_INFINITY);
+            default: {
+                int base = k * dimensionality;
+                double dot = 0;
+                for (int d = 0; d < dimensionality; d++) {
+                    dot += codebook[base + d] * input[d];
+                }
+                return 1 - dot / (norms[k] * inputNorm);
+            }
+        }
+    }
+
+    /**
+     * Computes the norm of the vector at an offset of an array: L1 for the Manhattan distance, L2 otherwise.
+     */
+    private double norm(double[] values, int offset) {
+        double sum = 0;
+        if (kernel == Kernel.MANHATTAN) {
+            for (int d = 0; d < dimensionality; d++) {
+                sum += Math.abs(values[offset + d]);
+            }
+            return sum;
+        }
+        for (int d = 0; d < dimensionality; d++) {
+            sum += values[offset + d] * values[offset + d];
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Returns the first position whose value is not less than the key, in a sorted array.
+     */
+    private static int lowerBound(double[] sorted, double key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private double calibrateThreshold(Dataset dataset, double quantile) {
+        Args.requireEqual(dataset.inputDimensionality(), "dataset.inputDimensionality()",
+                dimensionality, "dimensionality");
+        Args.requireGreaterEqualThan(dataset.size(), "dataset.size()", 1);
+
+        double[] errors = new double[dataset.size()];
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = quantizationErrorFor(dataset.get(i).getInput().values());
+        }
+        Arrays.sort(errors);
+
+        // Nearest-rank quantile
+        int rank = (int) Math.ceil(quantile * errors.length);
+        return errors[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the dimensionality of the prototypes, i.e., of the inputs.
+     * @return the dimensionality
+     */
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    /**
+     * Returns the number of prototypes, i.e., <code>width * height</code>.
+     * @return the number of prototypes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the metric distance of the model.
+     * @return the metric distance
+     */
+    public MetricDistance getMetricDistance() {
+        return metricDistance;
+    }
+
+    /**
+     * Returns the quantization error above which an input is anomalous.
+     * @return the anomaly threshold; infinite if no threshold was set
+     */
+    public double getAnomalyThreshold() {
+        return anomalyThreshold;
+    }
+
+    /**
+     * Returns the label of the neuron at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the label; null if the model has no labels or the neuron has none
+     */
+    public String getLabel(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return (labels != null) ? labels[x * height + y] : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InferenceModel{%d x %d x %d, %s, anomalyThreshold=%f}",
+                width, height, dimensionality, metricDistance.getClass().getSimpleName(), anomalyThreshold);
+    }
+
+    /**
+     * The score of an input. Instances are mutable, so that a thread can reuse the same instance for all of its
+     * inputs; they must not be shared between threads.
+     */
+    public static final class Score {
+
+        private int cell = -1;
+        private int x = -1;
+        private int y = -1;
+        private double quantizationError = Double.NaN;
+        private boolean anomaly;
+        private String label;
+
+        /**
+         * Returns the lattice cell (<code>x * height + y</code>) of the best matching unit.
+         * @return the lattice cell
+         */
+        public int getBmuCell() {
+            return cell;
+        }
+
+        /**
+         * Returns the x coordinate of the best matching unit.
+         * @return the x coordinate
+         */
+        public int getBmuX() {
+            return x;
+        }
+
+        /**
+         * Returns the y coordinate of the best matching unit.
+         * @return the y coordinate
+         */
+        public int getBmuY() {
+            return y;
+        }
+
+        /**
+         * Returns the quantization error, i.e., the distance between the input and its best matching unit.
+         * @return the quantization error
+         */
+        public double getQuantizationError() {
+            return quantizationError;
+        }
+
+        /**
+         * Returns whether the quantization error is above the anomaly threshold of the model.
+         * @return true if the input is anomalous
+         */
+        public boolean isAnomaly() {
+            return anomaly;
+        }
+
+        /**
+         * Returns the label of the best matching unit.
+         * @return the label; null if there is none
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Score{bmu=(%d, %d), quantizationError=%f, anomaly=%b, label=%s}",
+                    x, y, quantizationError, anomaly, label);
+        }
+    }
+
+    /**
+     * A builder for the InferenceModel; the codebook is copied when the builder is created.
+     */
+    public static final class Builder {
+
+        private final int width;
+        private final int height;
+        private final int dimensionality;
+        private final MetricDistance metricDistance;
+        /** Prototypes in storage order, one after the other. */
+        private final double[] codebook;
+        /** Lattice cell of each prototype, in storage order. */
+        private final int[] cells;
+
+        private String[] labels;
+        private double anomalyThreshold = Double.POSITIVE_INFINITY;
+        private Dataset calibration;
+        private double quantile;
+
+        /**
+         * Creates a builder from the current prototypes of a self-organizing map; it may be learning concurrently.
+         * @param som the self-organizing map
+         */
+        public Builder(SelfOrganizingMap som) {
+            this(snapshotOf(som));
+        }
+
+        /**
+         * Creates a builder from a codebook snapshot.
+         * @param snapshot the codebook snapshot
+         */
+        public Builder(CodebookSnapshot snapshot) {
+            Args.nullNotPermitted(snapshot, "snapshot");
+
+            this.width = snapshot.getWidth();
+            this.height = snapshot.getHeight();
+            this.dimensionality = snapshot.getDimensionality();
+            this.metricDistance = snapshot.getMetricDistance();
+
+            int size = snapshot.size();
+            this.codebook = new double[size * dimensionality];
+            this.cells = new int[size];
+            for (int i = 0; i < size; i++) {
+                VectorN prototype = snapshot.prototypeAt(i);
+                for (int d = 0; d < dimensionality; d++) {
+                    codebook[i * dimensionality + d] = prototype.get(d);
+                }
+                cells[i] = snapshot.cellAt(i);
+            }
+        }
+
+        /**
+         * Creates a builder from a memory-mapped codebook, with the storage order of its prototype ordering.
+         * @param mapped the memory-mapped codebook
+         */
+        public Builder(MappedCodebook mapped) {
+            Args.nullNotPermitted(mapped, "mapped");
+
+            this.width = mapped.getWidth();
+            this.height = mapped.getHeight();
+            this.dimensionality = mapped.getDimensionality();
+            this.metricDistance = mapped.getMetricDistance();
+
+            double[] latticeOrder = new double[width * height * dimensionality];
+            mapped.copyTo(latticeOrder);
+
+            this.cells = mapped.getPrototypeOrdering().traversal(width, height);
+            this.codebook = new double[latticeOrder.length];
+            for (int i = 0; i < cells.length; i++) {
+                System.arraycopy(latticeOrder, cells[i] * dimensionality, codebook, i * dimensionality, dimensionality);
+            }
+        }
+
+        private static CodebookSnapshot snapshotOf(SelfOrganizingMap som) {
+            Args.nullNotPermitted(som, "som");
+            return som.snapshot();
+        }
+
+        /**
+         * Sets the labels of the neurons, e.g., their class or cluster.
+         * @param labels the label of each lattice cell (<code>x * height + y</code>); entries may be null
+         * @return the updated builder
+         */
+        public Builder labels(String[] labels) {
+            Args.nullNotPermitted(labels, "labels");
+            Args.requireEqual(labels.length, "labels.length", width * height, "width * height");
+
+            this.labels = labels.clone();
+            return this;
+        }
+
+        /**
+         * Sets the quantization error above which an input is anomalous.
+         * @param threshold the anomaly threshold
+         * @return the updated builder
+         */
+        public Builder anomalyThreshold(double threshold) {
+            Args.requireNonNegative(threshold, "threshold");
+
+            this.anomalyThreshold = threshold;
+            this.calibration = null;
+            return this;
+        }
+
+        /**
+         * Sets the anomaly threshold to a quantile of the quantization errors of a dataset, e.g., the training
+         * dataset; computed when the model is built.
+         * @param dataset the dataset
+         * @param quantile the quantile, in [0, 1], e.g., 0.99 to flag inputs less well represented than 99% of
+         *                 the dataset
+         * @return the updated builder
+         */
+        public Builder anomalyQuantile(Dataset dataset, double quantile) {
+            Args.nullNotPermitted(dataset, "dataset");
+            Args.requireInRange(quantile, "quantile", 0, 1);
+
+            this.calibration = dataset;
+            this.quantile = quantile;
+            return this;
+        }
+
+        /**
+         * Builds the inference model.
+         * @return the inference model
+         */
+        public InferenceModel build() {
+            return new InferenceModel(this);
+        }
+    }
+}
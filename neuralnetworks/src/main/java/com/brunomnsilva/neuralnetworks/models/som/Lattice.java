@@ -38,6 +38,12 @@ public abstract class Lattice {
     private int width = -1;
     private int height = -1;
 
+    /** Cached adjacency for the current size; rebuilt lazily when the size changes. */
+    private volatile LatticeAdjacency adjacency;
+
+    /** Whether the adjacency is being built, by the thread holding the lock of this lattice. */
+    private boolean buildingAdjacency;
+
     /**
      * Sets the size of the lattice. This may be needed for some topologies to compute
      * the required distances and neighbor checking.
@@ -85,11 +91,69 @@ public abstract class Lattice {
     public abstract double distanceBetween(PrototypeNeuron a, PrototypeNeuron b);
 
     /**
-     * Checks if two prototype neurons are neighbors in the lattice.
+     * Checks if two prototype neurons are neighbors in the lattice. A neuron is considered a neighbor of itself.
+     * <br/>
+     * This is an array lookup in the precomputed {@link #getAdjacency() adjacency} of the lattice.
      *
      * @param a the first prototype neuron
      * @param b the second prototype neuron
      * @return true if the two neurons are neighbors, false otherwise
+     * @throws IllegalStateException if the subclass overrides neither this method nor
+     * {@link #isAdjacent(int, int, int, int)}
+     */
+    public boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b) {
+        if(buildingAdjacency && Thread.holdsLock(this)) {
+            throw new IllegalStateException("A Lattice must override isAdjacent(int, int, int, int) or areNeighbors.");
+        }
+
+        LatticeAdjacency adjacency = getAdjacency();
+        int cellA = adjacency.cellIndex(a.getIndexX(), a.getIndexY());
+        int cellB = adjacency.cellIndex(b.getIndexX(), b.getIndexY());
+
+        return cellA == cellB || adjacency.areNeighbors(cellA, cellB);
+    }
+
+    /**
+     * Returns the adjacency structure of the lattice, built once for the current lattice size.
+     *
+     * @return the lattice adjacency
+     * @throws IllegalStateException if the lattice size was not set
      */
-    public abstract boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b);
+    public LatticeAdjacency getAdjacency() {
+        LatticeAdjacency current = adjacency;
+        if(current == null || current.getWidth() != getWidth() || current.getHeight() != getHeight()) {
+            synchronized (this) {
+                current = adjacency;
+                if(current == null || current.getWidth() != getWidth() || current.getHeight() != getHeight()) {
+                    buildingAdjacency = true;
+                    try {
+                        current = LatticeAdjacency.of(this);
+                    } finally {
+                        buildingAdjacency = false;
+                    }
+                    adjacency = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Neighborhood predicate of the topology, used to build the {@link #getAdjacency() adjacency} of the lattice.
+     * <br/>
+     * Only the cells in the 3x3 window around <code>(ax, ay)</code>, with coordinates wrapped around the borders,
+     * are tested; the predicate must reject wrapped cells if the topology does not wrap.
+     * <br/>
+     * The default implementation delegates to {@link #areNeighbors(PrototypeNeuron, PrototypeNeuron)}, for lattices
+     * that only override the latter; it allocates two neurons per call, so topologies should override this method.
+     *
+     * @param ax the x coordinate of the first cell
+     * @param ay the y coordinate of the first cell
+     * @param bx the x coordinate of the second cell
+     * @param by the y coordinate of the second cell
+     * @return true if the two distinct cells are neighbors, false otherwise
+     */
+    protected boolean isAdjacent(int ax, int ay, int bx, int by) {
+        return areNeighbors(new PrototypeNeuron(ax, ay, 1), new PrototypeNeuron(bx, by, 1));
+    }
 }
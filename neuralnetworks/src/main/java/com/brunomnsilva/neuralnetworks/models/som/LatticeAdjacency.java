@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+
+import java.util.Arrays;
+
+/**
+ * Immutable adjacency structure of a {@link Lattice}, stored in a compressed sparse row (CSR) layout.
+ * <br/>
+ * Each lattice cell <code>(x, y)</code> is identified by the index <code>x * height + y</code>. The neighbors
+ * of a cell <code>c</code> are the cell indices stored in positions <code>[neighborStart(c), neighborEnd(c))</code>,
+ * so neighbor queries become plain array lookups. A cell is never listed as its own neighbor.
+ * <br/>
+ * Instances are built by the lattice itself, once per lattice size; see {@link Lattice#getAdjacency()}.
+ *
+ * @author brunomnsilva
+ */
+public final class LatticeAdjacency {
+
+    private final int width;
+    private final int height;
+
+    /** Position in <code>neighbors</code> where the list of each cell starts; has one extra trailing entry. */
+    private final int[] offsets;
+    /** Concatenated neighbor lists of all cells. */
+    private final int[] neighbors;
+
+    private LatticeAdjacency(int width, int height, int[] offsets, int[] neighbors) {
+        this.width = width;
+        this.height = height;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * Builds the adjacency of <code>lattice</code>, whose size must have been set.
+     * <br/>
+     * Candidate neighbors of a cell are the cells in its 3x3 window, with coordinates wrapped around the lattice
+     * borders; each candidate is accepted by {@link Lattice#isAdjacent(int, int, int, int)}.
+     *
+     * @param lattice the lattice
+     * @return the adjacency of the lattice
+     */
+    static LatticeAdjacency of(Lattice lattice) {
+        int width = lattice.getWidth();
+        int height = lattice.getHeight();
+        int cells = width * height;
+
+        int[] offsets = new int[cells + 1];
+        int[] neighbors = new int[cells * 8];
+        int count = 0;
+
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                int cell = x * height + y;
+                offsets[cell] = count;
+
+                for (int dx = -1; dx <= 1; ++dx) {
+                    for (int dy = -1; dy <= 1; ++dy) {
+                        int nx = Math.floorMod(x + dx, width);
+                        int ny = Math.floorMod(y + dy, height);
+                        int neighbor = nx * height + ny;
+
+                        if (neighbor == cell || !lattice.isAdjacent(x, y, nx, ny)) continue;
+
+                        // Small lattices may wrap onto the same cell more than once
+                        boolean duplicate = false;
+                        for (int k = offsets[cell]; k < count && !duplicate; ++k) {
+                            duplicate = (neighbors[k] == neighbor);
+                        }
+                        if (!duplicate) {
+                            neighbors[count++] = neighbor;
+                        }
+                    }
+                }
+            }
+        }
+        offsets[cells] = count;
+
+        return new LatticeAdjacency(width, height, offsets, Arrays.copyOf(neighbors, count));
+    }
+
+    /**
+     * Returns the width of the lattice this adjacency was built for.
+     * @return the lattice width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice this adjacency was built for.
+     * @return the lattice height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of cells of the lattice.
+     * @return the number of cells
+     */
+    public int cellCount() {
+        return width * height;
+    }
+
+    /**
+     * Returns the index of the cell at the given lattice coordinates.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the cell index
+     */
+    public int cellIndex(int x, int y) {
+        return x * height + y;
+    }
+
+    /**
+     * Returns the x coordinate of a cell.
+     * @param cell the cell index
+     * @return the x coordinate
+     */
+    public int cellX(int cell) {
+        return cell / height;
+    }
+
+    /**
+     * Returns the y coordinate of a cell.
+     * @param cell the cell index
+     * @return the y coordinate
+     */
+    public int cellY(int cell) {
+        return cell % height;
+    }
+
+    /**
+     * Returns the position where the neighbor list of a cell starts (inclusive).
+     * @param cell the cell index
+     * @return the start position, to be used with {@link #neighborAt(int)}
+     */
+    public int neighborStart(int cell) {
+        return offsets[cell];
+    }
+
+    /**
+     * Returns the position where the neighbor list of a cell ends (exclusive).
+     * @param cell the cell index
+     * @return the end position, to be used with {@link #neighborAt(int)}
+     */
+    public int neighborEnd(int cell) {
+        return offsets[cell + 1];
+    }
+
+    /**
+     * Returns the neighbor cell index stored at a given position.
+     * @param position the position, between {@link #neighborStart(int)} and {@link #neighborEnd(int)} of some cell
+     * @return the neighbor cell index
+     */
+    public int neighborAt(int position) {
+        return neighbors[position];
+    }
+
+    /**
+     * Returns the number of neighbors of a cell.
+     * @param cell the cell index
+     * @return the number of neighbors
+     */
+    public int degree(int cell) {
+        return offsets[cell + 1] - offsets[cell];
+    }
+
+    /**
+     * Returns a copy of the neighbor list of a cell.
+     * @param cell the cell index
+     * @return the neighbor cell indices
+     */
+    public int[] neighborsOf(int cell) {
+        Args.requireInRange(cell, "cell", 0, cellCount() - 1);
+        return Arrays.copyOfRange(neighbors, offsets[cell], offsets[cell + 1]);
+    }
+
+    /**
+     * Checks whether two distinct cells are neighbors.
+     * @param cellA the first cell index
+     * @param cellB the second cell index
+     * @return true if the cells are neighbors, false otherwise
+     */
+    public boolean areNeighbors(int cellA, int cellB) {
+        for (int k = offsets[cellA], end = offsets[cellA + 1]; k < end; ++k) {
+            if (neighbors[k] == cellB) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.models.som.impl.BasicSOM;
+
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A read-only view of a self-organizing map stored in the binary format written by
+ * {@link SelfOrganizingMapExport#toBinary(SelfOrganizingMap, String)}.
+ * <br/>
+ * The file is memory-mapped and the prototypes are read directly from it, without being copied into the heap;
+ * files larger than 2 GB are mapped in several segments. A {@link BasicSOM} can be rebuilt from the view with
+ * {@link #toSelfOrganizingMap()}.
+ * <br/>
+ * The binary format, in little-endian byte order, is:
+ * <ul>
+ *     <li>a header with the magic number <code>SOMB</code>, the format version, width, height and dimensionality,
+ *     followed by the class names of the lattice and of the metric distance and the name of the
+ *     {@link PrototypeOrdering}, each as its length and UTF-8 bytes;</li>
+ *     <li>padding up to a multiple of 8 bytes;</li>
+ *     <li>the prototypes as raw doubles, in lattice order, i.e., <code>(0,0), (0,1), ..., (0,height-1), (1,0), ...</code>.</li>
+ * </ul>
+ *
+ * @author brunomnsilva
+ */
+public final class MappedCodebook {
+
+    private static final Map<String, Supplier<?>> KNOWN_IMPLEMENTATIONS = new HashMap<>();
+
+    static {
+        KNOWN_IMPLEMENTATIONS.put(SimpleRectangularLattice.class.getName(), SimpleRectangularLattice::new);
+        KNOWN_IMPLEMENTATIONS.put(SimpleHexagonalLattice.class.getName(), SimpleHexagonalLattice::new);
+        KNOWN_IMPLEMENTATIONS.put(TorusRectangularLattice.class.getName(), TorusRectangularLattice::new);
+        KNOWN_IMPLEMENTATIONS.put(TorusHexagonalLattice.class.getName(), TorusHexagonalLattice::new);
+        KNOWN_IMPLEMENTATIONS.put(EuclideanDistance.class.getName(), EuclideanDistance::new);
+        KNOWN_IMPLEMENTATIONS.put(ManhattanDistance.class.getName(), ManhattanDistance::new);
+        KNOWN_IMPLEMENTATIONS.put(CosineDistance.class.getName(), CosineDistance::new);
+    }
+
+    static final int MAGIC = 0x424D4F53; // "SOMB", in little-endian
+    static final int VERSION = 1;
+
+    /** Doubles per mapped segment (1 GB). */
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final int width;
+    private final int height;
+    private final int dimensionality;
+    private final Lattice lattice;
+    private final MetricDistance metricDistance;
+    private final PrototypeOrdering prototypeOrdering;
+    private final DoubleBuffer[] segments;
+
+    private MappedCodebook(int width, int height, int dimensionality, Lattice lattice, MetricDistance metricDistance,
+                           PrototypeOrdering prototypeOrdering, DoubleBuffer[] segments) {
+        this.width = width;
+        this.height = height;
+        this.dimensionality = dimensionality;
+        this.lattice = lattice;
+        this.metricDistance = metricDistance;
+        this.prototypeOrdering = prototypeOrdering;
+        this.segments = segments;
+    }
+
+    /**
+     * Maps a binary self-organizing map file.
+     * @param filename the name of the file
+     * @return the mapped view
+     * @throws IOException if the file cannot be read or is not a valid binary self-organizing map file
+     */
+    public static MappedCodebook map(String filename) throws IOException {
+        Args.nullNotPermitted(filename, "filename");
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, 64 * 1024))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            int width, height, dimensionality;
+            Lattice lattice;
+            MetricDistance metricDistance;
+            PrototypeOrdering prototypeOrdering;
+            try {
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("Not a binary self-organizing map file: " + filename);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary self-organizing map version: " + version);
+                }
+
+                width = header.getInt();
+                height = header.getInt();
+                dimensionality = header.getInt();
+                if (width < 1 || height < 1 || dimensionality < 1) {
+                    throw new IOException(String.format("Invalid self-organizing map size: %d x %d x %d",
+                            width, height, dimensionality));
+                }
+
+                lattice = instantiate(readString(header), Lattice.class);
+                metricDistance = instantiate(readString(header), MetricDistance.class);
+                String ordering = readString(header);
+                try {
+                    prototypeOrdering = PrototypeOrdering.valueOf(ordering);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown prototype ordering: " + ordering, e);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated binary self-organizing map file: " + filename, e);
+            }
+
+            long dataOffset = align(header.position());
+            long values = (long) width * height * dimensionality;
+            if (fileSize - dataOffset != values * Double.BYTES) {
+                throw new IOException(String.format("Expected %d bytes of prototypes in %s, found %d.",
+                        values * Double.BYTES, filename, fileSize - dataOffset));
+            }
+
+            int segmentCount = (int) ((values + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            DoubleBuffer[] segments = new DoubleBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long first = (long) s << SEGMENT_SHIFT;
+                long count = Math.min(values - first, 1L << SEGMENT_SHIFT);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * Double.BYTES,
+                        count * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+
+            lattice.setSize(width, height);
+            return new MappedCodebook(width, height, dimensionality, lattice, metricDistance,
+                    prototypeOrdering, segments);
+        }
+    }
+
+    /**
+     * Writes the header of the binary format; the prototypes follow at the returned (aligned) size.
+     * @param som the self-organizing map
+     * @return the header, flipped for writing, with its trailing padding
+     */
+    static ByteBuffer header(SelfOrganizingMap som) {
+        byte[] latticeName = som.getLattice().getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] metricName = som.getMetricDistance().getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] orderingName = som.getPrototypeOrdering().name().getBytes(StandardCharsets.UTF_8);
+
+        int size = 5 * Integer.BYTES + 3 * Integer.BYTES + latticeName.length + metricName.length + orderingName.length;
+        ByteBuffer header = ByteBuffer.allocate((int) align(size)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putInt(som.getWidth()).putInt(som.getHeight()).putInt(som.getDimensionality());
+        header.putInt(latticeName.length).put(latticeName);
+        header.putInt(metricName.length).put(metricName);
+        header.putInt(orderingName.length).put(orderingName);
+
+        header.position(header.capacity());
+        header.flip();
+        return header;
+    }
+
+    private static long align(long position) {
+        return (position + Double.BYTES - 1) & ~(long) (Double.BYTES - 1);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length in header: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Instantiates a class named in a file header. The built-in lattices and metric distances are created
+     * directly; any other name is loaded without being initialized and is only instantiated if it is a concrete
+     * subtype of <code>type</code>, so a crafted file cannot run arbitrary static initializers.
+     */
+    private static <T> T instantiate(String className, Class<T> type) throws IOException {
+        Supplier<?> known = KNOWN_IMPLEMENTATIONS.get(className);
+        if (known != null) {
+            Object instance = known.get();
+            if (!type.isInstance(instance)) {
+                throw new IOException(String.format("%s is not a %s.", className, type.getSimpleName()));
+            }
+            return type.cast(instance);
+        }
+
+        try {
+            Class<?> cls = Class.forName(className, false, MappedCodebook.class.getClassLoader());
+            if (!type.isAssignableFrom(cls) || Modifier.isAbstract(cls.getModifiers())) {
+                throw new IOException(String.format("%s is not a %s.", className, type.getSimpleName()));
+            }
+            return type.cast(cls.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IOException(String.format("Cannot instantiate %s %s.", type.getSimpleName(), className), e);
+        }
+    }
+
+    /**
+     * Returns a component of the prototype at a lattice location, read from the file.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param dimension the component
+     * @return the component value
+     */
+    public double get(int x, int y, int dimension) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+        Args.requireInRange(dimension, "dimension", 0, dimensionality - 1);
+
+        long index = ((long) x * height + y) * dimensionality + dimension;
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    /**
+     * Copies all the prototypes, in lattice order, into a flat array of
+     * <code>width * height * dimensionality</code> values.
+     * @param destination the array to copy into
+     * @throws IllegalArgumentException if the destination is too small
+     */
+    public void copyTo(double[] destination) {
+        Args.nullNotPermitted(destination, "destination");
+        long values = (long) width * height * dimensionality;
+        if (destination.length < values) {
+            throw new IllegalArgumentException(String.format("destination.length (%d) must be equal or greater than %d",
+                    destination.length, values));
+        }
+
+        int offset = 0;
+        for (DoubleBuffer segment : segments) {
+            DoubleBuffer view = segment.duplicate();
+            int count = view.remaining();
+            view.get(destination, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Rebuilds a self-organizing map with the configuration and prototypes of the file.
+     * @return a new BasicSOM
+     */
+    public BasicSOM toSelfOrganizingMap() {
+        BasicSOM som = new BasicSOM(width, height, dimensionality, newInstance(lattice), newInstance(metricDistance),
+                prototypeOrdering);
+
+        // Sequential reads, one segment view at a time
+        long index = 0;
+        DoubleBuffer view = null;
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                VectorN prototype = som.get(x, y).getPrototype();
+                for (int d = 0; d < dimensionality; ++d, ++index) {
+                    if ((index & SEGMENT_MASK) == 0) {
+                        view = segments[(int) (index >>> SEGMENT_SHIFT)].duplicate();
+                    }
+                    prototype.set(d, view.get());
+                }
+            }
+        }
+
+        som.prototypesUpdated();
+        return som;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newInstance(T prototype) {
+        try {
+            return (T) prototype.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e); // was instantiated the same way when mapping
+        }
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the dimensionality of the prototypes.
+     * @return the dimensionality
+     */
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    /**
+     * Returns the lattice shape, sized to the stored map.
+     * @return the lattice
+     */
+    public Lattice getLattice() {
+        return lattice;
+    }
+
+    /**
+     * Returns the metric distance of the stored map.
+     * @return the metric distance
+     */
+    public MetricDistance getMetricDistance() {
+        return metricDistance;
+    }
+
+    /**
+     * Returns the storage order of the prototypes of the stored map.
+     * @return the prototype ordering
+     */
+    public PrototypeOrdering getPrototypeOrdering() {
+        return prototypeOrdering;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedCodebook{%d x %d x %d, %s, %s}", width, height, dimensionality,
+                lattice.getClass().getSimpleName(), metricDistance.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+
+import java.util.Random;
+
+/**
+ * A data schedule for the ordering phase of the offline learning algorithms.
+ * <br/>
+ * During the ordering phase the map only needs a coarse view of the underlying distribution, so
+ * each ordering epoch may iterate over a stratified subsample of the dataset instead of a full pass.
+ * The size of the subsample grows exponentially from <code>initialFraction</code> of the dataset, at the first
+ * ordering epoch, towards the full dataset, which is used throughout the convergence phase.
+ * <br/>
+ * Subsamples are index-based: the dataset is never copied. The dataset is split in equally sized
+ * strata and a random index is picked from each one, hence the original ordering of the dataset is preserved.
+ *
+ * @see ClassicLearning
+ * @see BatchLearning
+ *
+ * @author brunomnsilva
+ */
+public class OrderingDataSchedule {
+
+    /** The fraction of the dataset used in the first ordering epoch. */
+    private final double initialFraction;
+
+    /** The random generator used to pick an index from each stratum. */
+    private final Random rnd;
+
+    /**
+     * Creates a schedule that uses full passes over the dataset in all epochs, i.e.,
+     * the original behavior of the offline learning algorithms.
+     * @return a schedule without subsampling
+     */
+    public static OrderingDataSchedule fullPasses() {
+        return new OrderingDataSchedule(1);
+    }
+
+    /**
+     * Creates a new schedule.
+     * @param initialFraction the fraction of the dataset to use in the first ordering epoch, in ]0, 1]
+     * @throws IllegalArgumentException if the initial fraction is not in ]0, 1]
+     */
+    public OrderingDataSchedule(double initialFraction) {
+        this(initialFraction, new Random());
+    }
+
+    /**
+     * Creates a new schedule with a specific random generator, e.g., with a fixed seed for reproducibility.
+     * @param initialFraction the fraction of the dataset to use in the first ordering epoch, in ]0, 1]
+     * @param rnd the random generator to use
+     * @throws IllegalArgumentException if the initial fraction is not in ]0, 1] or <code>rnd</code> is null
+     */
+    public OrderingDataSchedule(double initialFraction, Random rnd) {
+        Args.requireGreaterThan(initialFraction, "initialFraction", 0);
+        Args.requireInRange(initialFraction, "initialFraction", 0, 1);
+        Args.nullNotPermitted(rnd, "rnd");
+
+        this.initialFraction = initialFraction;
+        this.rnd = rnd;
+    }
+
+    /**
+     * Returns the fraction of the dataset used in the first ordering epoch.
+     * @return the initial fraction
+     */
+    public double getInitialFraction() {
+        return initialFraction;
+    }
+
+    /**
+     * Computes the subsample size for an ordering epoch.
+     * @param populationSize the size of the dataset
+     * @param orderingEpoch the ordering epoch, in [0, orderEpochs[
+     * @param orderEpochs the total number of ordering epochs
+     * @return the subsample size, in [1, populationSize]; 0 if the dataset is empty
+     */
+    public int sampleSize(int populationSize, int orderingEpoch, int orderEpochs) {
+        if(initialFraction >= 1 || populationSize == 0) return populationSize;
+
+        double fraction = DecayFunction.exponential(initialFraction, 1, orderingEpoch, orderEpochs);
+        int size = (int)Math.ceil(fraction * populationSize);
+
+        return Math.max(1, Math.min(size, populationSize));
+    }
+
+    /**
+     * Fills <code>indices</code> with a stratified subsample of the dataset indices for an ordering epoch.
+     * The indices are written in ascending order.
+     * @param populationSize the size of the dataset
+     * @param orderingEpoch the ordering epoch, in [0, orderEpochs[
+     * @param orderEpochs the total number of ordering epochs
+     * @param indices the array to fill; must have a length of at least <code>populationSize</code>
+     * @return how many indices were written to <code>indices</code>
+     */
+    public int sampleIndices(int populationSize, int orderingEpoch, int orderEpochs, int[] indices) {
+        int sampleSize = sampleSize(populationSize, orderingEpoch, orderEpochs);
+
+        if(sampleSize == populationSize) {
+            for(int i=0; i < populationSize; ++i) {
+                indices[i] = i;
+            }
+            return populationSize;
+        }
+
+        // Pick one random index from each stratum; strata are disjoint, so there are no repetitions
+        double stratumWidth = (double) populationSize / sampleSize;
+        for(int i=0; i < sampleSize; ++i) {
+            int index = (int)((i + rnd.nextDouble()) * stratumWidth);
+            indices[i] = Math.min(index, populationSize - 1);
+        }
+        return sampleSize;
+    }
+}
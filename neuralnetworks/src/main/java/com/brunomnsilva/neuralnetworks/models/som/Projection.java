@@ -0,0 +1,358 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.dataset.Dataset;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The projection of a {@link Dataset} onto a {@link SelfOrganizingMap}, i.e., the first and second best matching
+ * units (BMUs) of every dataset item and their distances, held in primitive arrays.
+ * <br/>
+ * A projection is meant to be shared by all consumers of the same model and dataset (hit maps, target output
+ * maps, statistics, labeling), so that the BMUs are computed once per model change instead of once per consumer.
+ * Each consumer calls {@link #refresh()} before reading; it does nothing if the model did not change.
+ * <br/>
+ * The BMUs are computed in parallel, over the latest {@link CodebookSnapshot} of the model. When only some
+ * prototypes changed since the last refresh, only these are compared with each item, except for the items whose
+ * first or second BMU changed, which are searched again. The result is exactly the same as a full search, with
+ * ties broken by the storage order of the prototypes; NaN distances are never selected.
+ * <br/>
+ * The dataset is assumed to be immutable while projected. All methods are thread-safe.
+ *
+ * @see SelfOrganizingMapStatistics#compute(Projection)
+ *
+ * @author brunomnsilva
+ */
+public final class Projection {
+
+    /** Number of dataset items per parallel task. */
+    private static final int CHUNK_SIZE = 256;
+
+    /** Fraction of changed prototypes above which a full search is cheaper than an incremental refresh. */
+    private static final double INCREMENTAL_LIMIT = 0.25;
+
+    private final SelfOrganizingMap som;
+    private final Dataset dataset;
+    private final VectorN[] inputs;
+
+    /** First and second BMUs (storage indices, -1 if none) and their distances, indexed by dataset item. */
+    private final int[] bmuIndices;
+    private final int[] secondIndices;
+    private final double[] distances;
+    private final double[] secondDistances;
+
+    /** The snapshot the current projection was computed from. */
+    private CodebookSnapshot snapshot;
+
+    /** Scratch state of an incremental refresh, indexed by storage index. */
+    private final boolean[] changed;
+    private final int[] changedList;
+
+    /**
+     * Creates and computes the projection of a dataset onto a self-organizing map.
+     * @param som the self-organizing map
+     * @param dataset the dataset to project
+     * @throws IllegalArgumentException if any argument is null or their dimensionalities differ
+     */
+    public Projection(SelfOrganizingMap som, Dataset dataset) {
+        Args.nullNotPermitted(som, "som");
+        Args.nullNotPermitted(dataset, "dataset");
+        Args.requireEqual(dataset.inputDimensionality(), "dataset.inputDimensionality()",
+                som.getDimensionality(), "som.getDimensionality()");
+
+        this.som = som;
+        this.dataset = dataset;
+
+        int size = dataset.size();
+        this.inputs = new VectorN[size];
+        for (int i = 0; i < size; i++) {
+            inputs[i] = dataset.get(i).getInput();
+        }
+
+        this.bmuIndices = new int[size];
+        this.secondIndices = new int[size];
+        this.distances = new double[size];
+        this.secondDistances = new double[size];
+
+        this.changed = new boolean[som.size()];
+        this.changedList = new int[som.size()];
+
+        refresh();
+    }
+
+    /**
+     * Brings the projection up to date with the latest snapshot of the model.
+     * @return true if the model changed since the last refresh, false otherwise
+     */
+    public synchronized boolean refresh() {
+        CodebookSnapshot latest = som.snapshot();
+        if (latest == snapshot) return false;
+
+        CodebookSnapshot previous = snapshot;
+        snapshot = latest;
+
+        if (previous == null) {
+            forEachChunk(i -> search(latest, i));
+            return true;
+        }
+
+        // Only the prototypes updated since the previous snapshot, across all snapshots published in between
+        UpdatedRegion region = latest.changedSince(previous);
+        int changedCount = 0;
+        for (int cell = region.nextCell(0); cell >= 0; cell = region.nextCell(cell + 1)) {
+            int p = latest.storageIndexOf(cell);
+            changed[p] = true;
+            changedList[changedCount++] = p;
+        }
+
+        if (changedCount > INCREMENTAL_LIMIT * latest.size()) {
+            forEachChunk(i -> search(latest, i));
+        } else if (changedCount > 0) {
+            int count = changedCount;
+            forEachChunk(i -> update(latest, i, count));
+        }
+
+        for (int k = 0; k < changedCount; k++) {
+            changed[changedList[k]] = false;
+        }
+        return true;
+    }
+
+    private void forEachChunk(IntConsumer action) {
+        int size = inputs.length;
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            for (int i = c * CHUNK_SIZE, end = Math.min(size, (c + 1) * CHUNK_SIZE); i < end; i++) {
+                action.accept(i);
+            }
+        });
+    }
+
+    /** Full search of the first and second BMUs of an item. */
+    private void search(CodebookSnapshot codebook, int item) {
+        VectorN input = inputs[item];
+        MetricDistance metricDistance = codebook.getMetricDistance();
+
+        int first = -1, second = -1;
+        double firstDist = Double.POSITIVE_INFINITY, secondDist = Double.POSITIVE_INFINITY;
+
+        for (int p = 0; p < codebook.size(); p++) {
+            double dist = metricDistance.distanceBetween(codebook.prototypeAt(p), input);
+            if (precedes(dist, p, firstDist, first)) {
+                second = first;
+                secondDist = firstDist;
+                first = p;
+                firstDist = dist;
+            } else if (precedes(dist, p, secondDist, second)) {
+                second = p;
+                secondDist = dist;
+            }
+        }
+
+        bmuIndices[item] = first;
+        distances[item] = firstDist;
+        secondIndices[item] = second;
+        secondDistances[item] = secondDist;
+    }
+
+    /**
+     * Incremental refresh of an item: all unchanged prototypes were already farther than its (unchanged) first and
+     * second BMUs, so only the changed prototypes can take their places.
+     */
+    private void update(CodebookSnapshot codebook, int item, int changedCount) {
+        int first = bmuIndices[item];
+        int second = secondIndices[item];
+        if (first < 0 || changed[first] || (second >= 0 && changed[second])) {
+            search(codebook, item);
+            return;
+        }
+
+        VectorN input = inputs[item];
+        MetricDistance metricDistance = codebook.getMetricDistance();
+        double firstDist = distances[item];
+        double secondDist = secondDistances[item];
+
+        for (int k = 0; k < changedCount; k++) {
+            int p = changedList[k];
+            double dist = metricDistance.distanceBetween(codebook.prototypeAt(p), input);
+            if (precedes(dist, p, firstDist, first)) {
+                second = first;
+                secondDist = firstDist;
+                first = p;
+                firstDist = dist;
+            } else if (precedes(dist, p, secondDist, second)) {
+                second = p;
+                secondDist = dist;
+            }
+        }
+
+        bmuIndices[item] = first;
+        distances[item] = firstDist;
+        secondIndices[item] = second;
+        secondDistances[item] = secondDist;
+    }
+
+    /** Orders candidates by distance, then by storage index, as a sequential search in storage order does. */
+    private static boolean precedes(double dist, int index, double otherDist, int otherIndex) {
+        return dist < otherDist || (dist == otherDist && (otherIndex < 0 || index < otherIndex));
+    }
+
+    /**
+     * Returns the lattice cell (<code>x * height + y</code>) of the BMU of a dataset item.
+     * @param item the index of the dataset item
+     * @return the lattice cell of the BMU, or -1 if none could be found
+     */
+    public synchronized int getBmuCell(int item) {
+        int index = bmuIndices[item];
+        return index < 0 ? -1 : snapshot.cellAt(index);
+    }
+
+    /**
+     * Returns the x coordinate of the BMU of a dataset item.
+     * @param item the index of the dataset item
+     * @return the x coordinate of the BMU
+     */
+    public int getBmuX(int item) {
+        return getBmuCell(item) / som.getHeight();
+    }
+
+    /**
+     * Returns the y coordinate of the BMU of a dataset item.
+     * @param item the index of the dataset item
+     * @return the y coordinate of the BMU
+     */
+    public int getBmuY(int item) {
+        return getBmuCell(item) % som.getHeight();
+    }
+
+    /**
+     * Returns the distance between a dataset item and the prototype of its BMU.
+     * @param item the index of the dataset item
+     * @return the distance to the BMU
+     */
+    public synchronized double getDistance(int item) {
+        return distances[item];
+    }
+
+    /**
+     * Returns the lattice cell (<code>x * height + y</code>) of the second BMU of a dataset item.
+     * @param item the index of the dataset item
+     * @return the lattice cell of the second BMU, or -1 if the model has a single neuron
+     */
+    public synchronized int getSecondBmuCell(int item) {
+        int index = secondIndices[item];
+        return index < 0 ? -1 : snapshot.cellAt(index);
+    }
+
+    /**
+     * Returns the distance between a dataset item and the prototype of its second BMU.
+     * @param item the index of the dataset item
+     * @return the distance to the second BMU
+     */
+    public synchronized double getSecondDistance(int item) {
+        return secondDistances[item];
+    }
+
+    /**
+     * Copies the lattice cells of the BMUs of all dataset items.
+     * @param destination the array to copy into, with at least <code>size()</code> elements
+     */
+    public synchronized void copyBmuCellsTo(int[] destination) {
+        Args.nullNotPermitted(destination, "destination");
+        Args.requireGreaterEqualThan(destination.length, "destination.length", inputs.length);
+
+        for (int i = 0; i < inputs.length; i++) {
+            int index = bmuIndices[i];
+            destination[i] = index < 0 ? -1 : snapshot.cellAt(index);
+        }
+    }
+
+    /**
+     * Copies the distances of all dataset items to their BMUs.
+     * @param destination the array to copy into, with at least <code>size()</code> elements
+     */
+    public synchronized void copyDistancesTo(double[] destination) {
+        Args.nullNotPermitted(destination, "destination");
+        Args.requireGreaterEqualThan(destination.length, "destination.length", inputs.length);
+
+        System.arraycopy(distances, 0, destination, 0, inputs.length);
+    }
+
+    /**
+     * Counts how many dataset items have each neuron as their BMU.
+     * @return the hit counts, indexed by lattice cell (<code>x * height + y</code>)
+     */
+    public synchronized int[] hitCounts() {
+        int[] hits = new int[som.getWidth() * som.getHeight()];
+        for (int index : bmuIndices) {
+            if (index >= 0) {
+                hits[snapshot.cellAt(index)]++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the snapshot of the model the projection is currently computed from.
+     * @return the codebook snapshot
+     */
+    public synchronized CodebookSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of projected dataset items.
+     * @return the number of items
+     */
+    public int size() {
+        return inputs.length;
+    }
+
+    /**
+     * Returns the projected dataset.
+     * @return the dataset
+     */
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Returns the self-organizing map the dataset is projected onto.
+     * @return the self-organizing map
+     */
+    public SelfOrganizingMap getModel() {
+        return som;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Projection{%d items, version=%d}", inputs.length, snapshot.getVersion());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+
+import java.util.Arrays;
+
+/**
+ * The order in which the prototypes of a {@link SelfOrganizingMap} are stored and iterated.
+ * <br/>
+ * Neighborhood updates and U-matrix computations touch a small 2d window of the lattice. With a space-filling curve
+ * ordering (Morton/Z-order or Hilbert) neurons that are close in the lattice are also close in the storage order,
+ * hence these windows are laid out in mostly contiguous memory. The Hilbert curve has better locality than the
+ * Morton curve, at a slightly higher indexing cost, which is only paid once, at construction.
+ *
+ * @see SelfOrganizingMap#getPrototypeOrdering()
+ *
+ * @author brunomnsilva
+ */
+public enum PrototypeOrdering {
+
+    /** Column by column, i.e., <code>(0,0), (0,1), ..., (0,height-1), (1,0), ...</code>; the default ordering. */
+    LINEAR,
+
+    /** Morton (Z-order) curve, obtained by interleaving the bits of the lattice coordinates (up to 65536 per side). */
+    MORTON,
+
+    /** Hilbert curve. */
+    HILBERT;
+
+    /**
+     * Computes the traversal of a lattice according to this ordering.
+     * @param width the width of the lattice
+     * @param height the height of the lattice
+     * @return the lattice cells, encoded as <code>x * height + y</code>, in traversal order
+     */
+    public int[] traversal(int width, int height) {
+        Args.requireNonNegative(width, "width");
+        Args.requireNonNegative(height, "height");
+
+        int size = width * height;
+        int[] cells = new int[size];
+
+        if(this == LINEAR) {
+            for(int i=0; i < size; ++i) {
+                cells[i] = i;
+            }
+            return cells;
+        }
+
+        // Curves are defined over a square with a power-of-two side that covers the lattice.
+        // Sort cells by their curve position; cells outside the lattice are simply not present.
+        int side = Integer.highestOneBit(Math.max(1, Math.max(width, height) - 1)) << 1;
+
+        long[] keys = new long[size];
+        for(int x=0; x < width; ++x) {
+            for(int y=0; y < height; ++y) {
+                long position = (this == MORTON) ? mortonPosition(x, y) : hilbertPosition(side, x, y);
+                int cell = x * height + y;
+                keys[cell] = (position << 32) | cell;
+            }
+        }
+        Arrays.sort(keys);
+
+        for(int i=0; i < size; ++i) {
+            cells[i] = (int)(keys[i] & 0xFFFFFFFFL);
+        }
+        return cells;
+    }
+
+    private static long mortonPosition(int x, int y) {
+        return spreadBits(x) | (spreadBits(y) << 1);
+    }
+
+    private static long spreadBits(int value) {
+        // Inserts a zero bit between each of the (lower 16) bits of value
+        long v = value & 0xFFFFL;
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
+    }
+
+    private static long hilbertPosition(int side, int x, int y) {
+        long position = 0;
+        for(int s = side / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            position += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant
+            if(ry == 0) {
+                if(rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return position;
+    }
+}
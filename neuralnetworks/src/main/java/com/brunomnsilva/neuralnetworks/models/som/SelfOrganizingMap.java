@@ -28,7 +28,8 @@ import com.brunomnsilva.neuralnetworks.core.AbstractObservable;
 import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Iterator;
 
@@ -45,6 +46,16 @@ import java.util.Iterator;
  *  - density mapping of the training data underlying distribution.
  * <br/>
  * More details can be found in my PhD thesis <a href="http://hdl.handle.net/10362/19974">here</a> at pp. 17.
+ * <br/>
+ * The prototypes are stored, and iterated, according to a {@link PrototypeOrdering}; the lattice location
+ * of a prototype is translated to its storage index by {@link #indexOf(int, int)}.
+ * <br/>
+ * Prototypes are modified in place during training. Other threads should read the model through
+ * {@link #snapshot()}, which returns the immutable {@link CodebookSnapshot} published at the last call
+ * to {@link #prototypesUpdated()}.
+ * <br/>
+ * Observers can query, when notified, which region of the lattice was modified through the snapshot, see
+ * {@link CodebookSnapshot#changedSince(CodebookSnapshot)}.
  *
  * @author brunomnsilva
  */
@@ -53,16 +64,33 @@ public abstract class SelfOrganizingMap extends AbstractObservable
 
     protected int width, height, dimensionality;
 
-    // Both structures will contain the same prototypes (references)
-    // One is more useful for iterations (List), while the other (2d-array)
+    // Both structures will contain the same prototypes (references), in storage order.
+    // One is more useful for iterations (List), while the other (array)
     // is more efficient for index-based direct access
     protected List<PrototypeNeuron> prototypesList;
+    protected PrototypeNeuron[] prototypes;
+
+    // The same prototypes (references), indexed by lattice location, i.e., prototypeGrid[x][y].
+    // Kept for subclasses; read-only, use get(int, int) instead in new code
     protected PrototypeNeuron[][] prototypeGrid;
 
+    // Translates a lattice cell (x * height + y) to its index in the storage order
+    private final int[] storageIndex;
+
+    private final PrototypeOrdering prototypeOrdering;
+
     private final MetricDistance metricDistance;
 
     private final Lattice lattice;
 
+    // Latest published codebook snapshot and the prototypes (storage indices) adjusted since then
+    private volatile CodebookSnapshot snapshot;
+    private final boolean[] adjustedSinceSnapshot;
+    private final int[] adjustedList;
+    private int adjustedCount;
+    // Whether any adjustment was signaled since the last notification
+    private boolean adjustedSignaled;
+
     /**
      * Instantiates a new self-organizing map (SOM).
      * @param width the width of the 2d SOM lattice
@@ -75,6 +103,23 @@ public abstract class SelfOrganizingMap extends AbstractObservable
      */
     public SelfOrganizingMap(int width, int height, int dimensionality,
                              Lattice lattice, MetricDistance metricDistance) {
+        this(width, height, dimensionality, lattice, metricDistance, PrototypeOrdering.LINEAR);
+    }
+
+    /**
+     * Instantiates a new self-organizing map (SOM), with a specific storage order of the prototypes.
+     * @param width the width of the 2d SOM lattice
+     * @param height the height of the 2d SOM lattice
+     * @param dimensionality the dimensionality of the SOM prototypes
+     * @param lattice the lattice shape
+     * @param metricDistance the metric distance to use to compute the best matching unit
+     * @param prototypeOrdering the order in which the prototypes are stored and iterated
+     * @throws IllegalArgumentException if width, height or dimensionality are not greater than 0;
+     *                                  if lattice, metricDistance or prototypeOrdering are null.
+     */
+    public SelfOrganizingMap(int width, int height, int dimensionality,
+                             Lattice lattice, MetricDistance metricDistance, PrototypeOrdering prototypeOrdering) {
+        Args.nullNotPermitted(prototypeOrdering, "prototypeOrdering");
         Args.requireGreaterEqualThan(width, "width", 0);
         Args.requireGreaterEqualThan(height, "height", 0);
         Args.requireGreaterEqualThan(dimensionality, "dimensionality", 0);
@@ -89,18 +134,29 @@ public abstract class SelfOrganizingMap extends AbstractObservable
 
         this.metricDistance = metricDistance;
 
-        this.prototypesList = new ArrayList<>();
+        this.prototypeOrdering = prototypeOrdering;
+        this.prototypes = new PrototypeNeuron[width * height];
         this.prototypeGrid = new PrototypeNeuron[width][height];
-
-        for(int w=0; w < width; ++w) {
-            for(int h=0; h < height; ++h) {
-                // The prototype constructor performs a random initialization (0,1)
-                // Better than to leave them with zeros initially
-                PrototypeNeuron p = new PrototypeNeuron(w, h, dimensionality);
-                prototypeGrid[w][h] = p;
-                prototypesList.add(p);
-            }
+        this.storageIndex = new int[width * height];
+
+        // Allocate the prototypes following the storage order, so that
+        // neighboring neurons also tend to be close in memory
+        int[] traversal = prototypeOrdering.traversal(width, height);
+        for(int i=0; i < traversal.length; ++i) {
+            int cell = traversal[i];
+            // The prototype constructor performs a random initialization (0,1)
+            // Better than to leave them with zeros initially
+            PrototypeNeuron p = new PrototypeNeuron(cell / height, cell % height, dimensionality);
+            prototypes[i] = p;
+            prototypeGrid[cell / height][cell % height] = p;
+            storageIndex[cell] = i;
         }
+
+        this.prototypesList = Collections.unmodifiableList(Arrays.asList(prototypes));
+
+        this.adjustedSinceSnapshot = new boolean[width * height];
+        this.adjustedList = new int[width * height];
+        this.snapshot = CodebookSnapshot.copyOf(this, 0, storageIndex);
     }
 
     /**
@@ -124,10 +180,57 @@ public abstract class SelfOrganizingMap extends AbstractObservable
      * @throws IllegalArgumentException if any of the indices are invalid.
      */
     public PrototypeNeuron get(int xIndex, int yIndex) {
-        Args.requireInRange(xIndex, "xIndex", 0, width);
-        Args.requireInRange(yIndex, "yIndex", 0, height);
+        Args.requireInRange(xIndex, "xIndex", 0, width - 1);
+        Args.requireInRange(yIndex, "yIndex", 0, height - 1);
 
-        return prototypeGrid[xIndex][yIndex];
+        return prototypes[ storageIndex[xIndex * height + yIndex] ];
+    }
+
+    /**
+     * Returns the prototype neuron (reference) at a position of the storage order, i.e., the order
+     * followed by {@link #iterator()}.
+     * @param index the storage index in [0, width * height[.
+     * @return the prototype
+     * @throws ArrayIndexOutOfBoundsException if the index is invalid.
+     */
+    public PrototypeNeuron get(int index) {
+        return prototypes[index];
+    }
+
+    /**
+     * Returns the position of a lattice location in the storage order, i.e., the order followed by {@link #iterator()}.
+     * @param xIndex x grid index in [0, width[.
+     * @param yIndex y grid index in [0, height[.
+     * @return the storage index, in [0, width * height[
+     * @throws ArrayIndexOutOfBoundsException if any of the indices are invalid.
+     */
+    public int indexOf(int xIndex, int yIndex) {
+        return storageIndex[xIndex * height + yIndex];
+    }
+
+    /**
+     * Returns the position of a prototype neuron in the storage order, i.e., the order followed by {@link #iterator()}.
+     * @param neuron the prototype neuron
+     * @return the storage index, in [0, width * height[
+     */
+    public int indexOf(PrototypeNeuron neuron) {
+        return indexOf(neuron.getIndexX(), neuron.getIndexY());
+    }
+
+    /**
+     * Returns the order in which the prototypes are stored and iterated.
+     * @return the prototype ordering
+     */
+    public PrototypeOrdering getPrototypeOrdering() {
+        return prototypeOrdering;
+    }
+
+    /**
+     * Returns the number of prototype neurons, i.e., <code>width * height</code>.
+     * @return the number of prototype neurons
+     */
+    public int size() {
+        return prototypes.length;
     }
 
     /**
@@ -239,13 +342,71 @@ public abstract class SelfOrganizingMap extends AbstractObservable
         return sb.toString();
     }
 
+    /**
+     * Returns the latest published snapshot of the codebook, i.e., as of the last call to {@link #prototypesUpdated()}.
+     * <br/>
+     * This method is thread-safe and never blocks; the returned snapshot is immutable.
+     * @return the latest codebook snapshot
+     */
+    public CodebookSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Signals that the prototype of a neuron was modified, so that the next snapshot copies it.
+     * <br/>
+     * Learning algorithms may call this method for every prototype they adjust; if none is signaled between two
+     * calls to {@link #prototypesUpdated()}, all prototypes are assumed to have changed.
+     * @param neuron the neuron whose prototype was modified
+     */
+    protected void prototypeAdjusted(PrototypeNeuron neuron) {
+        int cell = neuron.getIndexX() * height + neuron.getIndexY();
+        int index = storageIndex[cell];
+        if(!adjustedSinceSnapshot[index]) {
+            adjustedSinceSnapshot[index] = true;
+            adjustedList[adjustedCount++] = index;
+        }
+
+        adjustedSignaled = true;
+    }
+
     /**
      * Used by a caller to signal that the SOM has changed its state.
-     * This will notify all registered observers.
+     * This publishes a new {@link #snapshot() snapshot} of the codebook and
+     * will notify all registered observers.
      * <br/>
-     * No verification is made to check if anything has really changed.
+     * No verification is made to check if anything has really changed. Must be called from the thread that
+     * modifies the prototypes.
      */
     public void prototypesUpdated() { //TODO: change name of method?
+        if(!adjustedSignaled) {
+            snapshot = CodebookSnapshot.copyOf(this, snapshot.getVersion() + 1, storageIndex);
+        } else {
+            // Adjustments may already have been published by publishSnapshot()
+            publishSnapshot();
+            adjustedSignaled = false;
+        }
+
         notifyObservers();
     }
+
+    /**
+     * Publishes a new {@link #snapshot() snapshot} with the prototypes signaled by
+     * {@link #prototypeAdjusted(PrototypeNeuron)} since the last one, without notifying observers.
+     * If none was signaled, the current snapshot is kept.
+     * <br/>
+     * Meant for learning algorithms that signal every adjustment and need an up-to-date snapshot between two
+     * notifications. Must be called from the thread that modifies the prototypes.
+     */
+    protected final void publishSnapshot() {
+        if(adjustedCount == 0) return;
+
+        CodebookSnapshot current = snapshot;
+        snapshot = current.next(this, current.getVersion() + 1, adjustedList, adjustedCount);
+
+        for(int k = 0; k < adjustedCount; ++k) {
+            adjustedSinceSnapshot[adjustedList[k]] = false;
+        }
+        adjustedCount = 0;
+    }
 }
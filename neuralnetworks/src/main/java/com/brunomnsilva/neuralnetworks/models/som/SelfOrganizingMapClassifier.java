@@ -0,0 +1,454 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.dataset.Dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A classifier built on a trained {@link SelfOrganizingMap}: each neuron is labeled with the classes (distinct target
+ * outputs) of the training items it is the best matching unit (BMU) of, and an input is classified with the label of
+ * its BMU.
+ * <br/>
+ * Each neuron keeps the distribution of the classes of its items, and its label is the majority class; ties go to the
+ * class that appears first in the training dataset. Neurons that are the BMU of no training item inherit the labels of
+ * the nearest labeled neurons in the lattice: they are labeled in order of their number of hops to a labeled neuron,
+ * each with the mean distribution of its neighbors labeled in the previous hop. Training items without a BMU, i.e.,
+ * whose distances to all prototypes are NaN, do not vote.
+ * <br/>
+ * The BMUs of the training items are taken from a {@link Projection}, which may be shared with visualizations, and
+ * the votes are counted per neuron, in parallel. Predictions use an {@link InferenceModel} of the same prototypes, so
+ * they are thread-safe and allocation-free; the classifier does not change if the model keeps learning.
+ * <br/>
+ * Classes are numbered from zero, in order of their first appearance in the training dataset.
+ *
+ * @see Projection
+ * @see InferenceModel
+ *
+ * @author brunomnsilva
+ */
+public final class SelfOrganizingMapClassifier {
+
+    /** Number of lattice cells per parallel task. */
+    private static final int CHUNK_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final InferenceModel inferenceModel;
+
+    /** Target output of each class. */
+    private final VectorN[] classOutputs;
+    /** Translates a target output to its class. */
+    private final Map<OutputKey, Integer> classes;
+
+    /** Class distribution of each lattice cell: distributions[cell * numberClasses + class]. */
+    private final double[] distributions;
+    /** Majority class of each lattice cell; -1 if it could not be labeled. */
+    private final int[] cellClasses;
+    /** Number of training items of each lattice cell. */
+    private final int[] hitCounts;
+    /** Number of hops from each lattice cell to a neuron labeled by training items; -1 if none. */
+    private final int[] inheritanceDistances;
+
+    private SelfOrganizingMapClassifier(CodebookSnapshot snapshot, int[] bmuCells, Dataset dataset) {
+        this.width = snapshot.getWidth();
+        this.height = snapshot.getHeight();
+        this.inferenceModel = new InferenceModel.Builder(snapshot).build();
+
+        // Encode the classes, in order of first appearance
+        this.classes = new HashMap<>();
+        List<VectorN> outputs = new ArrayList<>();
+        int[] itemClasses = new int[dataset.size()];
+        for (int i = 0; i < itemClasses.length; i++) {
+            VectorN output = dataset.get(i).getTargetOutput();
+            Integer c = classes.putIfAbsent(new OutputKey(output.values()), outputs.size());
+            if (c == null) {
+                c = outputs.size();
+                outputs.add(output.copy());
+            }
+            itemClasses[i] = c;
+        }
+        this.classOutputs = outputs.toArray(new VectorN[0]);
+
+        int cellCount = width * height;
+        int numberClasses = classOutputs.length;
+
+        // Group the items by BMU (counting sort), so that each cell counts its own votes;
+        // items without a BMU (cell -1, e.g., all distances are NaN) are not counted
+        hitCounts = new int[cellCount];
+        for (int cell : bmuCells) {
+            if (cell >= 0) {
+                hitCounts[cell]++;
+            }
+        }
+        int[] offsets = new int[cellCount + 1];
+        for (int cell = 0; cell < cellCount; cell++) {
+            offsets[cell + 1] = offsets[cell] + hitCounts[cell];
+        }
+        int[] grouped = new int[offsets[cellCount]];
+        int[] next = Arrays.copyOf(offsets, cellCount);
+        for (int i = 0; i < bmuCells.length; i++) {
+            if (bmuCells[i] >= 0) {
+                grouped[next[bmuCells[i]]++] = itemClasses[i];
+            }
+        }
+
+        distributions = new double[cellCount * numberClasses];
+        cellClasses = new int[cellCount];
+        inheritanceDistances = new int[cellCount];
+
+        int chunks = (cellCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(ch -> {
+            for (int cell = ch * CHUNK_SIZE, end = Math.min(cellCount, (ch + 1) * CHUNK_SIZE); cell < end; cell++) {
+                int hits = hitCounts[cell];
+                if (hits == 0) {
+                    cellClasses[cell] = -1;
+                    inheritanceDistances[cell] = -1;
+                    continue;
+                }
+
+                int base = cell * numberClasses;
+                for (int k = offsets[cell]; k < offsets[cell + 1]; k++) {
+                    distributions[base + grouped[k]]++;
+                }
+                for (int c = 0; c < numberClasses; c++) {
+                    distributions[base + c] /= hits;
+                }
+                cellClasses[cell] = majority(distributions, base, numberClasses);
+            }
+        });
+
+        inheritLabels(snapshot.getLattice().getAdjacency(), numberClasses);
+    }
+
+    /**
+     * Labels the neurons without training items, by breadth-first search from the labeled neurons.
+     * All neurons at the same number of hops are labeled from the previous hop only, so the result does not depend on
+     * the order in which they are visited.
+     */
+    private void inheritLabels(LatticeAdjacency adjacency, int numberClasses) {
+        int cellCount = cellClasses.length;
+        int[] frontier = new int[cellCount];
+        int frontierSize = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (cellClasses[cell] >= 0) {
+                frontier[frontierSize++] = cell;
+            }
+        }
+
+        int[] nextFrontier = new int[cellCount];
+        for (int distance = 1; frontierSize > 0; distance++) {
+            int nextSize = 0;
+            for (int f = 0; f < frontierSize; f++) {
+                int cell = frontier[f];
+                for (int p = adjacency.neighborStart(cell); p < adjacency.neighborEnd(cell); p++) {
+                    int neighbor = adjacency.neighborAt(p);
+                    if (inheritanceDistances[neighbor] < 0) {
+                        inheritanceDistances[neighbor] = distance;
+                        nextFrontier[nextSize++] = neighbor;
+                    }
+                }
+            }
+
+            for (int f = 0; f < nextSize; f++) {
+                int cell = nextFrontier[f];
+                int base = cell * numberClasses;
+                int sources = 0;
+                for (int p = adjacency.neighborStart(cell); p < adjacency.neighborEnd(cell); p++) {
+                    int neighbor = adjacency.neighborAt(p);
+                    if (inheritanceDistances[neighbor] == distance - 1) {
+                        int neighborBase = neighbor * numberClasses;
+                        for (int c = 0; c < numberClasses; c++) {
+                            distributions[base + c] += distributions[neighborBase + c];
+                        }
+                        sources++;
+                    }
+                }
+                for (int c = 0; c < numberClasses; c++) {
+                    distributions[base + c] /= sources;
+                }
+                cellClasses[cell] = majority(distributions, base, numberClasses);
+            }
+
+            int[] swap = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swap;
+            frontierSize = nextSize;
+        }
+    }
+
+    private static int majority(double[] distributions, int base, int numberClasses) {
+        int best = 0;
+        for (int c = 1; c < numberClasses; c++) {
+            if (distributions[base + c] > distributions[base + best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Labels the neurons of a self-organizing map with the target outputs of a dataset.
+     * @param som the trained self-organizing map
+     * @param dataset the training dataset, with target outputs
+     * @return the classifier
+     */
+    public static SelfOrganizingMapClassifier fit(SelfOrganizingMap som, Dataset dataset) {
+        return fit(new Projection(som, dataset));
+    }
+
+    /**
+     * Labels the neurons of a self-organizing map with the target outputs of a (possibly shared) projection
+     * of a dataset; the projection is refreshed first.
+     * @param projection the projection of the training dataset, with target outputs
+     * @return the classifier
+     */
+    public static SelfOrganizingMapClassifier fit(Projection projection) {
+        Args.nullNotPermitted(projection, "projection");
+
+        Dataset dataset = projection.getDataset();
+        if (dataset.outputDimensionality() == 0) {
+            throw new IllegalArgumentException("The dataset has no target outputs.");
+        }
+        Args.requireGreaterEqualThan(dataset.size(), "dataset.size()", 1);
+
+        // The BMUs and the prototypes they were computed with must be consistent
+        CodebookSnapshot snapshot;
+        int[] bmuCells = new int[projection.size()];
+        synchronized (projection) {
+            projection.refresh();
+            projection.copyBmuCellsTo(bmuCells);
+            snapshot = projection.getSnapshot();
+        }
+
+        return new SelfOrganizingMapClassifier(snapshot, bmuCells, dataset);
+    }
+
+    /**
+     * Classifies an input. Thread-safe and allocation-free.
+     * @param input the input
+     * @return the class of the input; -1 if its best matching unit could not be labeled
+     */
+    public int predict(double[] input) {
+        return cellClasses[inferenceModel.bestMatchingCellFor(input)];
+    }
+
+    /**
+     * Classifies an input. Thread-safe.
+     * @param input the input
+     * @return the class of the input; -1 if its best matching unit could not be labeled
+     */
+    public int predict(VectorN input) {
+        Args.nullNotPermitted(input, "input");
+
+        return predict(input.values());
+    }
+
+    /**
+     * Classifies a batch of inputs, in the calling thread. Thread-safe and allocation-free.
+     * @param inputs the inputs
+     * @param predictions where the class of each input is written
+     */
+    public void predict(double[][] inputs, int[] predictions) {
+        Args.nullNotPermitted(inputs, "inputs");
+        Args.nullNotPermitted(predictions, "predictions");
+        Args.requireGreaterEqualThan(predictions.length, "predictions.length", inputs.length);
+
+        for (int i = 0; i < inputs.length; i++) {
+            predictions[i] = predict(inputs[i]);
+        }
+    }
+
+    /**
+     * Computes the class distribution of the best matching unit of an input. Thread-safe and allocation-free.
+     * @param input the input
+     * @param distribution where the probability of each class is written
+     */
+    public void predictDistribution(double[] input, double[] distribution) {
+        Args.nullNotPermitted(distribution, "distribution");
+        Args.requireGreaterEqualThan(distribution.length, "distribution.length", classOutputs.length);
+
+        int cell = inferenceModel.bestMatchingCellFor(input);
+        System.arraycopy(distributions, cell * classOutputs.length, distribution, 0, classOutputs.length);
+    }
+
+    /**
+     * Computes the fraction of the items of a dataset that are correctly classified, in parallel.
+     * Items whose target output is not one of the classes are counted as misclassified.
+     * @param dataset the dataset, with target outputs
+     * @return the accuracy, in [0, 1]
+     */
+    public double accuracy(Dataset dataset) {
+        Args.nullNotPermitted(dataset, "dataset");
+        Args.requireGreaterEqualThan(dataset.size(), "dataset.size()", 1);
+
+        int size = dataset.size();
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[] correct = new int[chunks];
+        IntStream.range(0, chunks).parallel().forEach(ch -> {
+            for (int i = ch * CHUNK_SIZE, end = Math.min(size, (ch + 1) * CHUNK_SIZE); i < end; i++) {
+                int expected = classOf(dataset.get(i).getTargetOutput());
+                if (expected >= 0 && predict(dataset.get(i).getInput()) == expected) {
+                    correct[ch]++;
+                }
+            }
+        });
+
+        return (double) Arrays.stream(correct).sum() / size;
+    }
+
+    /**
+     * Returns the class of a target output.
+     * @param targetOutput the target output
+     * @return the class; -1 if the target output is not one of the classes
+     */
+    public int classOf(VectorN targetOutput) {
+        Args.nullNotPermitted(targetOutput, "targetOutput");
+
+        Integer c = classes.get(new OutputKey(targetOutput.values()));
+        return (c != null) ? c : -1;
+    }
+
+    /**
+     * Returns the target output of a class.
+     * @param classIndex the class
+     * @return a copy of the target output
+     */
+    public VectorN getClassOutput(int classIndex) {
+        Args.requireInRange(classIndex, "classIndex", 0, classOutputs.length - 1);
+
+        return classOutputs[classIndex].copy();
+    }
+
+    /**
+     * Returns the number of classes, i.e., of distinct target outputs in the training dataset.
+     * @return the number of classes
+     */
+    public int getNumberClasses() {
+        return classOutputs.length;
+    }
+
+    /**
+     * Returns the class of the neuron at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the class; -1 if the neuron could not be labeled
+     */
+    public int getNeuronClass(int x, int y) {
+        return cellClasses[cellOf(x, y)];
+    }
+
+    /**
+     * Returns the class distribution of the neuron at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the probability of each class; all zero if the neuron could not be labeled
+     */
+    public double[] getNeuronDistribution(int x, int y) {
+        int base = cellOf(x, y) * classOutputs.length;
+        return Arrays.copyOfRange(distributions, base, base + classOutputs.length);
+    }
+
+    /**
+     * Returns the number of training items whose best matching unit is the neuron at a lattice location.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the number of training items
+     */
+    public int getHitCount(int x, int y) {
+        return hitCounts[cellOf(x, y)];
+    }
+
+    /**
+     * Returns the number of hops from the neuron at a lattice location to the nearest neuron labeled by training
+     * items.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return zero if the neuron was labeled by training items; -1 if it could not be labeled
+     */
+    public int getInheritanceDistance(int x, int y) {
+        return inheritanceDistances[cellOf(x, y)];
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    private int cellOf(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return x * height + y;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SelfOrganizingMapClassifier{%d x %d, %d classes}", width, height, classOutputs.length);
+    }
+
+    /**
+     * Compares target outputs by value, so that distinct outputs are never merged into the same class.
+     */
+    private static final class OutputKey {
+
+        private final double[] values;
+        private final int hash;
+
+        OutputKey(double[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof OutputKey && Arrays.equals(values, ((OutputKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -71,7 +71,7 @@ public class SelfOrganizingMapClusteringResult {
      */
     public void setClusterAssignment(int x, int y, int code) {
         Args.requireInRange(x, "x", 0, originator.getWidth() - 1);
-        Args.requireInRange(x, "y", 0, originator.getHeight() - 1);
+        Args.requireInRange(y, "y", 0, originator.getHeight() - 1);
 
         clusterCodeAssignment[x][y] = code;
     }
@@ -84,7 +84,7 @@ public class SelfOrganizingMapClusteringResult {
      */
     public int getClusterAssignment(int x, int y) {
         Args.requireInRange(x, "x", 0, originator.getWidth() - 1);
-        Args.requireInRange(x, "y", 0, originator.getHeight() - 1);
+        Args.requireInRange(y, "y", 0, originator.getHeight() - 1);
 
         return clusterCodeAssignment[x][y];
     }
@@ -24,11 +24,23 @@
 
 package com.brunomnsilva.neuralnetworks.models.som;
 
+import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.core.ArrayUtils;
 import com.brunomnsilva.neuralnetworks.core.CSVUtils;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * A utility class for exporting SelfOrganizingMaps.
@@ -37,6 +49,9 @@ import java.io.IOException;
  */
 public class SelfOrganizingMapExport {
 
+    /** Size of the write buffers. */
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
     /**
      * Exports a SelfOrganizingMap in CSV format, using the default (comma) separator.
      * @param som the SelfOrganizingMap to export
@@ -55,25 +70,91 @@ public class SelfOrganizingMapExport {
      * @throws IOException if the file cannot be created
      */
     public static void toCSV(SelfOrganizingMap som, String outputFilename, char separator) throws IOException {
-        FileWriter fw = new FileWriter(outputFilename);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilename), WRITE_BUFFER_SIZE)) {
+
+            int dimensionality = som.getDimensionality();
+            String[] dimensionNames = new String[dimensionality];
+            for (int i = 0; i < dimensionality; ++i) {
+                dimensionNames[i] = "v" + (i + 1);
+            }
+
+            String[] header = ArrayUtils.concatenate(new String[]{"x", "y"}, dimensionNames);
+            CSVUtils.appendValuesToFile(writer, separator, header);
+
+            // One reusable line buffer; coordinates are written as doubles, as before
+            StringBuilder line = new StringBuilder();
+            for (PrototypeNeuron p : som) {
+                line.setLength(0);
+                line.append((double) p.getIndexX()).append(separator).append((double) p.getIndexY());
 
-        int dimensionality = som.getDimensionality();
-        String[] dimensionNames = new String[dimensionality];
-        for(int i=0; i < dimensionality; ++i) {
-            dimensionNames[i] = "v" + (i+1);
+                VectorN prototype = p.getPrototype();
+                for (int d = 0; d < dimensionality; ++d) {
+                    line.append(separator).append(prototype.get(d));
+                }
+                line.append('\n');
+                writer.append(line);
+            }
         }
+    }
 
-        String[] header = ArrayUtils.concatenate(new String[]{"x", "y"}, dimensionNames);
-        CSVUtils.appendValuesToFile(fw, separator, header);
+    /**
+     * Exports a SelfOrganizingMap in a compact binary format, that can be loaded back with
+     * {@link SelfOrganizingMapImport#fromBinary(String)} or mapped with {@link MappedCodebook#map(String)};
+     * see {@link MappedCodebook} for the format.
+     * <br/>
+     * The prototypes are streamed to the file through a direct buffer, so large maps are written at disk speed.
+     * The file is written to a temporary file first and then moved over the target, so an existing file is never
+     * left half-written.
+     *
+     * @param som the SelfOrganizingMap to export
+     * @param outputFilename the filename of the binary file
+     * @throws IOException if the file cannot be written
+     */
+    public static void toBinary(SelfOrganizingMap som, String outputFilename) throws IOException {
+        Args.nullNotPermitted(som, "som");
+        Args.nullNotPermitted(outputFilename, "outputFilename");
 
-        for (PrototypeNeuron p : som) {
-            double[] coords = new double[]{p.getIndexX(), p.getIndexY()};
-            double[] values = p.getPrototype().values();
+        Path target = Paths.get(outputFilename).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
 
-            double[] line = ArrayUtils.concatenate(coords, values);
-            CSVUtils.appendValuesToFile(fw, separator, line);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, MappedCodebook.header(som));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int width = som.getWidth();
+            int height = som.getHeight();
+            int dimensionality = som.getDimensionality();
+
+            for (int x = 0; x < width; ++x) {
+                for (int y = 0; y < height; ++y) {
+                    VectorN prototype = som.get(x, y).getPrototype();
+                    for (int d = 0; d < dimensionality; ++d) {
+                        if (!buffer.hasRemaining()) {
+                            buffer.flip();
+                            writeFully(channel, buffer);
+                            buffer.clear();
+                        }
+                        buffer.putDouble(prototype.get(d));
+                    }
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+
+            channel.force(false);
         }
 
-        fw.close();
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.models.som.impl.BasicSOM;
+
+import java.io.IOException;
+
+/**
+ * A utility class for importing SelfOrganizingMaps exported by {@link SelfOrganizingMapExport}.
+ *
+ * @author brunomnsilva
+ */
+public class SelfOrganizingMapImport {
+
+    /**
+     * Loads a SelfOrganizingMap exported with {@link SelfOrganizingMapExport#toBinary(SelfOrganizingMap, String)}.
+     * <br/>
+     * The file is memory-mapped and its prototypes copied into a new {@link BasicSOM}, with the same lattice shape,
+     * metric distance and prototype ordering of the exported map.
+     * @param filename the filename of the binary file
+     * @return the loaded SelfOrganizingMap
+     * @throws IOException if the file cannot be read or is not a valid binary self-organizing map file
+     */
+    public static BasicSOM fromBinary(String filename) throws IOException {
+        return MappedCodebook.map(filename).toSelfOrganizingMap();
+    }
+
+    /**
+     * Maps a SelfOrganizingMap exported with {@link SelfOrganizingMapExport#toBinary(SelfOrganizingMap, String)},
+     * without copying its prototypes.
+     * @param filename the filename of the binary file
+     * @return a read-only view of the exported map
+     * @throws IOException if the file cannot be read or is not a valid binary self-organizing map file
+     */
+    public static MappedCodebook mapBinary(String filename) throws IOException {
+        return MappedCodebook.map(filename);
+    }
+}
@@ -63,6 +63,8 @@ public class SelfOrganizingMapInitialization {
                 som.get(w,h).setPrototype(random);
             }
         }
+
+        som.prototypesUpdated();
     }
 
     /**
@@ -95,5 +97,7 @@ public class SelfOrganizingMapInitialization {
                 som.get(w,h).setPrototype(random); // Checks dimensionality match
             }
         }
+
+        som.prototypesUpdated();
     }
 }
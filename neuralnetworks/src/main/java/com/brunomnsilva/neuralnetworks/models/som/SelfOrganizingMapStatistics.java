@@ -21,12 +21,17 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-
 package com.brunomnsilva.neuralnetworks.models.som;
 
+import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
-import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 /**
  * Computes the standard SOM statistics:
@@ -35,26 +40,60 @@ import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
  *     <li>Topographic error - measures how often neighboring BMUs in the map are not also neighbors in the input space, indicating a distortion in the topology of the map.
  *     A topographic error of <code>0</code> means "perfect" topology, while <code>1</code> means that no topology ordering was achieved.</li>
  * </ul>
- * Instances of this class are solely created through {@link #compute(SelfOrganizingMap, Dataset)}.
+ * The first and second BMUs of each input are found in a single pass over the codebook, and the dataset is
+ * partitioned across the available processors.
+ * <br/>
+ * For huge datasets, the statistics can be estimated from a random sample, within a sample and time budget; the
+ * estimates come with their standard errors and confidence intervals.
+ * <br/>
+ * Instances of this class are solely created through {@link #compute(SelfOrganizingMap, Dataset)},
+ * {@link #compute(CodebookSnapshot, Dataset)}, {@link #compute(Projection)} or
+ * {@link #estimate(CodebookSnapshot, Dataset, int, long, long)}.
  *
  * @author brunomnsilva
  */
 public class SelfOrganizingMapStatistics {
 
+    /** Number of dataset items per partition of the exact computation. */
+    private static final int CHUNK_SIZE = 256;
+
+    /** Number of samples between checks of the time budget. */
+    private static final int TIME_CHECK_INTERVAL = 64;
+
     /** The computed quantization error. */
     private final double quantizationError;
 
     /** The computed topographic error. */
     private final double topographicError;
 
+    /** Number of dataset items the statistics were computed from. */
+    private final long sampleCount;
+
+    /** Whether the statistics were estimated from a sample of the dataset. */
+    private final boolean estimate;
+
+    /** Standard errors of the estimates; 0 if computed over the whole dataset. */
+    private final double quantizationErrorStandardError;
+    private final double topographicErrorStandardError;
+
     /**
      * Private constructor that initializes a SelfOrganizingMapStatistics instance.
      * @param quantizationError the computed quantization error
      * @param topographicError the computed topographic error
+     * @param sampleCount the number of dataset items used
+     * @param estimate whether the statistics are estimates from a sample
+     * @param quantizationErrorStandardError the standard error of the quantization error
+     * @param topographicErrorStandardError the standard error of the topographic error
      */
-    private SelfOrganizingMapStatistics(double quantizationError, double topographicError) {
+    private SelfOrganizingMapStatistics(double quantizationError, double topographicError, long sampleCount,
+                                        boolean estimate, double quantizationErrorStandardError,
+                                        double topographicErrorStandardError) {
         this.quantizationError = quantizationError;
         this.topographicError = topographicError;
+        this.sampleCount = sampleCount;
+        this.estimate = estimate;
+        this.quantizationErrorStandardError = quantizationErrorStandardError;
+        this.topographicErrorStandardError = topographicErrorStandardError;
     }
 
     /**
@@ -64,25 +103,162 @@ public class SelfOrganizingMapStatistics {
      * @return an instance of SelfOrganizingMapStatistics with computed values
      */
     public static SelfOrganizingMapStatistics compute(SelfOrganizingMap som, Dataset dataset) {
-        double qe = 0, te = 0;
+        Args.nullNotPermitted(som, "som");
+        Args.nullNotPermitted(dataset, "dataset");
+
+        int height = som.getHeight();
+        VectorN[] prototypes = new VectorN[som.size()];
+        int[] cells = new int[som.size()];
+        for (int i = 0; i < prototypes.length; i++) {
+            PrototypeNeuron neuron = som.get(i);
+            prototypes[i] = neuron.getPrototype();
+            cells[i] = neuron.getIndexX() * height + neuron.getIndexY();
+        }
+
+        Codebook codebook = new Codebook(prototypes, cells, som.getMetricDistance(),
+                som.getLattice().getAdjacency());
+        return computeExact(codebook, dataset);
+    }
+
+    /**
+     * Computes the statistics over a codebook snapshot and returns an instance of SelfOrganizingMapStatistics.
+     * <br/>
+     * This can be safely used while the model is learning in another thread.
+     * @param snapshot the codebook snapshot of the self-organizing map
+     * @param dataset the dataset to compute the statistics
+     * @return an instance of SelfOrganizingMapStatistics with computed values
+     */
+    public static SelfOrganizingMapStatistics compute(CodebookSnapshot snapshot, Dataset dataset) {
+        Args.nullNotPermitted(snapshot, "snapshot");
+        Args.nullNotPermitted(dataset, "dataset");
+
+        return computeExact(Codebook.of(snapshot), dataset);
+    }
 
-        for (DatasetItem item : dataset) {
-            VectorN input = item.getInput();
-            PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
+    /**
+     * Computes the statistics from a projection, without searching any BMU; the projection is used as of its
+     * last {@link Projection#refresh() refresh}.
+     * @param projection the projection of the dataset onto the self-organizing map
+     * @return an instance of SelfOrganizingMapStatistics with computed values
+     */
+    public static SelfOrganizingMapStatistics compute(Projection projection) {
+        Args.nullNotPermitted(projection, "projection");
 
-            // Compute quantization error as the distance between
-            // the input and the bmu's prototype
-            double error = som.getMetricDistance().distanceBetween(bmu.getPrototype(), input);
-            qe += error;
+        synchronized (projection) {
+            LatticeAdjacency adjacency = projection.getSnapshot().getLattice().getAdjacency();
+            int size = projection.size();
+            double qe = 0, te = 0;
 
-            // Compute the topographic error for the input
-            te += topographicErrorForInput(input, som);
+            for (int i = 0; i < size; i++) {
+                int first = projection.getBmuCell(i);
+                int second = projection.getSecondBmuCell(i);
+
+                qe += first < 0 ? Double.NaN : projection.getDistance(i);
+
+                boolean neighbors = second < 0 || adjacency.areNeighbors(first, second);
+                te += neighbors ? 0 : 1;
+            }
+
+            return new SelfOrganizingMapStatistics(qe / size, te / size, size, false, 0, 0);
+        }
+    }
+
+    /**
+     * Estimates the statistics from a random sample (with replacement) of the dataset, over the latest codebook
+     * snapshot of a self-organizing map.
+     * @see #estimate(CodebookSnapshot, Dataset, int, long, long)
+     * @param som the self-organizing map to estimate the statistics
+     * @param dataset the dataset to estimate the statistics
+     * @param sampleBudget the maximum number of samples
+     * @param timeBudgetMillis the maximum time to spend, in milliseconds
+     * @return an instance of SelfOrganizingMapStatistics with estimated values
+     */
+    public static SelfOrganizingMapStatistics estimate(SelfOrganizingMap som, Dataset dataset,
+                                                       int sampleBudget, long timeBudgetMillis) {
+        Args.nullNotPermitted(som, "som");
+        return estimate(som.snapshot(), dataset, sampleBudget, timeBudgetMillis, System.nanoTime());
+    }
+
+    /**
+     * Estimates the statistics from a random sample (with replacement) of the dataset.
+     * <br/>
+     * Sampling stops when either <code>sampleBudget</code> samples were processed or <code>timeBudgetMillis</code>
+     * elapsed, whichever comes first; at least one sample is processed. Samples are processed in parallel, each
+     * worker with its own share of the budget and random stream, so the estimate is reproducible for a given seed
+     * unless the time budget is exhausted.
+     * <br/>
+     * The estimates come with their standard errors, see {@link #getQuantizationErrorConfidenceInterval(double)}
+     * and {@link #getTopographicErrorConfidenceInterval(double)}. This can be safely used while the model is
+     * learning in another thread.
+     *
+     * @param snapshot the codebook snapshot of the self-organizing map
+     * @param dataset the dataset to estimate the statistics
+     * @param sampleBudget the maximum number of samples
+     * @param timeBudgetMillis the maximum time to spend, in milliseconds
+     * @param seed the seed of the random sampling
+     * @return an instance of SelfOrganizingMapStatistics with estimated values
+     * @throws IllegalArgumentException if snapshot or dataset are null, dataset is empty, or any budget is lower than 1
+     */
+    public static SelfOrganizingMapStatistics estimate(CodebookSnapshot snapshot, Dataset dataset,
+                                                       int sampleBudget, long timeBudgetMillis, long seed) {
+        Args.nullNotPermitted(snapshot, "snapshot");
+        Args.nullNotPermitted(dataset, "dataset");
+        Args.requireGreaterEqualThan(dataset.size(), "dataset.size()", 1);
+        Args.requireGreaterEqualThan(sampleBudget, "sampleBudget", 1);
+        if (timeBudgetMillis < 1) {
+            throw new IllegalArgumentException("Require 'timeBudgetMillis' (" + timeBudgetMillis + ") to be positive.");
         }
 
-        qe /= dataset.size();
-        te /= dataset.size();
+        Codebook codebook = Codebook.of(snapshot);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        int size = dataset.size();
+
+        int workers = Math.max(1, Math.min(sampleBudget, ForkJoinPool.getCommonPoolParallelism()));
+        SplittableRandom[] randoms = new SplittableRandom[workers];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int w = 0; w < workers; w++) {
+            randoms[w] = random.split();
+        }
 
-        return new SelfOrganizingMapStatistics(qe, te);
+        Accumulator[] partial = new Accumulator[workers];
+        IntStream.range(0, workers).parallel().forEach(w -> {
+            int quota = sampleBudget / workers + (w < sampleBudget % workers ? 1 : 0);
+            Accumulator accumulator = new Accumulator();
+            for (int s = 0; s < quota; s++) {
+                if (s > 0 && s % TIME_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) break;
+                accumulator.add(codebook, dataset.get(randoms[w].nextInt(size)).getInput());
+            }
+            partial[w] = accumulator;
+        });
+
+        Accumulator total = Accumulator.merge(partial);
+        long n = total.count;
+        double qeStandardError = n > 1 ? Math.sqrt(total.m2 / (n - 1) / n) : Double.POSITIVE_INFINITY;
+        double te = (double) total.topographicErrors / n;
+        double teStandardError = n > 1 ? Math.sqrt(te * (1 - te) / (n - 1)) : Double.POSITIVE_INFINITY;
+
+        return new SelfOrganizingMapStatistics(total.mean, te, n, true, qeStandardError, teStandardError);
+    }
+
+    private static SelfOrganizingMapStatistics computeExact(Codebook codebook, Dataset dataset) {
+        int size = dataset.size();
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        // Partial results are merged in a fixed order, so the result does not depend on scheduling
+        Accumulator[] partial = new Accumulator[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            Accumulator accumulator = new Accumulator();
+            for (int i = c * CHUNK_SIZE; i < Math.min(size, (c + 1) * CHUNK_SIZE); i++) {
+                accumulator.add(codebook, dataset.get(i).getInput());
+            }
+            partial[c] = accumulator;
+        });
+
+        Accumulator total = Accumulator.merge(partial);
+        double qe = total.sum / size;
+        double te = (double) total.topographicErrors / size;
+
+        return new SelfOrganizingMapStatistics(qe, te, size, false, 0, 0);
     }
 
     /**
@@ -101,31 +277,165 @@ public class SelfOrganizingMapStatistics {
         return topographicError;
     }
 
+    /**
+     * Returns the number of dataset items the statistics were computed from, i.e., the dataset size or the
+     * number of samples of an estimate.
+     * @return the number of samples
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Checks whether the statistics were estimated from a sample of the dataset.
+     * @return true if the statistics are estimates, false if computed over the whole dataset
+     */
+    public boolean isEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the standard error of the quantization error.
+     * @return the standard error; 0 if computed over the whole dataset
+     */
+    public double getQuantizationErrorStandardError() {
+        return quantizationErrorStandardError;
+    }
+
+    /**
+     * Returns the standard error of the topographic error.
+     * @return the standard error; 0 if computed over the whole dataset
+     */
+    public double getTopographicErrorStandardError() {
+        return topographicErrorStandardError;
+    }
+
+    /**
+     * Returns the (normal approximation) confidence interval of the quantization error.
+     * @param confidence the confidence level, in ]0, 1[, e.g., 0.95
+     * @return the lower and upper bounds of the interval
+     */
+    public double[] getQuantizationErrorConfidenceInterval(double confidence) {
+        double margin = zScore(confidence) * quantizationErrorStandardError;
+        return new double[]{Math.max(0, quantizationError - margin), quantizationError + margin};
+    }
+
+    /**
+     * Returns the (normal approximation) confidence interval of the topographic error.
+     * @param confidence the confidence level, in ]0, 1[, e.g., 0.95
+     * @return the lower and upper bounds of the interval
+     */
+    public double[] getTopographicErrorConfidenceInterval(double confidence) {
+        double margin = zScore(confidence) * topographicErrorStandardError;
+        return new double[]{Math.max(0, topographicError - margin), Math.min(1, topographicError + margin)};
+    }
+
     @Override
     public String toString() {
-        return String.format("Quantization Error = %.3f | Topographic Error = %.3f",
-                quantizationError, topographicError);
-    }
-
-    private static int topographicErrorForInput(VectorN input, SelfOrganizingMap som) {
-        double minDist1 = Double.MAX_VALUE;
-        double minDist2 = Double.MAX_VALUE;
-        PrototypeNeuron closest1 = null;
-        PrototypeNeuron closest2 = null;
-
-        for (PrototypeNeuron p : som) {
-            double dist = som.getMetricDistance().distanceBetween(p.getPrototype(), input);
-            if (dist < minDist1) {
-                minDist2 = minDist1;
-                closest2 = closest1;
-                minDist1 = dist;
-                closest1 = p;
-            } else if (dist < minDist2) {
-                minDist2 = dist;
-                closest2 = p;
+        if (!estimate) {
+            return String.format("Quantization Error = %.3f | Topographic Error = %.3f",
+                    quantizationError, topographicError);
+        }
+
+        double z = zScore(0.95);
+        return String.format("Quantization Error = %.3f ± %.3f | Topographic Error = %.3f ± %.3f (95%%, n = %d)",
+                quantizationError, z * quantizationErrorStandardError,
+                topographicError, z * topographicErrorStandardError, sampleCount);
+    }
+
+    private static double zScore(double confidence) {
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("Require 'confidence' (" + confidence + ") to be in the range ]0, 1[");
+        }
+        return new NormalDistribution().inverseCumulativeProbability(0.5 + confidence / 2);
+    }
+
+    /**
+     * Prototypes in storage order, with their lattice cells, and what is needed to compute the statistics.
+     */
+    private static final class Codebook {
+        final VectorN[] prototypes;
+        final int[] cells;
+        final MetricDistance metricDistance;
+        final LatticeAdjacency adjacency;
+
+        Codebook(VectorN[] prototypes, int[] cells, MetricDistance metricDistance, LatticeAdjacency adjacency) {
+            this.prototypes = prototypes;
+            this.cells = cells;
+            this.metricDistance = metricDistance;
+            this.adjacency = adjacency;
+        }
+
+        static Codebook of(CodebookSnapshot snapshot) {
+            VectorN[] prototypes = new VectorN[snapshot.size()];
+            int[] cells = new int[snapshot.size()];
+            for (int i = 0; i < prototypes.length; i++) {
+                prototypes[i] = snapshot.prototypeAt(i);
+                cells[i] = snapshot.cellAt(i);
             }
+            return new Codebook(prototypes, cells, snapshot.getMetricDistance(), snapshot.getLattice().getAdjacency());
         }
+    }
 
-        return som.getLattice().areNeighbors(closest1, closest2) ? 0 : 1;
+    /**
+     * Running quantization and topographic errors of a partition of inputs.
+     */
+    private static final class Accumulator {
+        long count;
+        double sum;
+        /** Running mean and sum of squared deviations (Welford) of the quantization error. */
+        double mean, m2;
+        long topographicErrors;
+
+        void add(Codebook codebook, VectorN input) {
+            // Two closest prototypes, in a single pass
+            double minDist1 = Double.MAX_VALUE;
+            double minDist2 = Double.MAX_VALUE;
+            int closest1 = -1;
+            int closest2 = -1;
+
+            VectorN[] prototypes = codebook.prototypes;
+            for (int i = 0; i < prototypes.length; i++) {
+                double dist = codebook.metricDistance.distanceBetween(prototypes[i], input);
+                if (dist < minDist1) {
+                    minDist2 = minDist1;
+                    closest2 = closest1;
+                    minDist1 = dist;
+                    closest1 = i;
+                } else if (dist < minDist2) {
+                    minDist2 = dist;
+                    closest2 = i;
+                }
+            }
+
+            // Quantization error: distance between the input and the BMU's prototype
+            double error = closest1 < 0 ? Double.NaN : minDist1;
+            count++;
+            sum += error;
+            double delta = error - mean;
+            mean += delta / count;
+            m2 += delta * (error - mean);
+
+            // Topographic error: the first and second BMUs are not neighbors in the lattice
+            boolean neighbors = closest2 < 0
+                    || codebook.adjacency.areNeighbors(codebook.cells[closest1], codebook.cells[closest2]);
+            topographicErrors += neighbors ? 0 : 1;
+        }
+
+        static Accumulator merge(Accumulator[] partial) {
+            Accumulator total = new Accumulator();
+            for (Accumulator p : partial) {
+                if (p.count == 0) continue;
+
+                long count = total.count + p.count;
+                double delta = p.mean - total.mean;
+                total.mean += delta * p.count / count;
+                total.m2 += p.m2 + delta * delta * total.count * p.count / count;
+                total.count = count;
+                total.sum += p.sum;
+                total.topographicErrors += p.topographicErrors;
+            }
+            return total;
+        }
     }
 }
@@ -45,8 +45,8 @@ public class SimpleHexagonalLattice extends HexagonalLattice {
     }
 
     @Override
-    public boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b) {
+    protected boolean isAdjacent(int ax, int ay, int bx, int by) {
         // In a hexagonal lattice a cell has 6 neighbors
-        return distanceBetween(a, b) <= 1;
+        return Math.max(Math.abs(bx - ax), Math.abs(by - ay)) <= 1;
     }
 }
@@ -40,10 +40,10 @@ public class SimpleRectangularLattice extends RectangularLattice {
     }
 
     @Override
-    public boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b) {
+    protected boolean isAdjacent(int ax, int ay, int bx, int by) {
         // In a rectangular lattice a cell has 8 neighbors
-        int dx = Math.abs( b.getIndexX() - a.getIndexX() );
-        int dy = Math.abs( b.getIndexY() - a.getIndexY() );
+        int dx = Math.abs( bx - ax );
+        int dy = Math.abs( by - ay );
         return Math.max(dx, dy) <= 1;
     }
 }
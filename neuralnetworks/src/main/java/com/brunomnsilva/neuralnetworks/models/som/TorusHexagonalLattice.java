@@ -17,7 +17,9 @@ public class TorusHexagonalLattice extends HexagonalLattice {
     }
 
     @Override
-    public boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b) {
-        return distanceBetween(a, b) <= 1;
+    protected boolean isAdjacent(int ax, int ay, int bx, int by) {
+        int dx = Math.abs(bx - ax);
+        int dy = Math.abs(by - ay);
+        return Math.max(Math.min(dx, getWidth() - dx), Math.min(dy, getHeight() - dy)) <= 1;
     }
 }
@@ -17,9 +17,9 @@ public class TorusRectangularLattice extends RectangularLattice {
     }
 
     @Override
-    public boolean areNeighbors(PrototypeNeuron a, PrototypeNeuron b) {
-        int dx = Math.min(Math.abs(b.getIndexX() - a.getIndexX()), getWidth() - Math.abs(b.getIndexX() - a.getIndexX()));
-        int dy = Math.min(Math.abs(b.getIndexY() - a.getIndexY()), getHeight() - Math.abs(b.getIndexY() - a.getIndexY()));
+    protected boolean isAdjacent(int ax, int ay, int bx, int by) {
+        int dx = Math.min(Math.abs(bx - ax), getWidth() - Math.abs(bx - ax));
+        int dy = Math.min(Math.abs(by - ay), getHeight() - Math.abs(by - ay));
         return dx <= 1 && dy <= 1;
     }
 }
@@ -0,0 +1,350 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+
+import java.util.Arrays;
+
+/**
+ * The U-matrix (Unified Distance Matrix) of a self-organizing map, kept as a data structure that can be reused
+ * by visualizations and clustering algorithms.
+ * <br/>
+ * The distance between the prototypes of every pair of neighboring neurons is stored in a primitive array aligned
+ * with the positions of the {@link LatticeAdjacency lattice adjacency}, i.e., {@link #edgeDistance(int)} at position
+ * <code>k</code> is the distance between cell <code>c</code> and cell <code>adjacency.neighborAt(k)</code>, for
+ * <code>k</code> in <code>[neighborStart(c), neighborEnd(c))</code>. The value of each neuron aggregates the
+ * distances to its neighbors according to an {@link Aggregation}; all aggregations are kept, so switching among
+ * them costs nothing.
+ * <br/>
+ * The U-matrix is {@link #update(CodebookSnapshot) updated} from codebook snapshots. Only the distances around the
+ * prototypes in the region updated since the last snapshot, see {@link CodebookSnapshot#changedSince(CodebookSnapshot)},
+ * are recomputed.
+ * <br/>
+ * Instances are not thread-safe; updates should be performed by a single thread, e.g., a visualization.
+ *
+ * @author brunomnsilva
+ */
+public final class UMatrix {
+
+    /** How the distances of a neuron to its neighbors are aggregated into a single value. */
+    public enum Aggregation {MIN, MEAN, MEDIAN, MAX}
+
+    private final int width;
+    private final int height;
+    private final LatticeAdjacency adjacency;
+
+    /** For each adjacency position (a -> b), the position of (b -> a); -1 if the adjacency is not symmetric. */
+    private final int[] reversePosition;
+
+    /** Distances between neighboring prototypes, aligned with the adjacency positions. */
+    private final double[] edgeDistances;
+
+    /** Aggregated values, indexed by lattice cell. */
+    private final double[] minValues;
+    private final double[] meanValues;
+    private final double[] medianValues;
+    private final double[] maxValues;
+
+    /** The last snapshot this U-matrix was updated with. */
+    private CodebookSnapshot snapshot;
+
+    /** Scratch state of an update; cells are marked with the current update number. */
+    private final int[] dirtyCells;
+    private final int[] dirtyMark;
+    private final double[] selection;
+    private int updateCount;
+
+    private long version = -1;
+
+    /**
+     * Creates the U-matrix of a codebook snapshot.
+     * @param snapshot the codebook snapshot of the self-organizing map
+     */
+    public UMatrix(CodebookSnapshot snapshot) {
+        Args.nullNotPermitted(snapshot, "snapshot");
+
+        this.width = snapshot.getWidth();
+        this.height = snapshot.getHeight();
+        this.adjacency = snapshot.getLattice().getAdjacency();
+
+        int cells = adjacency.cellCount();
+        int positions = adjacency.neighborEnd(cells - 1);
+        int maxDegree = 0;
+
+        this.reversePosition = new int[positions];
+        for (int cell = 0; cell < cells; cell++) {
+            maxDegree = Math.max(maxDegree, adjacency.degree(cell));
+
+            for (int k = adjacency.neighborStart(cell); k < adjacency.neighborEnd(cell); k++) {
+                int neighbor = adjacency.neighborAt(k);
+                reversePosition[k] = -1;
+                for (int r = adjacency.neighborStart(neighbor); r < adjacency.neighborEnd(neighbor); r++) {
+                    if (adjacency.neighborAt(r) == cell) {
+                        reversePosition[k] = r;
+                        break;
+                    }
+                }
+            }
+        }
+
+        this.edgeDistances = new double[positions];
+        this.minValues = new double[cells];
+        this.meanValues = new double[cells];
+        this.medianValues = new double[cells];
+        this.maxValues = new double[cells];
+
+        this.dirtyCells = new int[cells];
+        this.dirtyMark = new int[cells];
+        this.selection = new double[maxDegree];
+
+        update(snapshot);
+    }
+
+    /**
+     * Creates the U-matrix of the latest codebook snapshot of a self-organizing map.
+     * @param som the self-organizing map
+     * @return the U-matrix
+     */
+    public static UMatrix of(SelfOrganizingMap som) {
+        Args.nullNotPermitted(som, "som");
+        return new UMatrix(som.snapshot());
+    }
+
+    /**
+     * Brings the U-matrix up to date with a codebook snapshot of the same model, recomputing only the distances
+     * of the prototypes that changed since the last update and the values of the affected neurons.
+     * @param snapshot the codebook snapshot
+     * @return the number of neurons whose values were recomputed
+     * @throws IllegalArgumentException if the snapshot is null, its lattice differs from this U-matrix or it is of
+     *                                  another model
+     */
+    public int update(CodebookSnapshot snapshot) {
+        Args.nullNotPermitted(snapshot, "snapshot");
+        if (snapshot.getLattice().getAdjacency() != adjacency) {
+            throw new IllegalArgumentException("The snapshot lattice differs from the U-matrix lattice.");
+        }
+
+        if (snapshot == this.snapshot) return 0;
+        UpdatedRegion region = snapshot.changedSince(this.snapshot);
+        this.snapshot = snapshot;
+        version = snapshot.getVersion();
+
+        if (++updateCount == 0) { // wrapped around; reset marks
+            Arrays.fill(dirtyMark, 0);
+            updateCount = 1;
+        }
+
+        // Distances touching a changed prototype; the values of both ends become dirty
+        MetricDistance metricDistance = snapshot.getMetricDistance();
+        int dirty = 0;
+        for (int cell = region.nextCell(0); cell >= 0; cell = region.nextCell(cell + 1)) {
+            VectorN prototype = snapshot.prototypeOfCell(cell);
+            if (dirtyMark[cell] != updateCount) {
+                dirtyMark[cell] = updateCount;
+                dirtyCells[dirty++] = cell;
+            }
+
+            for (int k = adjacency.neighborStart(cell); k < adjacency.neighborEnd(cell); k++) {
+                int neighbor = adjacency.neighborAt(k);
+                double dist = metricDistance.distanceBetween(prototype, snapshot.prototypeOfCell(neighbor));
+                edgeDistances[k] = dist;
+
+                int reverse = reversePosition[k];
+                if (reverse >= 0) {
+                    edgeDistances[reverse] = dist;
+                }
+
+                if (dirtyMark[neighbor] != updateCount) {
+                    dirtyMark[neighbor] = updateCount;
+                    dirtyCells[dirty++] = neighbor;
+                }
+            }
+        }
+
+        // Cells whose list is not mirrored in a changed neighbor's list are refreshed directly
+        for (int d = 0; d < dirty; d++) {
+            int cell = dirtyCells[d];
+            for (int k = adjacency.neighborStart(cell); k < adjacency.neighborEnd(cell); k++) {
+                if (reversePosition[k] < 0) {
+                    edgeDistances[k] = metricDistance.distanceBetween(snapshot.prototypeOfCell(cell),
+                            snapshot.prototypeOfCell(adjacency.neighborAt(k)));
+                }
+            }
+            aggregate(cell);
+        }
+
+        return dirty;
+    }
+
+    private void aggregate(int cell) {
+        int start = adjacency.neighborStart(cell);
+        int size = adjacency.neighborEnd(cell) - start;
+
+        if (size == 0) {
+            minValues[cell] = meanValues[cell] = medianValues[cell] = maxValues[cell] = 0;
+            return;
+        }
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            double dist = edgeDistances[start + i];
+            selection[i] = dist;
+            min = Math.min(min, dist);
+            max = Math.max(max, dist);
+            sum += dist;
+        }
+
+        minValues[cell] = min;
+        maxValues[cell] = max;
+        meanValues[cell] = sum / size;
+
+        int middle = size / 2;
+        double upper = select(selection, size, middle);
+        if (size % 2 == 1) {
+            medianValues[cell] = upper;
+        } else {
+            // Elements before the middle are all lower or equal; the lower middle is their maximum
+            double lower = selection[0];
+            for (int i = 1; i < middle; i++) {
+                lower = Math.max(lower, selection[i]);
+            }
+            medianValues[cell] = (lower + upper) / 2;
+        }
+    }
+
+    /**
+     * Partially orders the first <code>size</code> values so that position <code>k</code> holds the k-th smallest
+     * value, with lower or equal values before it (Hoare's selection).
+     */
+    private static double select(double[] values, int size, int k) {
+        int left = 0;
+        int right = size - 1;
+
+        while (left < right) {
+            double pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else break;
+        }
+        return values[k];
+    }
+
+    /**
+     * Returns the aggregated value of a neuron.
+     * @param x the x coordinate of the neuron
+     * @param y the y coordinate of the neuron
+     * @param aggregation how the distances to the neighbors are aggregated
+     * @return the U-matrix value of the neuron
+     */
+    public double get(int x, int y, Aggregation aggregation) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+        return valuesOf(aggregation)[adjacency.cellIndex(x, y)];
+    }
+
+    /**
+     * Copies the aggregated values of all neurons, indexed by lattice cell (<code>x * height + y</code>).
+     * @param aggregation how the distances to the neighbors are aggregated
+     * @param destination the array to copy into, with at least <code>getWidth() * getHeight()</code> elements
+     */
+    public void copyTo(Aggregation aggregation, double[] destination) {
+        Args.nullNotPermitted(destination, "destination");
+        double[] values = valuesOf(aggregation);
+        Args.requireGreaterEqualThan(destination.length, "destination.length", values.length);
+        System.arraycopy(values, 0, destination, 0, values.length);
+    }
+
+    /**
+     * Returns the distance between neighboring prototypes at an adjacency position.
+     * @param position the adjacency position, see {@link LatticeAdjacency#neighborAt(int)}
+     * @return the distance between the prototypes of the cell owning the position and of its neighbor
+     */
+    public double edgeDistance(int position) {
+        return edgeDistances[position];
+    }
+
+    /**
+     * Returns the lattice adjacency the edge distances are aligned with.
+     * @return the lattice adjacency
+     */
+    public LatticeAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * Returns the version of the last snapshot this U-matrix was updated with.
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    private double[] valuesOf(Aggregation aggregation) {
+        Args.nullNotPermitted(aggregation, "aggregation");
+        switch (aggregation) {
+            case MIN: return minValues;
+            case MEAN: return meanValues;
+            case MEDIAN: return medianValues;
+            default: return maxValues;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UMatrix{version=%d, %d x %d}", version, width, height);
+    }
+}
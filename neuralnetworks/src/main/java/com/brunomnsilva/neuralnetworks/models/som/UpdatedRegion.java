@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+
+import java.util.Arrays;
+
+/**
+ * The region of a self-organizing map lattice whose prototypes were modified, as a set of lattice cells
+ * (<code>x * height + y</code>) together with its bounding box.
+ * <br/>
+ * Each {@link CodebookSnapshot} carries the region updated since the previous one, and the region updated since any
+ * older snapshot is given by {@link CodebookSnapshot#changedSince(CodebookSnapshot)}, so that derived structures
+ * (views, statistics, indexes, the U-matrix) may update only what changed; with small neighborhoods on large maps,
+ * this is a small fraction of the lattice.
+ * <br/>
+ * Instances are immutable.
+ *
+ * @author brunomnsilva
+ */
+public final class UpdatedRegion {
+
+    private final int width;
+    private final int height;
+
+    /** Bitset of the updated cells; null if the whole lattice was updated. */
+    private final long[] bits;
+    private final int size;
+
+    /** Bounding box of the updated cells; empty (min > max) if no cell was updated. */
+    private final int minX, maxX, minY, maxY;
+
+    private UpdatedRegion(int width, int height, long[] bits, int size, int minX, int maxX, int minY, int maxY) {
+        this.width = width;
+        this.height = height;
+        this.bits = bits;
+        this.size = size;
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Creates a region covering the whole lattice.
+     * @param width the width of the lattice
+     * @param height the height of the lattice
+     * @return the full region
+     */
+    public static UpdatedRegion full(int width, int height) {
+        Args.requireGreaterEqualThan(width, "width", 1);
+        Args.requireGreaterEqualThan(height, "height", 1);
+
+        return new UpdatedRegion(width, height, null, width * height, 0, width - 1, 0, height - 1);
+    }
+
+    /**
+     * Creates a region from a bitset of lattice cells, which is copied.
+     * @param width the width of the lattice
+     * @param height the height of the lattice
+     * @param cells the bitset of updated cells, with at least <code>width * height</code> bits
+     * @return the region
+     */
+    static UpdatedRegion of(int width, int height, long[] cells) {
+        long[] bits = Arrays.copyOf(cells, (width * height + 63) >>> 6);
+
+        int size = 0;
+        int minX = Integer.MAX_VALUE, maxX = -1, minY = Integer.MAX_VALUE, maxY = -1;
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            size += Long.bitCount(word);
+            while (word != 0) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                int x = cell / height;
+                int y = cell % height;
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+
+        if (size == width * height) {
+            return full(width, height);
+        }
+        return new UpdatedRegion(width, height, bits, size, minX, maxX, minY, maxY);
+    }
+
+    /**
+     * Returns the union of this region with another region of the same lattice, e.g., to merge the regions of
+     * several notifications.
+     * @param other the other region
+     * @return the union of both regions
+     * @throws IllegalArgumentException if the regions belong to lattices of different sizes
+     */
+    public UpdatedRegion union(UpdatedRegion other) {
+        Args.nullNotPermitted(other, "other");
+        Args.requireEqual(other.width, "other.width", width, "width");
+        Args.requireEqual(other.height, "other.height", height, "height");
+
+        if (isFull() || other.isEmpty()) return this;
+        if (other.isFull() || isEmpty()) return other;
+
+        long[] merged = bits.clone();
+        for (int w = 0; w < merged.length; w++) {
+            merged[w] |= other.bits[w];
+        }
+        return of(width, height, merged);
+    }
+
+    /**
+     * Checks whether the whole lattice was updated.
+     * @return true if all cells were updated
+     */
+    public boolean isFull() {
+        return bits == null;
+    }
+
+    /**
+     * Checks whether no cell was updated.
+     * @return true if no cell was updated
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of updated cells.
+     * @return the number of updated cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the prototype at a lattice location was updated.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if the cell was updated
+     */
+    public boolean contains(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+        return containsCell(x * height + y);
+    }
+
+    /**
+     * Checks whether a lattice cell (<code>x * height + y</code>) was updated.
+     * @param cell the cell index
+     * @return true if the cell was updated
+     */
+    public boolean containsCell(int cell) {
+        Args.requireInRange(cell, "cell", 0, width * height - 1);
+        return bits == null || (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the first updated cell at or after a cell, allowing iteration without allocations:
+     * <pre>
+     * for (int cell = region.nextCell(0); cell >= 0; cell = region.nextCell(cell + 1)) { ... }
+     * </pre>
+     * @param fromCell the cell to start from, inclusive
+     * @return the next updated cell, or -1 if there are none
+     */
+    public int nextCell(int fromCell) {
+        int cells = width * height;
+        if (fromCell < 0) fromCell = 0;
+        if (fromCell >= cells) return -1;
+        if (bits == null) return fromCell;
+
+        int w = fromCell >>> 6;
+        long word = bits[w] & (-1L << fromCell);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == bits.length) return -1;
+            word = bits[w];
+        }
+    }
+
+    /**
+     * Returns the updated cells (<code>x * height + y</code>), in increasing order.
+     * @return the updated cells
+     */
+    public int[] cells() {
+        int[] cells = new int[size];
+        int k = 0;
+        for (int cell = nextCell(0); cell >= 0; cell = nextCell(cell + 1)) {
+            cells[k++] = cell;
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the minimum x coordinate of the bounding box of the updated cells.
+     * @return the minimum x coordinate; greater than {@link #getMaxX()} if the region is empty
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Returns the maximum x coordinate of the bounding box of the updated cells.
+     * @return the maximum x coordinate; -1 if the region is empty
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Returns the minimum y coordinate of the bounding box of the updated cells.
+     * @return the minimum y coordinate; greater than {@link #getMaxY()} if the region is empty
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Returns the maximum y coordinate of the bounding box of the updated cells.
+     * @return the maximum y coordinate; -1 if the region is empty
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        if (isFull()) {
+            return String.format("UpdatedRegion{full, %d x %d}", width, height);
+        }
+        if (isEmpty()) {
+            return String.format("UpdatedRegion{empty, %d x %d}", width, height);
+        }
+        return String.format("UpdatedRegion{%d cells, x in [%d, %d], y in [%d, %d], %d x %d}",
+                size, minX, maxX, minY, maxY, width, height);
+    }
+}
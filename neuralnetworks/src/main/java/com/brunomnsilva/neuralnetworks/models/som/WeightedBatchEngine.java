@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+
+import java.util.stream.IntStream;
+
+/**
+ * A multi-threaded engine that performs the epochs of the Batch learning algorithm over weighted inputs.
+ * <br/>
+ * In each epoch the inputs are partitioned among the worker threads. Each worker finds the BMU of its inputs and
+ * accumulates their weighted contributions into its own numerator and denominator accumulators; the accumulators of all
+ * workers are then summed and the prototypes are adjusted. Since the prototypes are only modified at the end of the
+ * epoch, the workers can search the BMUs concurrently.
+ * <br/>
+ * The accumulators are flat primitive arrays allocated once, at construction; no allocations are performed per input.
+ * <br/>
+ * An engine is bound to a single SelfOrganizingMap and is not thread-safe, i.e., only one epoch may run at a time.
+ *
+ * @see BatchLearning
+ * @see com.brunomnsilva.neuralnetworks.models.artsom.MicroCategoryBatchLearning
+ *
+ * @author brunomnsilva
+ */
+public class WeightedBatchEngine {
+
+    /** The self-organizing map being trained. */
+    private final SelfOrganizingMap som;
+
+    /** The neurons of the map, in storage order. */
+    private final PrototypeNeuron[] neurons;
+
+    /** The dimensionality of the prototypes. */
+    private final int dimensionality;
+
+    /** How many workers (partitions) are used in each epoch. */
+    private final int parallelism;
+
+    /** Per-worker numerator accumulators, laid out as <code>[neuron * dimensionality + component]</code>. */
+    private final double[][] numerators;
+
+    /** Per-worker denominator accumulators, indexed by neuron. */
+    private final double[][] denominators;
+
+    /** Neurons adjusted in the current epoch, indexed by neuron; each worker writes its own partition. */
+    private final boolean[] adjusted;
+
+    /**
+     * Creates an engine that uses as many workers as available processors.
+     * @param som the self-organizing map to train
+     */
+    public WeightedBatchEngine(SelfOrganizingMap som) {
+        this(som, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine with a specific number of workers.
+     * @param som the self-organizing map to train
+     * @param parallelism the number of workers; use 1 for a sequential execution
+     * @throws IllegalArgumentException if <code>som</code> is null or <code>parallelism</code> is less than 1
+     */
+    public WeightedBatchEngine(SelfOrganizingMap som, int parallelism) {
+        Args.nullNotPermitted(som, "som");
+        Args.requireGreaterEqualThan(parallelism, "parallelism", 1);
+
+        this.som = som;
+        this.dimensionality = som.getDimensionality();
+        this.parallelism = parallelism;
+
+        // Accumulators follow the storage order of the prototypes
+        this.neurons = new PrototypeNeuron[som.size()];
+        for(int n=0; n < neurons.length; ++n) {
+            neurons[n] = som.get(n);
+        }
+
+        this.numerators = new double[parallelism][neurons.length * dimensionality];
+        this.denominators = new double[parallelism][neurons.length];
+        this.adjusted = new boolean[neurons.length];
+    }
+
+    /**
+     * Performs an epoch over all the inputs.
+     * @param inputs the weighted inputs
+     * @param sigma the radius of the neighborhood function for this epoch
+     */
+    public void epoch(WeightedInputs inputs, double sigma) {
+        epoch(inputs, null, inputs.size(), sigma);
+    }
+
+    /**
+     * Performs an epoch over a subset of the inputs, e.g., a subsample produced by an {@link OrderingDataSchedule}.
+     * @param inputs the weighted inputs
+     * @param indices the indices of the inputs to use; if null, the first <code>count</code> inputs are used
+     * @param count how many indices to use
+     * @param sigma the radius of the neighborhood function for this epoch
+     * @throws IllegalArgumentException if the inputs and prototypes differ in dimensionality
+     */
+    public void epoch(WeightedInputs inputs, int[] indices, int count, double sigma) {
+        Args.nullNotPermitted(inputs, "inputs");
+        if(count <= 0) return;
+
+        Args.requireEqual(inputs.inputAt(0).dimensions(), "inputs dimensionality",
+                dimensionality, "som.getDimensionality()");
+
+        // Each worker accumulates a contiguous partition of the inputs
+        int workers = Math.min(parallelism, count);
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            int from = (int)((long)count * worker / workers);
+            int to = (int)((long)count * (worker + 1) / workers);
+            accumulate(worker, inputs, indices, from, to, sigma);
+        });
+
+        // Each worker then reduces and adjusts a contiguous partition of the neurons
+        int neuronWorkers = Math.min(parallelism, neurons.length);
+        IntStream.range(0, neuronWorkers).parallel().forEach(worker -> {
+            int from = (int)((long)neurons.length * worker / neuronWorkers);
+            int to = (int)((long)neurons.length * (worker + 1) / neuronWorkers);
+            adjustPrototypes(workers, from, to);
+        });
+
+        // Signal the adjusted prototypes, so that only these are copied and reported as updated
+        for(int n=0; n < neurons.length; ++n) {
+            if(adjusted[n]) {
+                som.prototypeAdjusted(neurons[n]);
+                adjusted[n] = false;
+            }
+        }
+    }
+
+    private void accumulate(int worker, WeightedInputs inputs, int[] indices, int from, int to, double sigma) {
+        double[] numerator = numerators[worker];
+        double[] denominator = denominators[worker];
+
+        for(int i = from; i < to; ++i) {
+            int index = (indices != null) ? indices[i] : i;
+            VectorN input = inputs.inputAt(index);
+            double weight = inputs.weightAt(index);
+
+            PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
+
+            for(int n=0; n < neurons.length; ++n) {
+                double dist = som.latticeDistanceBetween(bmu, neurons[n]);
+                double neigh = NeighboringFunction.gaussian(dist, sigma);
+
+                // Expecting a finite [0, 1] neighborhood function value.
+                // We discard updates when the function value is < 0.01 - this has a negligible
+                // influence the on final result and is much more performant during convergence phase
+                if (neigh > 1 || neigh < 0.01 || Double.isInfinite(neigh) || Double.isInfinite(-neigh)) {
+                    continue;
+                }
+
+                double h = weight * neigh;
+                int offset = n * dimensionality;
+                for(int d=0; d < dimensionality; ++d) {
+                    numerator[offset + d] += h * input.get(d);
+                }
+                denominator[n] += h;
+            }
+        }
+    }
+
+    private void adjustPrototypes(int workers, int fromNeuron, int toNeuron) {
+        // Sum the accumulators of all workers into the first ones, adjust the prototypes
+        // and reset all accumulators for the next epoch
+        double[] numerator = numerators[0];
+        double[] denominator = denominators[0];
+
+        for(int n = fromNeuron; n < toNeuron; ++n) {
+            int offset = n * dimensionality;
+
+            for(int w=1; w < workers; ++w) {
+                denominator[n] += denominators[w][n];
+                denominators[w][n] = 0;
+
+                for(int d=0; d < dimensionality; ++d) {
+                    numerator[offset + d] += numerators[w][offset + d];
+                    numerators[w][offset + d] = 0;
+                }
+            }
+
+            if(denominator[n] > 0) {
+                VectorN prototype = neurons[n].getPrototype();
+                for(int d=0; d < dimensionality; ++d) {
+                    prototype.set(d, numerator[offset + d] / denominator[n]);
+                }
+                adjusted[n] = true;
+            }
+
+            for(int d=0; d < dimensionality; ++d) {
+                numerator[offset + d] = 0;
+            }
+            denominator[n] = 0;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.dataset.Dataset;
+
+/**
+ * An indexed collection of weighted input vectors, to be consumed by the {@link WeightedBatchEngine}.
+ * <br/>
+ * The weight of an input scales its contribution to the prototype adjustments, e.g., a dataset item
+ * has a weight of 1, while a micro-category of the StreamART2A model has a weight relative to how many inputs
+ * it represents.
+ *
+ * @see WeightedBatchEngine
+ *
+ * @author brunomnsilva
+ */
+public interface WeightedInputs {
+
+    /**
+     * Returns the number of inputs.
+     * @return the number of inputs
+     */
+    int size();
+
+    /**
+     * Returns the <b>reference</b> of the input vector at <code>index</code>.
+     * @param index the index of the input, in [0, {@link #size()} - 1]
+     * @return the input vector
+     */
+    VectorN inputAt(int index);
+
+    /**
+     * Returns the weight of the input at <code>index</code>.
+     * @param index the index of the input, in [0, {@link #size()} - 1]
+     * @return the (non-negative) weight of the input
+     */
+    double weightAt(int index);
+
+    /**
+     * Returns a view of the inputs of a dataset, all with a weight of 1. The dataset is not copied.
+     * @param dataset the dataset
+     * @return a view of the dataset inputs
+     */
+    static WeightedInputs of(Dataset dataset) {
+        Args.nullNotPermitted(dataset, "dataset");
+
+        return new WeightedInputs() {
+            @Override
+            public int size() {
+                return dataset.size();
+            }
+
+            @Override
+            public VectorN inputAt(int index) {
+                return dataset.get(index).getInput();
+            }
+
+            @Override
+            public double weightAt(int index) {
+                return 1;
+            }
+        };
+    }
+}
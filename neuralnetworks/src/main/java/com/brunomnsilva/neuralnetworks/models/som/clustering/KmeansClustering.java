@@ -24,88 +24,456 @@
 
 package com.brunomnsilva.neuralnetworks.models.som.clustering;
 
-import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.models.som.*;
-import org.apache.commons.math3.ml.clustering.CentroidCluster;
-import org.apache.commons.math3.ml.clustering.Clusterable;
-import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 /**
  * Implementation of a K-Means++ clustering of prototypes.
  * <br/>
- * It's simply a wrapper for the 'org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer'
+ * The prototypes are copied once to a flat array, and each run of the algorithm (k-means++ seeding followed by
+ * Lloyd iterations) works on preallocated primitive arrays. Several runs with different seedings (restarts) are
+ * performed in parallel, and the one with the lowest sum of squared errors (SSE) is kept. Distances are euclidean.
+ * <br/>
+ * The number of clusters can also be chosen automatically, see {@link #sweep(SelfOrganizingMap, int, int, int, int, long)}.
  */
 public class KmeansClustering extends SelfOrganizingMapClustering {
 
+    /** Suggested number of restarts, for when the best of several runs is wanted. */
+    public static final int DEFAULT_RESTARTS = 10;
+
     /** The number of clusters of interest. */
     private final int numberClusters;
 
     /** Maximum number of iterations of the algorithm. */
     private final int maxIterations;
 
+    /** Number of runs of the algorithm; the best one is kept. */
+    private final int restarts;
+
+    /** Seed of the random seedings. */
+    private final long seed;
+
     /**
-     * Creates a new instance of KmeansClustering.
+     * Creates a new instance of KmeansClustering, with a single run of the algorithm.
      * @param som the SelfOrganizingMap to cluster its prototypes.
      * @param numberClusters the number of clusters of interest
-     * @param maxIterations the maximum number of iterations of the algorithm
+     * @param maxIterations the maximum number of iterations of the algorithm; if non-positive, there is no limit
      */
     public KmeansClustering(SelfOrganizingMap som, int numberClusters, int maxIterations) {
+        this(som, numberClusters, maxIterations, 1, System.nanoTime());
+    }
+
+    /**
+     * Creates a new instance of KmeansClustering.
+     * @param som the SelfOrganizingMap to cluster its prototypes.
+     * @param numberClusters the number of clusters of interest
+     * @param maxIterations the maximum number of iterations of each run of the algorithm; if non-positive, there is
+     *                      no limit
+     * @param restarts the number of runs of the algorithm, performed in parallel; the best one is kept
+     * @param seed the seed of the random seedings; the same seed produces the same clustering
+     */
+    public KmeansClustering(SelfOrganizingMap som, int numberClusters, int maxIterations, int restarts, long seed) {
         super(som);
+        Args.nullNotPermitted(som, "som");
+        Args.requireInRange(numberClusters, "numberClusters", 1, som.size());
+        Args.requireGreaterEqualThan(restarts, "restarts", 1);
+
         this.numberClusters = numberClusters;
-        this.maxIterations = maxIterations;
+        this.maxIterations = iterationLimit(maxIterations);
+        this.restarts = restarts;
+        this.seed = seed;
     }
 
     @Override
     public SelfOrganizingMapClusteringResult cluster() {
         SelfOrganizingMap som = getSelfOrganizingMap();
+        Codebook codebook = new Codebook(som);
 
-        // Wrap prototypes
-        List<PrototypeWrapper> clusterInput = new ArrayList<>(som.getWidth() * som.getHeight());
-        for (PrototypeNeuron p : som) {
-            clusterInput.add( new PrototypeWrapper(p) );
+        Run[] runs = runAll(codebook, new int[]{numberClusters}, maxIterations, restarts, seed);
+        return best(runs, 0, restarts).toResult(som, codebook);
+    }
+
+    /**
+     * Clusters the prototypes for every number of clusters in <code>[minClusters, maxClusters]</code> and chooses
+     * the number of clusters that minimizes the Davies-Bouldin index, in a single call. All runs, for all numbers
+     * of clusters, are performed in parallel.
+     *
+     * @param som the SelfOrganizingMap to cluster its prototypes
+     * @param minClusters the minimum number of clusters, at least 2
+     * @param maxClusters the maximum number of clusters, at most the number of prototypes
+     * @param maxIterations the maximum number of iterations of each run of the algorithm; if non-positive, there is
+     *                      no limit
+     * @param restarts the number of runs for each number of clusters; the best one is kept
+     * @param seed the seed of the random seedings
+     * @return the result of the sweep
+     */
+    public static Sweep sweep(SelfOrganizingMap som, int minClusters, int maxClusters,
+                              int maxIterations, int restarts, long seed) {
+        Args.nullNotPermitted(som, "som");
+        Args.requireInRange(minClusters, "minClusters", 2, som.size());
+        Args.requireInRange(maxClusters, "maxClusters", minClusters, som.size());
+        Args.requireGreaterEqualThan(restarts, "restarts", 1);
+
+        Codebook codebook = new Codebook(som);
+
+        int[] ks = IntStream.rangeClosed(minClusters, maxClusters).toArray();
+        Run[] runs = runAll(codebook, ks, iterationLimit(maxIterations), restarts, seed);
+
+        Run[] best = new Run[ks.length];
+        double[] daviesBouldin = new double[ks.length];
+        for (int i = 0; i < ks.length; i++) {
+            best[i] = best(runs, i * restarts, restarts);
+            daviesBouldin[i] = best[i].daviesBouldinIndex(codebook);
         }
 
-        KMeansPlusPlusClusterer<PrototypeWrapper> clusterer = new KMeansPlusPlusClusterer<>(numberClusters, maxIterations);
-        List<CentroidCluster<PrototypeWrapper>> clusteringResult = clusterer.cluster(clusterInput);
+        return new Sweep(som, codebook, minClusters, best, daviesBouldin);
+    }
+
+    /** Maps a non-positive maximum number of iterations to no limit, as commons-math does. */
+    private static int iterationLimit(int maxIterations) {
+        return maxIterations > 0 ? maxIterations : Integer.MAX_VALUE;
+    }
+
+    /** Performs <code>restarts</code> runs for each number of clusters, in parallel; grouped by number of clusters. */
+    private static Run[] runAll(Codebook codebook, int[] ks, int maxIterations, int restarts, long seed) {
+        // Random streams are split up front, so results do not depend on scheduling
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[ks.length * restarts];
+        for (int t = 0; t < randoms.length; t++) {
+            randoms[t] = random.split();
+        }
+
+        Run[] runs = new Run[randoms.length];
+        IntStream.range(0, runs.length).parallel().forEach(t -> {
+            Run run = new Run(codebook, ks[t / restarts]);
+            run.execute(codebook, maxIterations, randoms[t]);
+            runs[t] = run;
+        });
+        return runs;
+    }
+
+    private static Run best(Run[] runs, int from, int count) {
+        Run best = runs[from];
+        for (int t = from + 1; t < from + count; t++) {
+            if (runs[t].sse < best.sse) {
+                best = runs[t];
+            }
+        }
+        return best;
+    }
 
-        SelfOrganizingMapClusteringResult clustering = new SelfOrganizingMapClusteringResult(som);
+    /**
+     * The prototypes of a self-organizing map, copied to a flat array in storage order.
+     */
+    private static final class Codebook {
+        final int size;
+        final int dimensionality;
+        final double[] points;
+        final int[] xIndices;
+        final int[] yIndices;
 
-        // For each prototype of the SOM assign it to the closest k-means centroid
-        for (PrototypeNeuron p : som) {
-            int x = p.getIndexX();
-            int y = p.getIndexY();
+        Codebook(SelfOrganizingMap som) {
+            this.size = som.size();
+            this.dimensionality = som.getDimensionality();
+            this.points = new double[size * dimensionality];
+            this.xIndices = new int[size];
+            this.yIndices = new int[size];
 
-            double minDist = Double.MAX_VALUE;
-            int clusterCode = 0;
-            MetricDistance metric = new EuclideanDistance();
-            for(int i=0; i < clusteringResult.size(); ++i) {
-                VectorN centroid = VectorN.fromArray(clusteringResult.get(i).getCenter().getPoint());
-                double curDist = metric.distanceBetween(centroid, p.getPrototype());
-                if(curDist < minDist) {
-                    minDist = curDist;
-                    clusterCode = i + 1;
+            int i = 0;
+            for (PrototypeNeuron p : som) {
+                for (int d = 0; d < dimensionality; d++) {
+                    points[i * dimensionality + d] = p.getPrototype().get(d);
                 }
+                xIndices[i] = p.getIndexX();
+                yIndices[i] = p.getIndexY();
+                i++;
+            }
+        }
+
+        double squaredDistance(int point, double[] centroids, int centroid) {
+            int p = point * dimensionality;
+            int c = centroid * dimensionality;
+            double sum = 0;
+            for (int d = 0; d < dimensionality; d++) {
+                double diff = points[p + d] - centroids[c + d];
+                sum += diff * diff;
             }
+            return sum;
+        }
+    }
+
+    /**
+     * A single run of the algorithm, with all its working arrays allocated up front.
+     */
+    private static final class Run {
+        final int k;
+        final int[] assignments;
+        final double[] centroids;
+        final double[] sums;
+        final int[] counts;
+        /** Squared distance of each point to its centroid (or to the nearest chosen center, while seeding). */
+        final double[] distances;
+        double sse;
 
-            clustering.setClusterAssignment(x, y, clusterCode);
+        Run(Codebook codebook, int k) {
+            this.k = k;
+            this.assignments = new int[codebook.size];
+            this.centroids = new double[k * codebook.dimensionality];
+            this.sums = new double[k * codebook.dimensionality];
+            this.counts = new int[k];
+            this.distances = new double[codebook.size];
         }
 
-        return clustering;
+        void execute(Codebook codebook, int maxIterations, SplittableRandom random) {
+            seed(codebook, random);
+
+            Arrays.fill(assignments, -1);
+            for (int iteration = 0; iteration < maxIterations; iteration++) {
+                boolean changed = assign(codebook);
+                if (!changed) break;
+                update(codebook);
+            }
+            assign(codebook);
+
+            sse = 0;
+            for (int i = 0; i < codebook.size; i++) {
+                sse += distances[i];
+            }
+        }
+
+        /** k-means++ seeding: each new center is a prototype drawn with probability proportional to D(x)^2. */
+        private void seed(Codebook codebook, SplittableRandom random) {
+            int n = codebook.size;
+
+            setCentroid(codebook, 0, random.nextInt(n));
+            for (int i = 0; i < n; i++) {
+                distances[i] = codebook.squaredDistance(i, centroids, 0);
+            }
+
+            for (int c = 1; c < k; c++) {
+                double total = 0;
+                for (int i = 0; i < n; i++) {
+                    total += distances[i];
+                }
+
+                int chosen = n - 1;
+                if (total > 0) {
+                    double target = random.nextDouble() * total;
+                    double cumulative = 0;
+                    for (int i = 0; i < n; i++) {
+                        cumulative += distances[i];
+                        if (cumulative > target) {
+                            chosen = i;
+                            break;
+                        }
+                    }
+                } else {
+                    chosen = random.nextInt(n); // all prototypes coincide with the centers
+                }
+
+                setCentroid(codebook, c, chosen);
+                for (int i = 0; i < n; i++) {
+                    distances[i] = Math.min(distances[i], codebook.squaredDistance(i, centroids, c));
+                }
+            }
+        }
+
+        private void setCentroid(Codebook codebook, int centroid, int point) {
+            int dim = codebook.dimensionality;
+            System.arraycopy(codebook.points, point * dim, centroids, centroid * dim, dim);
+        }
+
+        /** Assigns each prototype to its nearest centroid; returns whether any assignment changed. */
+        private boolean assign(Codebook codebook) {
+            boolean changed = false;
+            for (int i = 0; i < codebook.size; i++) {
+                int best = 0;
+                double min = codebook.squaredDistance(i, centroids, 0);
+                for (int c = 1; c < k; c++) {
+                    double dist = codebook.squaredDistance(i, centroids, c);
+                    if (dist < min) {
+                        min = dist;
+                        best = c;
+                    }
+                }
+
+                distances[i] = min;
+                if (assignments[i] != best) {
+                    assignments[i] = best;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /** Moves each centroid to the mean of its prototypes; an empty cluster takes the worst represented one. */
+        private void update(Codebook codebook) {
+            int dim = codebook.dimensionality;
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+
+            for (int i = 0; i < codebook.size; i++) {
+                int c = assignments[i];
+                counts[c]++;
+                for (int d = 0; d < dim; d++) {
+                    sums[c * dim + d] += codebook.points[i * dim + d];
+                }
+            }
+
+            for (int c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    for (int d = 0; d < dim; d++) {
+                        centroids[c * dim + d] = sums[c * dim + d] / counts[c];
+                    }
+                    continue;
+                }
+
+                int farthest = 0;
+                for (int i = 1; i < codebook.size; i++) {
+                    if (distances[i] > distances[farthest]) farthest = i;
+                }
+                setCentroid(codebook, c, farthest);
+                distances[farthest] = 0;
+            }
+        }
+
+        /** Davies-Bouldin index of the clustering; lower values mean compact, well separated clusters. */
+        double daviesBouldinIndex(Codebook codebook) {
+            int dim = codebook.dimensionality;
+            double[] scatter = new double[k];
+            int[] members = new int[k];
+            for (int i = 0; i < codebook.size; i++) {
+                scatter[assignments[i]] += Math.sqrt(distances[i]);
+                members[assignments[i]]++;
+            }
+
+            int clusters = 0;
+            for (int c = 0; c < k; c++) {
+                if (members[c] > 0) {
+                    scatter[c] /= members[c];
+                    clusters++;
+                }
+            }
+
+            double index = 0;
+            for (int a = 0; a < k; a++) {
+                if (members[a] == 0) continue;
+
+                double worst = 0;
+                for (int b = 0; b < k; b++) {
+                    if (b == a || members[b] == 0) continue;
+
+                    double separation = 0;
+                    for (int d = 0; d < dim; d++) {
+                        double diff = centroids[a * dim + d] - centroids[b * dim + d];
+                        separation += diff * diff;
+                    }
+                    separation = Math.sqrt(separation);
+
+                    double ratio = separation > 0 ? (scatter[a] + scatter[b]) / separation : Double.POSITIVE_INFINITY;
+                    worst = Math.max(worst, ratio);
+                }
+                index += worst;
+            }
+            return index / clusters;
+        }
+
+        SelfOrganizingMapClusteringResult toResult(SelfOrganizingMap som, Codebook codebook) {
+            // Cluster codes start at 1; 0 is reserved for unclustered prototypes
+            SelfOrganizingMapClusteringResult clustering = new SelfOrganizingMapClusteringResult(som);
+            for (int i = 0; i < assignments.length; i++) {
+                clustering.setClusterAssignment(codebook.xIndices[i], codebook.yIndices[i], assignments[i] + 1);
+            }
+            return clustering;
+        }
     }
 
-    private static class PrototypeWrapper implements Clusterable {
-        private final PrototypeNeuron prototype;
+    /**
+     * The result of a sweep over the number of clusters; see
+     * {@link #sweep(SelfOrganizingMap, int, int, int, int, long)}.
+     */
+    public static final class Sweep {
+        private final SelfOrganizingMap som;
+        private final Codebook codebook;
+        private final int minClusters;
+        private final Run[] runs;
+        private final double[] daviesBouldin;
+        private final int bestIndex;
+
+        private Sweep(SelfOrganizingMap som, Codebook codebook, int minClusters, Run[] runs, double[] daviesBouldin) {
+            this.som = som;
+            this.codebook = codebook;
+            this.minClusters = minClusters;
+            this.runs = runs;
+            this.daviesBouldin = daviesBouldin;
+
+            int best = 0;
+            for (int i = 1; i < daviesBouldin.length; i++) {
+                if (daviesBouldin[i] < daviesBouldin[best]) best = i;
+            }
+            this.bestIndex = best;
+        }
+
+        /**
+         * Returns the number of clusters with the lowest Davies-Bouldin index.
+         * @return the best number of clusters
+         */
+        public int getBestNumberClusters() {
+            return minClusters + bestIndex;
+        }
 
-        public PrototypeWrapper(PrototypeNeuron prototype) {
-            this.prototype = prototype;
+        /**
+         * Returns the clustering with the best number of clusters.
+         * @return the best clustering
+         */
+        public SelfOrganizingMapClusteringResult getBestClustering() {
+            return runs[bestIndex].toResult(som, codebook);
+        }
+
+        /**
+         * Returns the clustering with a given number of clusters.
+         * @param numberClusters the number of clusters, within the swept range
+         * @return the clustering
+         */
+        public SelfOrganizingMapClusteringResult getClustering(int numberClusters) {
+            return runs[indexOf(numberClusters)].toResult(som, codebook);
+        }
+
+        /**
+         * Returns the Davies-Bouldin index of the clustering with a given number of clusters.
+         * @param numberClusters the number of clusters, within the swept range
+         * @return the Davies-Bouldin index; lower is better
+         */
+        public double getDaviesBouldinIndex(int numberClusters) {
+            return daviesBouldin[indexOf(numberClusters)];
+        }
+
+        /**
+         * Returns the sum of squared errors of the clustering with a given number of clusters.
+         * @param numberClusters the number of clusters, within the swept range
+         * @return the sum of squared errors
+         */
+        public double getSumSquaredErrors(int numberClusters) {
+            return runs[indexOf(numberClusters)].sse;
+        }
+
+        private int indexOf(int numberClusters) {
+            Args.requireInRange(numberClusters, "numberClusters", minClusters, minClusters + runs.length - 1);
+            return numberClusters - minClusters;
         }
 
         @Override
-        public double[] getPoint() {
-            return prototype.getPrototype().values();
+        public String toString() {
+            StringBuilder sb = new StringBuilder("KmeansClustering.Sweep{");
+            for (int i = 0; i < runs.length; i++) {
+                sb.append(String.format("%sk=%d: SSE=%.4f DB=%.4f", i > 0 ? ", " : "",
+                        minClusters + i, runs[i].sse, daviesBouldin[i]));
+            }
+            return sb.append(", best k=").append(getBestNumberClusters()).append('}').toString();
         }
     }
 }
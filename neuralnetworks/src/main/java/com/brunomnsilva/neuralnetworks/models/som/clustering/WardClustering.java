@@ -0,0 +1,324 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som.clustering;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+import com.brunomnsilva.neuralnetworks.models.som.*;
+
+import java.util.Arrays;
+
+/**
+ * Implementation of an agglomerative clustering of prototypes with Ward linkage, constrained by the lattice.
+ * <br/>
+ * Starting with one cluster per prototype, the two clusters whose merge least increases the total within-cluster
+ * sum of squares are merged, until the desired number of clusters remains. Only clusters that are adjacent in the
+ * lattice (see {@link LatticeAdjacency}) can be merged, so clusters are always contiguous regions of the map, and
+ * the candidate merges are the lattice edges instead of all pairs of prototypes.
+ * <br/>
+ * Candidate merges are kept in a binary heap, with lazy removal of the merges invalidated by previous ones, and
+ * the clusters of each prototype in a union-find structure; clustering a map with <i>M</i> prototypes runs in
+ * near <i>O(M log M)</i> time. Distances are euclidean.
+ */
+public class WardClustering extends SelfOrganizingMapClustering {
+
+    /** The number of clusters of interest. */
+    private final int numberClusters;
+
+    /**
+     * Creates a new instance of WardClustering.
+     * @param som the SelfOrganizingMap to cluster its prototypes.
+     * @param numberClusters the number of clusters of interest
+     */
+    public WardClustering(SelfOrganizingMap som, int numberClusters) {
+        super(som);
+        Args.nullNotPermitted(som, "som");
+        Args.requireInRange(numberClusters, "numberClusters", 1, som.size());
+
+        this.numberClusters = numberClusters;
+    }
+
+    @Override
+    public SelfOrganizingMapClusteringResult cluster() {
+        SelfOrganizingMap som = getSelfOrganizingMap();
+        LatticeAdjacency adjacency = som.getLattice().getAdjacency();
+        int height = som.getHeight();
+        int cells = adjacency.cellCount();
+        int dim = som.getDimensionality();
+
+        // Each cluster is identified by the cell of its union-find root; centroids are kept by cluster
+        double[] centroids = new double[cells * dim];
+        for (PrototypeNeuron p : som) {
+            int cell = p.getIndexX() * height + p.getIndexY();
+            for (int d = 0; d < dim; d++) {
+                centroids[cell * dim + d] = p.getPrototype().get(d);
+            }
+        }
+
+        int[] parent = new int[cells];
+        int[] sizes = new int[cells];
+        int[] versions = new int[cells];
+        int[][] neighbors = new int[cells][];
+        int[] neighborCount = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            parent[cell] = cell;
+            sizes[cell] = 1;
+            neighbors[cell] = adjacency.neighborsOf(cell);
+            neighborCount[cell] = neighbors[cell].length;
+        }
+
+        MergeHeap heap = new MergeHeap(adjacency.neighborEnd(cells - 1));
+        for (int cell = 0; cell < cells; cell++) {
+            for (int k = 0; k < neighborCount[cell]; k++) {
+                int other = neighbors[cell][k];
+                if (cell < other) {
+                    heap.push(wardCost(centroids, sizes, dim, cell, other), cell, other, 0, 0);
+                }
+            }
+        }
+
+        int[] mark = new int[cells];
+        Arrays.fill(mark, -1);
+        int[] merged = new int[16];
+        int clusters = cells;
+
+        while (clusters > numberClusters && !heap.isEmpty()) {
+            int a = heap.topA(), b = heap.topB();
+            boolean stale = heap.topVersionA() != versions[a] || heap.topVersionB() != versions[b]
+                    || parent[a] != a || parent[b] != b;
+            heap.pop();
+            if (stale) continue;
+
+            // The larger cluster absorbs the smaller one
+            int root = sizes[a] >= sizes[b] ? a : b;
+            int absorbed = (root == a) ? b : a;
+
+            int total = sizes[root] + sizes[absorbed];
+            for (int d = 0; d < dim; d++) {
+                centroids[root * dim + d] = (centroids[root * dim + d] * sizes[root]
+                        + centroids[absorbed * dim + d] * sizes[absorbed]) / total;
+            }
+            sizes[root] = total;
+            parent[absorbed] = root;
+            versions[root]++;
+            versions[absorbed]++;
+            clusters--;
+
+            // Neighbors of the merged cluster: the current clusters of both neighbor lists
+            int count = 0;
+            for (int side = 0; side < 2; side++) {
+                int cluster = (side == 0) ? root : absorbed;
+                for (int k = 0; k < neighborCount[cluster]; k++) {
+                    int neighbor = find(parent, neighbors[cluster][k]);
+                    if (neighbor == root || mark[neighbor] == root) continue;
+
+                    mark[neighbor] = root;
+                    if (count == merged.length) merged = Arrays.copyOf(merged, count * 2);
+                    merged[count++] = neighbor;
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                mark[merged[k]] = -1;
+            }
+
+            if (neighbors[root].length < count) {
+                neighbors[root] = new int[Math.max(count, neighbors[root].length * 2)];
+            }
+            System.arraycopy(merged, 0, neighbors[root], 0, count);
+            neighborCount[root] = count;
+            neighbors[absorbed] = null;
+            neighborCount[absorbed] = 0;
+
+            for (int k = 0; k < count; k++) {
+                int lower = Math.min(root, merged[k]);
+                int upper = Math.max(root, merged[k]);
+                heap.push(wardCost(centroids, sizes, dim, lower, upper),
+                        lower, upper, versions[lower], versions[upper]);
+            }
+
+            // Discard invalidated merges once they dominate the heap
+            if (heap.size() > 4 * (long) cells) {
+                heap.compact(versions, parent);
+            }
+        }
+
+        // Cluster codes follow the order in which the clusters are first found in the lattice
+        SelfOrganizingMapClusteringResult clustering = new SelfOrganizingMapClusteringResult(som);
+        int[] codes = new int[cells];
+        int nextCode = 1;
+        for (int cell = 0; cell < cells; cell++) {
+            int root = find(parent, cell);
+            if (codes[root] == 0) {
+                codes[root] = nextCode++;
+            }
+            clustering.setClusterAssignment(cell / height, cell % height, codes[root]);
+        }
+
+        return clustering;
+    }
+
+    /** Increase of the within-cluster sum of squares when merging two clusters. */
+    private static double wardCost(double[] centroids, int[] sizes, int dim, int a, int b) {
+        double dist = 0;
+        for (int d = 0; d < dim; d++) {
+            double diff = centroids[a * dim + d] - centroids[b * dim + d];
+            dist += diff * diff;
+        }
+        return (double) sizes[a] * sizes[b] / (sizes[a] + sizes[b]) * dist;
+    }
+
+    /** Union-find root of a cell, with path halving. */
+    private static int find(int[] parent, int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Binary min-heap of candidate merges, in parallel primitive arrays. Each merge records the versions of both
+     * clusters when it was pushed; it is stale once any of them was merged since.
+     */
+    private static final class MergeHeap {
+        private double[] costs;
+        private int[] as, bs, versionsA, versionsB;
+        private int size;
+
+        MergeHeap(int capacity) {
+            capacity = Math.max(capacity, 16);
+            costs = new double[capacity];
+            as = new int[capacity];
+            bs = new int[capacity];
+            versionsA = new int[capacity];
+            versionsB = new int[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int topA() {
+            return as[0];
+        }
+
+        int topB() {
+            return bs[0];
+        }
+
+        int topVersionA() {
+            return versionsA[0];
+        }
+
+        int topVersionB() {
+            return versionsB[0];
+        }
+
+        void push(double cost, int a, int b, int versionA, int versionB) {
+            if (size == costs.length) {
+                int capacity = size * 2;
+                costs = Arrays.copyOf(costs, capacity);
+                as = Arrays.copyOf(as, capacity);
+                bs = Arrays.copyOf(bs, capacity);
+                versionsA = Arrays.copyOf(versionsA, capacity);
+                versionsB = Arrays.copyOf(versionsB, capacity);
+            }
+            set(size, cost, a, b, versionA, versionB);
+            siftUp(size++);
+        }
+
+        void pop() {
+            size--;
+            if (size > 0) {
+                move(size, 0);
+                siftDown(0);
+            }
+        }
+
+        /** Removes all stale merges and restores the heap order. */
+        void compact(int[] versions, int[] parent) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int a = as[i], b = bs[i];
+                if (versionsA[i] == versions[a] && versionsB[i] == versions[b] && parent[a] == a && parent[b] == b) {
+                    move(i, kept++);
+                }
+            }
+            size = kept;
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        /** Orders merges by cost, then by clusters, so that ties are broken deterministically. */
+        private boolean less(int i, int j) {
+            if (costs[i] != costs[j]) return costs[i] < costs[j];
+            if (as[i] != as[j]) return as[i] < as[j];
+            return bs[i] < bs[j];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (!less(i, p)) break;
+                swap(i, p);
+                i = p;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= size) break;
+                int c = (l + 1 < size && less(l + 1, l)) ? l + 1 : l;
+                if (!less(c, i)) break;
+                swap(i, c);
+                i = c;
+            }
+        }
+
+        private void set(int i, double cost, int a, int b, int versionA, int versionB) {
+            costs[i] = cost;
+            as[i] = a;
+            bs[i] = b;
+            versionsA[i] = versionA;
+            versionsB[i] = versionB;
+        }
+
+        private void move(int from, int to) {
+            set(to, costs[from], as[from], bs[from], versionsA[from], versionsB[from]);
+        }
+
+        private void swap(int i, int j) {
+            double cost = costs[i];
+            int a = as[i], b = bs[i], va = versionsA[i], vb = versionsB[i];
+            move(j, i);
+            set(j, cost, a, b, va, vb);
+        }
+    }
+}
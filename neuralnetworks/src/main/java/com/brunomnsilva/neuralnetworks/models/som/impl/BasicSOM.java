@@ -26,6 +26,7 @@ package com.brunomnsilva.neuralnetworks.models.som.impl;
 
 import com.brunomnsilva.neuralnetworks.models.som.Lattice;
 import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeOrdering;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 
 /**
@@ -65,6 +66,22 @@ public class BasicSOM extends SelfOrganizingMap {
         super(width, height, dimensionality, lattice, metricDistance);
     }
 
+    /**
+     * Instantiates a new self-organizing map (SOM), with a specific storage order of the prototypes.
+     * @param width the width of the 2d SOM lattice
+     * @param height the height of the 2d SOM lattice
+     * @param dimensionality the dimensionality of the SOM prototypes
+     * @param lattice the lattice shape
+     * @param metricDistance the metric distance to use to compute the best matching unit
+     * @param prototypeOrdering the order in which the prototypes are stored and iterated
+     * @throws IllegalArgumentException if width, height or dimensionality are not greater than 0;
+     *                                  if lattice, metricDistance or prototypeOrdering are null.
+     */
+    public BasicSOM(int width, int height, int dimensionality, Lattice lattice, MetricDistance metricDistance,
+                    PrototypeOrdering prototypeOrdering) {
+        super(width, height, dimensionality, lattice, metricDistance, prototypeOrdering);
+    }
+
     @Override
     public String getImplementationName() {
         return "BasicSOM";
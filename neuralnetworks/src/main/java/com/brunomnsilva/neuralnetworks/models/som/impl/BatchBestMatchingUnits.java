@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.brunomnsilva.neuralnetworks.models.som.impl;
+
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Best matching units of a batch of inputs that is learned sequentially.
+ * <br/>
+ * The batch is processed in rounds. At the start of a round, candidate BMUs for the inputs of the round are searched
+ * in parallel against the current prototypes. Since each learned input changes some prototypes, the candidate of a
+ * later input is then corrected, when requested, against the prototypes adjusted in the meantime: the result is
+ * exactly the BMU that {@link SelfOrganizingMap#bestMatchingUnitFor(VectorN)} would return at that point, including
+ * its tie-breaking by storage order.
+ * <br/>
+ * The round size adapts to how much of the map each input adjusts: when corrections end up rescanning most of the
+ * map, rounds shrink down to a single input, i.e., a plain sequential search. The same happens when there is no
+ * parallelism available.
+ *
+ * @author brunomnsilva
+ */
+final class BatchBestMatchingUnits {
+
+    private static final int MAX_ROUND_SIZE = 1024;
+
+    private final SelfOrganizingMap som;
+    private final MetricDistance metricDistance;
+    private final VectorN[] inputs;
+    private final boolean parallel;
+
+    /** Storage index of the candidate BMU of each input. */
+    private final int[] candidates;
+    /** Distance of each input to its candidate BMU. */
+    private final double[] candidateDistances;
+
+    /** Inputs [roundStart, roundEnd[ have candidates searched against the prototypes at roundStart. */
+    private int roundStart;
+    private int roundEnd;
+    private int roundSize;
+    /** Inputs of the current round whose BMU required a full search. */
+    private int roundRescans;
+
+    /** Prototypes adjusted since the start of the round, by storage index. */
+    private final boolean[] adjusted;
+    private final int[] adjustedList;
+    private int adjustedCount;
+
+    /**
+     * Prepares the search of the BMUs of a batch of inputs.
+     * @param som the model
+     * @param inputs the batch of inputs
+     */
+    BatchBestMatchingUnits(SelfOrganizingMap som, VectorN[] inputs) {
+        this.som = som;
+        this.metricDistance = som.getMetricDistance();
+        this.inputs = inputs;
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        this.parallel = parallelism > 1;
+        this.roundSize = Math.min(MAX_ROUND_SIZE, 4 * parallelism);
+
+        this.candidates = new int[inputs.length];
+        this.candidateDistances = new double[inputs.length];
+
+        this.adjusted = new boolean[som.size()];
+        this.adjustedList = new int[som.size()];
+    }
+
+    /**
+     * Records that the prototype of a neuron was adjusted while learning the batch.
+     * @param neuron the adjusted neuron
+     */
+    void prototypeAdjusted(PrototypeNeuron neuron) {
+        int index = som.indexOf(neuron);
+        if (!adjusted[index]) {
+            adjusted[index] = true;
+            adjustedList[adjustedCount++] = index;
+        }
+    }
+
+    /**
+     * Returns the BMU of an input of the batch, given the current prototypes. Inputs must be requested in order.
+     * @param i the position of the input in the batch
+     * @return the best matching unit
+     */
+    PrototypeNeuron bestMatchingUnit(int i) {
+        if (!parallel) {
+            return som.bestMatchingUnitFor(inputs[i]);
+        }
+
+        if (i >= roundEnd) {
+            startRound(i);
+        }
+
+        int best = candidates[i];
+        double minDist = candidateDistances[i];
+
+        if (adjusted[best] || Double.isNaN(minDist)) {
+            roundRescans++;
+            return som.bestMatchingUnitFor(inputs[i]);
+        }
+
+        // The candidate is the closest of all unadjusted prototypes; only adjusted ones can now be closer
+        for (int k = 0; k < adjustedCount; ++k) {
+            int n = adjustedList[k];
+            double dist = metricDistance.distanceBetween(som.get(n).getPrototype(), inputs[i]);
+
+            if (Double.isNaN(dist)) {
+                roundRescans++;
+                return som.bestMatchingUnitFor(inputs[i]);
+            }
+            if (dist < minDist || (dist == minDist && n < best)) {
+                best = n;
+                minDist = dist;
+            }
+        }
+
+        return som.get(best);
+    }
+
+    private void startRound(int start) {
+        if (roundEnd > 0) {
+            // Shrink the round if most of its work was spent on corrections, grow it otherwise
+            int previousSize = roundEnd - roundStart;
+            boolean wasted = 2 * roundRescans > previousSize || 2 * adjustedCount > som.size();
+            roundSize = wasted ? Math.max(1, roundSize / 2) : Math.min(MAX_ROUND_SIZE, roundSize * 2);
+        }
+
+        for (int k = 0; k < adjustedCount; ++k) {
+            adjusted[adjustedList[k]] = false;
+        }
+        adjustedCount = 0;
+        roundRescans = 0;
+
+        roundStart = start;
+        roundEnd = Math.min(inputs.length, start + roundSize);
+
+        IntStream.range(roundStart, roundEnd).parallel().forEach(i -> {
+            // Same scan as SelfOrganizingMap.bestMatchingUnitFor
+            int best = 0;
+            double minDist = metricDistance.distanceBetween(som.get(0).getPrototype(), inputs[i]);
+            for (int n = 1; n < som.size(); ++n) {
+                double dist = metricDistance.distanceBetween(som.get(n).getPrototype(), inputs[i]);
+                if (dist < minDist) {
+                    best = n;
+                    minDist = dist;
+                }
+            }
+            candidates[i] = best;
+            candidateDistances[i] = minDist;
+        });
+    }
+}
@@ -64,9 +64,7 @@ public class DSOM extends StreamingSOM {
     }
 
     @Override
-    public void learn(VectorN input) {
-        PrototypeNeuron bmu = bestMatchingUnitFor(input);
-
+    protected void adapt(PrototypeNeuron bmu, VectorN input) {
         for (PrototypeNeuron p : this) {
             double distGrid = latticeDistanceBetween(bmu, p);
             double distPrototype = distanceBetweenPrototypes(bmu, p);
@@ -89,8 +87,7 @@ public class DSOM extends StreamingSOM {
             adjust.multiply(scaling);
 
             p.getPrototype().add(adjust);
+            prototypeAdjusted(p);
         }
-
-        prototypesUpdated();
     }
 }
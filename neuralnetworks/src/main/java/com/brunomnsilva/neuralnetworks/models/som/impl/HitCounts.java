@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som.impl;
+
+import com.brunomnsilva.neuralnetworks.core.Args;
+
+/**
+ * Per-neuron hit counts (how many times each neuron was the BMU) of a {@link StreamingSOM}, maintained online as
+ * inputs are learned, so that hit maps and density estimates do not require projecting a dataset.
+ * <br/>
+ * Two forgetting policies are available:
+ * <ul>
+ *     <li><i>decaying</i> - every count decays exponentially with the number of learned inputs, with a given
+ *     half-life. Decay is applied lazily through a global gain, so each hit is O(1);</li>
+ *     <li><i>sliding window</i> - counts are exact over the last <code>windowSize</code> learned inputs, kept in a
+ *     circular buffer of BMU cells.</li>
+ * </ul>
+ * Counts are stored in primitive arrays, indexed by cell (<code>x * height + y</code>). Hits are recorded by the
+ * learning thread; the counts can be read concurrently from any thread.
+ *
+ * @author brunomnsilva
+ */
+public final class HitCounts {
+
+    /** The gain is renormalized when it grows above this value, long before it could overflow. */
+    private static final double MAX_GAIN = 1e100;
+
+    private final int width, height;
+
+    /** Hit counts, scaled by <code>gain</code>. */
+    private final double[] counts;
+    private double total;
+
+    /** Decaying policy: counts are stored multiplied by gain, which grows by 1/decay at each hit. */
+    private final double halfLife;
+    private final double decay;
+    private double gain;
+
+    /** Sliding window policy: BMU cells of the last inputs, as a circular buffer. */
+    private final int[] window;
+    private int windowIndex;
+    private int windowFill;
+
+    private HitCounts(int width, int height, double halfLife, int windowSize) {
+        this.width = width;
+        this.height = height;
+        this.counts = new double[width * height];
+
+        this.halfLife = halfLife;
+        this.decay = halfLife > 0 ? StrictMath.pow(2, -1 / halfLife) : 1;
+        this.gain = 1;
+
+        this.window = windowSize > 0 ? new int[windowSize] : null;
+    }
+
+    /**
+     * Creates exponentially decaying hit counts.
+     * @param width the width of the lattice
+     * @param height the height of the lattice
+     * @param halfLife the number of learned inputs after which a hit counts half
+     * @return the hit counts
+     * @throws IllegalArgumentException if width or height are lower than 1, or halfLife is not positive and finite
+     */
+    public static HitCounts decaying(int width, int height, double halfLife) {
+        Args.requireGreaterEqualThan(width, "width", 1);
+        Args.requireGreaterEqualThan(height, "height", 1);
+        Args.requireFinite(halfLife, "halfLife");
+        Args.requireGreaterThan(halfLife, "halfLife", 0);
+
+        return new HitCounts(width, height, halfLife, 0);
+    }
+
+    /**
+     * Creates hit counts over a sliding window of the last learned inputs.
+     * @param width the width of the lattice
+     * @param height the height of the lattice
+     * @param windowSize the number of most recent inputs counted
+     * @return the hit counts
+     * @throws IllegalArgumentException if width, height or windowSize are lower than 1
+     */
+    public static HitCounts slidingWindow(int width, int height, int windowSize) {
+        Args.requireGreaterEqualThan(width, "width", 1);
+        Args.requireGreaterEqualThan(height, "height", 1);
+        Args.requireGreaterEqualThan(windowSize, "windowSize", 1);
+
+        return new HitCounts(width, height, 0, windowSize);
+    }
+
+    /**
+     * Records a hit, i.e., a BMU selection, of a neuron.
+     * @param x the x coordinate of the neuron
+     * @param y the y coordinate of the neuron
+     */
+    public synchronized void hit(int x, int y) {
+        int cell = x * height + y;
+
+        if (window == null) {
+            gain /= decay;
+            counts[cell] += gain;
+            total += gain;
+
+            if (gain > MAX_GAIN) {
+                for (int c = 0; c < counts.length; ++c) {
+                    counts[c] /= gain;
+                }
+                total /= gain;
+                gain = 1;
+            }
+        } else {
+            if (windowFill == window.length) {
+                counts[window[windowIndex]] -= 1;
+                total -= 1;
+            } else {
+                windowFill++;
+            }
+            window[windowIndex] = cell;
+            windowIndex = (windowIndex + 1) % window.length;
+
+            counts[cell] += 1;
+            total += 1;
+        }
+    }
+
+    /**
+     * Returns the hit count of a neuron.
+     * @param x the x coordinate of the neuron
+     * @param y the y coordinate of the neuron
+     * @return the (possibly decayed) hit count
+     */
+    public synchronized double get(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return counts[x * height + y] / gain;
+    }
+
+    /**
+     * Returns the sum of the hit counts of all neurons.
+     * @return the total (possibly decayed) hit count
+     */
+    public synchronized double total() {
+        return total / gain;
+    }
+
+    /**
+     * Returns the estimated density of a neuron, i.e., its share of all hits.
+     * @param x the x coordinate of the neuron
+     * @param y the y coordinate of the neuron
+     * @return the density, in [0, 1]; 0 if there are no hits yet
+     */
+    public synchronized double density(int x, int y) {
+        Args.requireInRange(x, "x", 0, width - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return total == 0 ? 0 : counts[x * height + y] / total;
+    }
+
+    /**
+     * Copies the hit counts of all neurons, indexed by cell (<code>x * height + y</code>), as a consistent view.
+     * @param destination the array to fill, of length <code>width * height</code>
+     * @return the destination array
+     * @throws IllegalArgumentException if destination is null or has a wrong length
+     */
+    public synchronized double[] copyTo(double[] destination) {
+        Args.nullNotPermitted(destination, "destination");
+        Args.requireEqual(destination.length, "destination.length", counts.length, "width * height");
+
+        for (int c = 0; c < counts.length; ++c) {
+            destination[c] = counts[c] / gain;
+        }
+        return destination;
+    }
+
+    /**
+     * Returns the hit counts of all neurons, indexed by cell (<code>x * height + y</code>), as a consistent view.
+     * @return a new array with the hit counts
+     */
+    public double[] toArray() {
+        return copyTo(new double[width * height]);
+    }
+
+    /**
+     * Clears all hit counts.
+     */
+    public synchronized void reset() {
+        for (int c = 0; c < counts.length; ++c) {
+            counts[c] = 0;
+        }
+        total = 0;
+        gain = 1;
+        windowIndex = 0;
+        windowFill = 0;
+    }
+
+    /**
+     * Returns the width of the lattice.
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the lattice.
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Checks whether counts decay exponentially, or are kept over a sliding window otherwise.
+     * @return true if counts decay exponentially, false otherwise
+     */
+    public boolean isDecaying() {
+        return window == null;
+    }
+
+    /**
+     * Returns the half-life of the decaying policy.
+     * @return the half-life, in learned inputs; 0 for the sliding window policy
+     */
+    public double getHalfLife() {
+        return halfLife;
+    }
+
+    /**
+     * Returns the size of the sliding window.
+     * @return the window size, in learned inputs; 0 for the decaying policy
+     */
+    public int getWindowSize() {
+        return window == null ? 0 : window.length;
+    }
+
+    @Override
+    public String toString() {
+        return isDecaying()
+                ? String.format("HitCounts{%d x %d, halfLife=%s, total=%f}", width, height, halfLife, total())
+                : String.format("HitCounts{%d x %d, windowSize=%d, total=%f}", width, height, window.length, total());
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som.impl;
+
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Phaser;
+
+/**
+ * Tile-sharded execution of the per-sample work of a {@link UbiSOM}.
+ * <br/>
+ * The lattice is split into rectangular tiles, one per worker thread; the calling thread is worker 0 and the others
+ * are daemon threads owned by this object. For each sample, every worker searches the best matching unit within its
+ * own tile and, once the global BMU is reduced from the local candidates, adjusts the prototypes of its own tile that
+ * fall within the neighborhood window. A tile is only ever touched by its worker, so prototypes stay in the cache of
+ * the same core and no locking is needed.
+ * <br/>
+ * The results are the same as the sequential execution: the reduction breaks ties by storage order, as
+ * {@link com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap#bestMatchingUnitFor(VectorN)} does, and each
+ * prototype adjustment is computed independently of the others. Bookkeeping of activated neurons is left to the
+ * caller, sequentially, through {@link #activatedCount(int)} and {@link #activated(int)}.
+ * <br/>
+ * The worker threads only reference this object (and hence the model) weakly while waiting for work, so a model that
+ * is dropped without calling {@link #shutdown()} does not keep them alive: they are stopped once this object is
+ * garbage collected. Any failure of a worker, including an {@link Error}, is rethrown to the calling thread.
+ *
+ * @author brunomnsilva
+ */
+final class LatticeShards {
+
+    private static final int SEARCH = 0;
+    private static final int ADJUST = 1;
+
+    /** Stops the worker threads of the instances that become unreachable. */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final UbiSOM som;
+    private final MetricDistance metricDistance;
+    private final int height;
+    private final int workers;
+
+    /** Tile of worker t spans columns [x0[t], x1[t][ and rows [y0[t], y1[t][. */
+    private final int[] x0, x1, y0, y1;
+
+    /** Local BMU of each tile, by storage index (-1 if none), and its distance to the input. */
+    private final int[] localBest;
+    private final double[] localDistance;
+
+    /** Cells (x * height + y) of each tile activated by the last adjustment. */
+    private final int[][] activated;
+    private final int[] activatedCount;
+
+    private final Control control;
+    private final Cleaner.Cleanable cleanable;
+    private final Throwable[] failures;
+
+    // Arguments of the current phase; published to the workers by the phaser
+    private int phase;
+    private VectorN input;
+    private PrototypeNeuron bmu;
+    private double alpha, scaledSigma;
+    private int[] windowX, windowY;
+    private int windowWidth, windowHeight;
+
+    /**
+     * Splits the lattice of a model into tiles and starts their worker threads.
+     * @param som the model
+     * @param workers the number of workers (tiles), including the calling thread
+     */
+    LatticeShards(UbiSOM som, int workers) {
+        this.som = som;
+        this.metricDistance = som.getMetricDistance();
+        this.height = som.getHeight();
+
+        int width = som.getWidth();
+        workers = Math.min(workers, width * height);
+
+        // Grid of tilesX x tilesY tiles, as square as possible in lattice units
+        int tilesX = 0;
+        double bestAspect = Double.POSITIVE_INFINITY;
+        for (int tx = 1; tx <= workers; ++tx) {
+            int ty = workers / tx;
+            if (workers % tx != 0 || tx > width || ty > height) continue;
+
+            double aspect = Math.abs(Math.log(((double) width / tx) / ((double) height / ty)));
+            if (aspect < bestAspect) {
+                bestAspect = aspect;
+                tilesX = tx;
+            }
+        }
+        if (tilesX == 0) {
+            // No factorization fits the lattice (e.g., a prime number of workers on a thin lattice)
+            tilesX = Math.min(workers, width);
+            workers = tilesX;
+        }
+        int tilesY = workers / tilesX;
+        this.workers = workers;
+
+        x0 = new int[workers]; x1 = new int[workers];
+        y0 = new int[workers]; y1 = new int[workers];
+        activated = new int[workers][];
+        for (int t = 0; t < workers; ++t) {
+            int tx = t / tilesY, ty = t % tilesY;
+            x0[t] = tx * width / tilesX;
+            x1[t] = (tx + 1) * width / tilesX;
+            y0[t] = ty * height / tilesY;
+            y1[t] = (ty + 1) * height / tilesY;
+            activated[t] = new int[(x1[t] - x0[t]) * (y1[t] - y0[t])];
+        }
+        activatedCount = new int[workers];
+        localBest = new int[workers];
+        localDistance = new double[workers];
+        failures = new Throwable[workers];
+
+        control = new Control(workers);
+        WeakReference<LatticeShards> reference = new WeakReference<>(this);
+        for (int t = 1; t < workers; ++t) {
+            Thread thread = new Thread(new Worker(control, reference, t), "UbiSOM-shard-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        cleanable = CLEANER.register(this, control);
+    }
+
+    /**
+     * Returns the number of workers, i.e., of tiles.
+     * @return the number of workers
+     */
+    int workers() {
+        return workers;
+    }
+
+    /**
+     * Computes the best matching unit for an input, searching all tiles in parallel.
+     * @param input the input
+     * @return the same BMU as <code>som.bestMatchingUnitFor(input)</code>
+     */
+    PrototypeNeuron bestMatchingUnitFor(VectorN input) {
+        this.input = input;
+        run(SEARCH);
+
+        // Sequential search semantics: the first prototype is the BMU unless a strictly closer one exists,
+        // so a NaN distance to it makes it the BMU
+        PrototypeNeuron first = som.get(0);
+        if (Double.isNaN(metricDistance.distanceBetween(first.getPrototype(), input))) {
+            return first;
+        }
+
+        int best = -1;
+        double minDist = Double.NaN;
+        for (int t = 0; t < workers; ++t) {
+            int index = localBest[t];
+            if (index < 0) continue;
+            double dist = localDistance[t];
+            if (best < 0 || dist < minDist || (dist == minDist && index < best)) {
+                best = index;
+                minDist = dist;
+            }
+        }
+        return best < 0 ? first : som.get(best);
+    }
+
+    /**
+     * Adjusts, in parallel, the prototypes within a neighborhood window.
+     * @param bmu the best matching unit
+     * @param input the input
+     * @param alpha the learning rate
+     * @param scaledSigma the neighborhood radius, in lattice units
+     * @param windowX the window columns
+     * @param windowWidth the number of window columns
+     * @param windowY the window rows
+     * @param windowHeight the number of window rows
+     */
+    void adjust(PrototypeNeuron bmu, VectorN input, double alpha, double scaledSigma,
+                int[] windowX, int windowWidth, int[] windowY, int windowHeight) {
+        this.bmu = bmu;
+        this.input = input;
+        this.alpha = alpha;
+        this.scaledSigma = scaledSigma;
+        this.windowX = windowX;
+        this.windowWidth = windowWidth;
+        this.windowY = windowY;
+        this.windowHeight = windowHeight;
+        run(ADJUST);
+    }
+
+    /**
+     * Returns the number of neurons of a tile activated by the last adjustment.
+     * @param tile the tile
+     * @return the number of activated neurons
+     */
+    int activatedCount(int tile) {
+        return activatedCount[tile];
+    }
+
+    /**
+     * Returns the cells (x * height + y) of a tile activated by the last adjustment, in the first
+     * {@link #activatedCount(int)} positions.
+     * @param tile the tile
+     * @return the activated cells
+     */
+    int[] activated(int tile) {
+        return activated[tile];
+    }
+
+    /**
+     * Stops the worker threads. This object cannot be used afterwards.
+     */
+    void shutdown() {
+        cleanable.clean();
+    }
+
+    private void run(int phase) {
+        this.phase = phase;
+
+        Phaser phaser = control.phaser;
+        phaser.arriveAndAwaitAdvance();
+        execute(0);
+        phaser.arriveAndAwaitAdvance();
+
+        // The first failure is rethrown; all are cleared, so they do not resurface in later phases
+        Throwable failure = null;
+        for (int t = 0; t < workers; ++t) {
+            if (failure == null) {
+                failure = failures[t];
+            }
+            failures[t] = null;
+        }
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new IllegalStateException(failure);
+    }
+
+    private void execute(int tile) {
+        try {
+            if (phase == SEARCH) {
+                searchTile(tile);
+            } else {
+                adjustTile(tile);
+            }
+        } catch (Throwable e) {
+            // Recorded, so that every worker still reaches the barrier and the failure is rethrown by run()
+            failures[tile] = e;
+        }
+    }
+
+    private void searchTile(int tile) {
+        int best = -1;
+        double minDist = Double.NaN;
+        for (int x = x0[tile]; x < x1[tile]; ++x) {
+            for (int y = y0[tile]; y < y1[tile]; ++y) {
+                double dist = metricDistance.distanceBetween(som.get(x, y).getPrototype(), input);
+                if (Double.isNaN(dist)) continue;
+
+                int index = som.indexOf(x, y);
+                if (best < 0 || dist < minDist || (dist == minDist && index < best)) {
+                    best = index;
+                    minDist = dist;
+                }
+            }
+        }
+        localBest[tile] = best;
+        localDistance[tile] = minDist;
+    }
+
+    private void adjustTile(int tile) {
+        int count = 0;
+        int[] cells = activated[tile];
+        for (int i = 0; i < windowWidth; ++i) {
+            int x = windowX[i];
+            if (x < x0[tile] || x >= x1[tile]) continue;
+
+            for (int j = 0; j < windowHeight; ++j) {
+                int y = windowY[j];
+                if (y < y0[tile] || y >= y1[tile]) continue;
+
+                if (som.adjustPrototype(bmu, som.get(x, y), input, alpha, scaledSigma)) {
+                    cells[count++] = x * height + y;
+                }
+            }
+        }
+        activatedCount[tile] = count;
+    }
+
+    /**
+     * Synchronization shared with the worker threads; it does not reference the shards. Running it stops the worker
+     * threads, in place of the calling thread, either on {@link #shutdown()} or once the shards are unreachable.
+     */
+    private static final class Control implements Runnable {
+        private final Phaser phaser;
+        private volatile boolean stopped;
+
+        Control(int workers) {
+            this.phaser = new Phaser(workers);
+        }
+
+        @Override
+        public void run() {
+            stopped = true;
+            phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Loop of a worker thread. The shards are only strongly referenced while a phase is executed.
+     */
+    private static final class Worker implements Runnable {
+        private final Control control;
+        private final WeakReference<LatticeShards> shards;
+        private final int tile;
+
+        Worker(Control control, WeakReference<LatticeShards> shards, int tile) {
+            this.control = control;
+            this.shards = shards;
+            this.tile = tile;
+        }
+
+        @Override
+        public void run() {
+            Phaser phaser = control.phaser;
+            while (true) {
+                phaser.arriveAndAwaitAdvance();
+                if (control.stopped) {
+                    phaser.arriveAndDeregister();
+                    return;
+                }
+
+                execute();
+                phaser.arriveAndAwaitAdvance();
+            }
+        }
+
+        private void execute() {
+            LatticeShards current = shards.get();
+            if (current != null) {
+                current.execute(tile);
+            }
+        }
+    }
+}
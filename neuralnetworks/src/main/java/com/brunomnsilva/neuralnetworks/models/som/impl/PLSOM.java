@@ -30,9 +30,6 @@ import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
 import com.brunomnsilva.neuralnetworks.models.som.NeighboringFunction;
 import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Implementation of (improved) PLSOM, by me, from article.
  *
@@ -44,7 +41,15 @@ public class PLSOM extends StreamingSOM {
 
     //////////////////////////////////////////////////////////////////////////
     //IMPROVED PLSOM
-    private List<VectorN> A;
+    // The reference set A has at most k members, kept in preallocated slots together with their
+    // pairwise distances, so that each input only requires the distances to the current members.
+    private VectorN[] members;
+    private double[][] memberDistances;
+    private int[] memberOrder;      // slots of the members of A, in insertion order
+    private boolean[] slotUsed;
+    private int memberCount;
+    private double[] inputDistances; // distances of the current input to each slot
+    private double diameter;         // diameter of A
     private double S;
     private int k;
     private final double neighborhoodRange;
@@ -68,7 +73,18 @@ public class PLSOM extends StreamingSOM {
 
     private void initPLSOMParameters() {
         k = 1 + getDimensionality();
-        A = new ArrayList<>();
+
+        members = new VectorN[k];
+        for (int i = 0; i < k; i++) {
+            members[i] = VectorN.zeros(getDimensionality());
+        }
+        memberDistances = new double[k][k];
+        memberOrder = new int[k];
+        slotUsed = new boolean[k];
+        memberCount = 0;
+        inputDistances = new double[k];
+        diameter = 0;
+
         S = -1;
     }
 
@@ -78,8 +94,7 @@ public class PLSOM extends StreamingSOM {
     }
 
     @Override
-    public void learn(VectorN input) {
-        PrototypeNeuron bmu = bestMatchingUnitFor(input);
+    protected void adapt(PrototypeNeuron bmu, VectorN input) {
         double quantizationError = getMetricDistance().distanceBetween(bmu.getPrototype(), input);
 
         double epsilon = epsilonValue(input, quantizationError);
@@ -102,9 +117,8 @@ public class PLSOM extends StreamingSOM {
             adjust.multiply(epsilon * neigh);
 
             p.getPrototype().add(adjust);
+            prototypeAdjusted(p);
         }
-
-        prototypesUpdated();
     }
 
     //////////////////////////////////////////////////////////////////////////
@@ -114,7 +128,7 @@ public class PLSOM extends StreamingSOM {
         double s = diameterOfSetUnionWith(input);
         if( s > S) {
             S = s;
-            contractSet(input);
+            contractSet();
             addSet(input);
         }
 
@@ -122,49 +136,48 @@ public class PLSOM extends StreamingSOM {
     }
 
     private double diameterOfSetUnionWith(VectorN input) {
-        // Calculates the largest distance between any two members
-        MetricDistance metricDistance = getMetricDistance();
-
-        List<VectorN> union = new ArrayList<>();
-        union.addAll(A);
-        union.add(input);
-
-        double maxDist = Double.MIN_VALUE;
+        // Calculates the largest distance between any two members of A and the input;
+        // the distances between members of A are already known
+        if(memberCount == 0)
+            return 0;
 
-        int setLen = union.size();
+        MetricDistance metricDistance = getMetricDistance();
 
-        if(setLen == 1)
-            return 0;
+        double maxDist = Math.max(Double.MIN_VALUE, diameter);
 
-        for(int i=0; i<setLen-1; i++) {
-            for(int j=i+1; j<setLen; j++) {
-                double dist = metricDistance.distanceBetween(union.get(i), union.get(j));
-                if( dist > maxDist) {
-                    maxDist = dist;
-                }
+        for(int i=0; i<memberCount; i++) {
+            int slot = memberOrder[i];
+            double dist = metricDistance.distanceBetween(members[slot], input);
+            inputDistances[slot] = dist;
+            if( dist > maxDist) {
+                maxDist = dist;
             }
         }
 
         return maxDist;
     }
 
-    private void contractSet(VectorN sample) {
-        while( A.size() >= k) {
-            VectorN closest = closestMemberOfSet(sample);
-            A.remove(closest);
+    private void contractSet() {
+        // Removes the members closest to the current input (distances computed by diameterOfSetUnionWith)
+        while( memberCount >= k) {
+            int closest = closestMemberOfSet();
+            if(closest < 0) break;
+
+            slotUsed[memberOrder[closest]] = false;
+            System.arraycopy(memberOrder, closest + 1, memberOrder, closest, memberCount - closest - 1);
+            memberCount--;
         }
     }
 
-    private VectorN closestMemberOfSet(VectorN input) {
+    private int closestMemberOfSet() {
         double minDist = Double.MAX_VALUE;
-        VectorN closest = null;
-        MetricDistance metricDistance = getMetricDistance();
+        int closest = -1;
 
-        for (VectorN v : A) {
-            double curDist = metricDistance.distanceBetween(v, input);
+        for (int i = 0; i < memberCount; i++) {
+            double curDist = inputDistances[memberOrder[i]];
             if( curDist < minDist) {
                 minDist = curDist;
-                closest = v;
+                closest = i;
             }
         }
 
@@ -172,7 +185,39 @@ public class PLSOM extends StreamingSOM {
     }
 
     private void addSet(VectorN input) {
-        A.add(input);
+        int slot = freeSlot();
+        slotUsed[slot] = true;
+
+        VectorN member = members[slot];
+        for (int d = 0; d < input.dimensions(); d++) {
+            member.set(d, input.get(d));
+        }
+
+        for (int i = 0; i < memberCount; i++) {
+            int other = memberOrder[i];
+            memberDistances[slot][other] = inputDistances[other];
+            memberDistances[other][slot] = inputDistances[other];
+        }
+        memberOrder[memberCount++] = slot;
+
+        // Members changed; recompute the diameter from the known distances
+        diameter = 0;
+        for (int i = 0; i < memberCount - 1; i++) {
+            double[] row = memberDistances[memberOrder[i]];
+            for (int j = i + 1; j < memberCount; j++) {
+                if(row[memberOrder[j]] > diameter) {
+                    diameter = row[memberOrder[j]];
+                }
+            }
+        }
+    }
+
+    private int freeSlot() {
+        // There are at most k members, and the set was contracted before adding
+        for (int slot = 0; slot < k; slot++) {
+            if(!slotUsed[slot]) return slot;
+        }
+        throw new IllegalStateException("No free slot in the reference set.");
     }
 
 }
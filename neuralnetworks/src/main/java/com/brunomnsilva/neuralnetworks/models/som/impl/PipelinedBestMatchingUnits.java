@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ * Ubiquitous Neural Networks | Copyright 2023  brunomnsilva@gmail.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.brunomnsilva.neuralnetworks.models.som.impl;
+
+import com.brunomnsilva.neuralnetworks.core.VectorN;
+import com.brunomnsilva.neuralnetworks.models.som.CodebookSnapshot;
+import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The search stage of a two-stage pipeline that learns a stream of inputs.
+ * <br/>
+ * While the learning thread adapts the model to an input, a dedicated search thread computes the best matching unit
+ * of the next input against a {@link CodebookSnapshot}, published right before. When the learning thread requests
+ * that BMU, the candidate is the closest of all prototypes not adjusted in the meantime; it is then verified against
+ * the adjusted ones, or recomputed if it was itself adjusted. The result is exactly the BMU that
+ * {@link SelfOrganizingMap#bestMatchingUnitFor(VectorN)} would return, including its tie-breaking by storage order.
+ * <br/>
+ * The search thread only references the snapshots, not the model, so a model that is dropped without calling
+ * {@link #shutdown()} does not keep it alive: it is stopped once this object is garbage collected. Any failure of a
+ * search, including an {@link Error}, is rethrown to the learning thread.
+ *
+ * @author brunomnsilva
+ */
+final class PipelinedBestMatchingUnits {
+
+    /** Iterations to spin before parking, while waiting for the other stage. */
+    private static final int SPINS = 1 << 10;
+
+    /** Stops the search threads of the instances that become unreachable. */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final SelfOrganizingMap som;
+    private final MetricDistance metricDistance;
+    private final int height;
+    private final Search search;
+    private final Cleaner.Cleanable cleanable;
+
+    /** Prototypes adjusted since the snapshot of the pending search, by storage index. */
+    private final boolean[] adjusted;
+    private final int[] adjustedList;
+    private int adjustedCount;
+
+    /** Input of the pending search. */
+    private VectorN input;
+
+    /**
+     * Starts the search thread of a model.
+     * @param som the model
+     */
+    PipelinedBestMatchingUnits(SelfOrganizingMap som) {
+        this.som = som;
+        this.metricDistance = som.getMetricDistance();
+        this.height = som.getHeight();
+
+        this.adjusted = new boolean[som.size()];
+        this.adjustedList = new int[som.size()];
+
+        this.search = new Search();
+        this.search.thread.start();
+        this.cleanable = CLEANER.register(this, search::stop);
+    }
+
+    /**
+     * Starts the search of the BMU of an input, against a snapshot of the model. The snapshot must reflect the current
+     * prototypes; adjustments from now on must be signaled with {@link #prototypeAdjusted(PrototypeNeuron)}.
+     * @param input the input
+     * @param snapshot the current snapshot of the model
+     */
+    void search(VectorN input, CodebookSnapshot snapshot) {
+        for (int k = 0; k < adjustedCount; ++k) {
+            adjusted[adjustedList[k]] = false;
+        }
+        adjustedCount = 0;
+
+        this.input = input;
+        search.input = input;
+        search.snapshot = snapshot;
+        search.learningThread = Thread.currentThread();
+        search.requested++;
+        LockSupport.unpark(search.thread);
+    }
+
+    /**
+     * Records that the prototype of a neuron was adjusted since the pending search started.
+     * @param neuron the adjusted neuron
+     */
+    void prototypeAdjusted(PrototypeNeuron neuron) {
+        int index = som.indexOf(neuron);
+        if (!adjusted[index]) {
+            adjusted[index] = true;
+            adjustedList[adjustedCount++] = index;
+        }
+    }
+
+    /**
+     * Waits for the pending search and returns the BMU of its input, given the current prototypes.
+     * @return the best matching unit
+     */
+    PrototypeNeuron bestMatchingUnit() {
+        long target = search.requested;
+        for (int spin = 0; search.completed != target; ++spin) {
+            if (spin < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+
+        Throwable failure = search.failure;
+        if (failure != null) {
+            search.failure = null;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new IllegalStateException(failure);
+        }
+
+        int candidateCell = search.candidateCell;
+        int best = som.indexOf(candidateCell / height, candidateCell % height);
+        if (adjusted[best]) {
+            return som.bestMatchingUnitFor(input);
+        }
+
+        double minDist = metricDistance.distanceBetween(som.get(best).getPrototype(), input);
+        if (Double.isNaN(minDist)) {
+            return som.bestMatchingUnitFor(input);
+        }
+
+        // The candidate is the closest of all unadjusted prototypes; only adjusted ones can now be closer
+        for (int k = 0; k < adjustedCount; ++k) {
+            int n = adjustedList[k];
+            double dist = metricDistance.distanceBetween(som.get(n).getPrototype(), input);
+
+            if (Double.isNaN(dist)) {
+                return som.bestMatchingUnitFor(input);
+            }
+            if (dist < minDist || (dist == minDist && n < best)) {
+                best = n;
+                minDist = dist;
+            }
+        }
+
+        return som.get(best);
+    }
+
+    /**
+     * Stops the search thread. This object cannot be used afterwards.
+     */
+    void shutdown() {
+        cleanable.clean();
+    }
+
+    /**
+     * Search request and result, shared with the search thread; it does not reference the model. The request and
+     * result fields are published through the volatile sequence numbers.
+     */
+    private static final class Search implements Runnable {
+        private final Thread thread;
+
+        private VectorN input;
+        private CodebookSnapshot snapshot;
+        private int candidateCell;
+        private Throwable failure;
+        private volatile long requested;
+        private volatile long completed;
+        private volatile Thread learningThread;
+        private volatile boolean stopped;
+
+        Search() {
+            this.thread = new Thread(this, "StreamingSOM-search");
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Stops the search thread, either on {@link #shutdown()} or once the search stage is unreachable.
+         */
+        void stop() {
+            stopped = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long done = 0;
+            while (true) {
+                for (int spin = 0; requested == done; ++spin) {
+                    if (stopped) return;
+
+                    if (spin < SPINS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                done = requested;
+
+                try {
+                    candidateCell = snapshot.bestMatchingCellFor(input);
+                } catch (Throwable e) {
+                    // Recorded, so that the learning thread is released and rethrows it
+                    failure = e;
+                }
+                input = null;
+                snapshot = null;
+
+                completed = done;
+                LockSupport.unpark(learningThread);
+            }
+        }
+    }
+}
@@ -24,18 +24,37 @@
 
 package com.brunomnsilva.neuralnetworks.models.som.impl;
 
+import com.brunomnsilva.neuralnetworks.core.Args;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.models.som.Lattice;
 import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.PrototypeOrdering;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 
 /**
  * An extension of the SelfOrganizingMap that learns from streaming data.
+ * <br/>
+ * Inputs can be learned one at a time, with {@link #learn(VectorN)}, or in micro-batches, with
+ * {@link #learnBatch(double[][])}; the latter notifies observers once per batch.
+ * <br/>
+ * Implementations provide the adaptation of the model to an input given its best matching unit, in
+ * {@link #adapt(PrototypeNeuron, VectorN)}, and must call {@link #prototypeAdjusted(PrototypeNeuron)} for every
+ * prototype they modify.
  *
  * @author brunomnsilva
  */
 public abstract class StreamingSOM extends SelfOrganizingMap {
 
+    /** Best matching units of the batch being learned, if any. */
+    private BatchBestMatchingUnits batch;
+
+    /** Search stage of the pipelined execution mode, if enabled. */
+    private PipelinedBestMatchingUnits pipeline;
+
+    /** Online hit counts, if enabled. */
+    private volatile HitCounts hitCounts;
+
     /**
      * Instantiates a new self-organizing map (SOM).
      * @param width the width of the 2d SOM lattice
@@ -50,6 +69,22 @@ public abstract class StreamingSOM extends SelfOrganizingMap {
         super(width, height, dimensionality, lattice, metricDistance);
     }
 
+    /**
+     * Instantiates a new self-organizing map (SOM), with a specific storage order of the prototypes.
+     * @param width the width of the 2d SOM lattice
+     * @param height the height of the 2d SOM lattice
+     * @param dimensionality the dimensionality of the SOM prototypes
+     * @param lattice the lattice shape
+     * @param metricDistance the metric distance to use to compute the best matching unit
+     * @param prototypeOrdering the order in which the prototypes are stored and iterated
+     * @throws IllegalArgumentException if width, height or dimensionality are not greater than 0;
+     *                                  if lattice, metricDistance or prototypeOrdering are null.
+     */
+    public StreamingSOM(int width, int height, int dimensionality, Lattice lattice, MetricDistance metricDistance,
+                        PrototypeOrdering prototypeOrdering) {
+        super(width, height, dimensionality, lattice, metricDistance, prototypeOrdering);
+    }
+
     /**
      * Instantiates a new self-organizing map (SOM) with default hexagonal shape lattice
      * and euclidean metric distance.
@@ -67,5 +102,179 @@ public abstract class StreamingSOM extends SelfOrganizingMap {
      * Learns (accommodates in its model) the input vector.
      * @param input the input vector
      */
-    public abstract void learn(VectorN input);
+    public void learn(VectorN input) {
+        learnWith(bestMatchingUnitFor(input), input);
+
+        prototypesUpdated();
+    }
+
+    /**
+     * Learns (accommodates in its model) a batch of input vectors, in order.
+     * <br/>
+     * The best matching units of the whole batch are searched in parallel and corrected, as each input is learned,
+     * for the prototypes adjusted by the previous ones; the resulting model is the same as learning each input with
+     * {@link #learn(VectorN)}. Observers are notified once, at the end of the batch.
+     * <br/>
+     * In the {@link #setPipelinedExecution() pipelined} mode, the search of each BMU overlaps instead with the
+     * adaptation to the previous input.
+     *
+     * @param inputs the input vectors, one per row
+     * @throws IllegalArgumentException if inputs is null or if any row does not match the model dimensionality
+     */
+    public void learnBatch(double[][] inputs) {
+        Args.nullNotPermitted(inputs, "inputs");
+
+        VectorN[] vectors = new VectorN[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            Args.nullNotPermitted(inputs[i], "inputs[i]");
+            Args.requireEqual(inputs[i].length, "inputs[i].length", getDimensionality(), "dimensionality");
+            vectors[i] = VectorN.fromArray(inputs[i]);
+        }
+
+        if(vectors.length == 0) return;
+
+        if(pipeline != null) {
+            learnPipelined(vectors);
+            prototypesUpdated();
+            return;
+        }
+
+        batch = new BatchBestMatchingUnits(this, vectors);
+        try {
+            for (int i = 0; i < vectors.length; i++) {
+                learnWith(batch.bestMatchingUnit(i), vectors[i]);
+            }
+        } finally {
+            batch = null;
+        }
+
+        prototypesUpdated();
+    }
+
+    private void learnPipelined(VectorN[] vectors) {
+        // Search stage: the BMU of input i+1 is searched against a snapshot while input i is adapted
+        publishSnapshot();
+        pipeline.search(vectors[0], snapshot());
+
+        for (int i = 0; i < vectors.length; i++) {
+            PrototypeNeuron bmu = pipeline.bestMatchingUnit();
+
+            if(i + 1 < vectors.length) {
+                publishSnapshot();
+                pipeline.search(vectors[i + 1], snapshot());
+            }
+
+            learnWith(bmu, vectors[i]);
+        }
+    }
+
+    /**
+     * Enables the pipelined execution mode of {@link #learnBatch(double[][])}.
+     * <br/>
+     * In this mode, the best matching unit of each input is searched by a dedicated thread, against a snapshot of the
+     * codebook, while the learning thread adapts the model to the previous input. The candidate is then verified
+     * against the prototypes adjusted in the meantime, and recomputed if it was itself adjusted, so the resulting
+     * model is exactly the same. With (at least) two cores available, the search and the adaptation overlap.
+     * <br/>
+     * The search thread lives until {@link #setSequentialExecution()} is called, or until the model is garbage
+     * collected.
+     */
+    public void setPipelinedExecution() {
+        setSequentialExecution();
+        pipeline = new PipelinedBestMatchingUnits(this);
+    }
+
+    /**
+     * Restores the default execution mode, stopping the search thread of the pipelined mode, if enabled.
+     */
+    public void setSequentialExecution() {
+        if(pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+
+    /**
+     * Checks whether the pipelined execution mode is enabled.
+     * @return true if the pipelined execution mode is enabled, false otherwise
+     */
+    public boolean isPipelinedExecution() {
+        return pipeline != null;
+    }
+
+    /**
+     * Enables online hit counts that decay exponentially with the number of learned inputs, replacing any
+     * previous hit counts.
+     * @param halfLife the number of learned inputs after which a hit counts half
+     * @throws IllegalArgumentException if halfLife is not positive and finite
+     * @see HitCounts#decaying(int, int, double)
+     */
+    public void setDecayingHitCounts(double halfLife) {
+        hitCounts = HitCounts.decaying(getWidth(), getHeight(), halfLife);
+    }
+
+    /**
+     * Enables online hit counts over a sliding window of the last learned inputs, replacing any previous hit counts.
+     * @param windowSize the number of most recent inputs counted
+     * @throws IllegalArgumentException if windowSize is lower than 1
+     * @see HitCounts#slidingWindow(int, int, int)
+     */
+    public void setSlidingWindowHitCounts(int windowSize) {
+        hitCounts = HitCounts.slidingWindow(getWidth(), getHeight(), windowSize);
+    }
+
+    /**
+     * Disables the online hit counts.
+     */
+    public void disableHitCounts() {
+        hitCounts = null;
+    }
+
+    /**
+     * Returns the online hit counts of the model, i.e., how many times each neuron was the BMU of the learned inputs.
+     * They are maintained at no extra search cost, since the BMU is already computed for learning.
+     * @return the hit counts, or <code>null</code> if they are not enabled
+     */
+    public HitCounts getHitCounts() {
+        return hitCounts;
+    }
+
+    /**
+     * Learns an input whose best matching unit is already known: records the BMU hit and adapts the model.
+     * All learning paths must go through this method.
+     * @param bmu the best matching unit for <code>input</code>
+     * @param input the input vector
+     */
+    protected final void learnWith(PrototypeNeuron bmu, VectorN input) {
+        HitCounts counts = hitCounts;
+        if(counts != null) {
+            counts.hit(bmu.getIndexX(), bmu.getIndexY());
+        }
+
+        adapt(bmu, input);
+    }
+
+    /**
+     * Adapts the model to the input vector, without notifying observers.
+     * @param bmu the best matching unit for <code>input</code>
+     * @param input the input vector
+     */
+    protected abstract void adapt(PrototypeNeuron bmu, VectorN input);
+
+    /**
+     * Must be called by implementations after modifying the prototype of a neuron, so that batch learning
+     * can keep track of the best matching units of the remaining inputs and snapshots only copy what changed.
+     * @param neuron the neuron whose prototype was modified
+     */
+    @Override
+    protected void prototypeAdjusted(PrototypeNeuron neuron) {
+        super.prototypeAdjusted(neuron);
+
+        if(batch != null) {
+            batch.prototypeAdjusted(neuron);
+        }
+        if(pipeline != null) {
+            pipeline.prototypeAdjusted(neuron);
+        }
+    }
 }
@@ -27,6 +27,15 @@ package com.brunomnsilva.neuralnetworks.models.som.impl;
 import com.brunomnsilva.neuralnetworks.core.*;
 import com.brunomnsilva.neuralnetworks.models.som.*;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
 /**
  * The Ubiquitous Self-Organizing Map (UbiSOM).
  * <br/>
@@ -42,8 +51,36 @@ import com.brunomnsilva.neuralnetworks.models.som.*;
  */
 public class UbiSOM extends StreamingSOM {
 
-    private final long[][] activityTimestamps;
-    private final long[][] bmuTimestamps;
+    /** Identifies the binary state files written by {@link #saveState(String)}; "UBSM". */
+    private static final int STATE_MAGIC = 0x5542534D;
+    private static final int STATE_VERSION = 1;
+    private static final byte STATE_ORDERING = 0;
+    private static final byte STATE_CONVERGING = 1;
+    /** Upper bound for the size of the state header, whose class names have at most 65535 bytes each. */
+    private static final int MAX_STATE_HEADER_SIZE = 1 << 18;
+    /** Size of the buffers through which the codebook is streamed. */
+    private static final int STATE_BUFFER_SIZE = 1 << 20;
+
+    /** Minimum lattice distance, in units of the neighborhood radius, for which the gaussian falls below 0.01. */
+    private static final double NEIGHBORHOOD_CUTOFF = StrictMath.sqrt(StrictMath.log(100));
+
+    // Per-neuron state is indexed by cell = x * height + y.
+    // Activity timestamps are kept lazily: instead of decrementing the timestamp of every unaffected
+    // neuron at each iteration, we store the iteration of the last activation of each neuron.
+    private long iteration;
+    private final long[] lastActivation;
+    private final long[] bmuTimestamps;
+
+    // Neurons activated during the last T iterations, as a doubly-linked list ordered by
+    // last activation (most recent first); the tail is the next neuron to expire.
+    private final int[] activePrevious;
+    private final int[] activeNext;
+    private final int activeSentinel;
+    private int activeNeuronCount;
+
+    private final int[] windowX;
+    private final int[] windowY;
+
     private final double latticeDiagonal;
     private final double dimensionalityRatio;
     private final double alpha_0, alpha_f, sigma_0, sigma_f, beta;
@@ -51,15 +88,43 @@ public class UbiSOM extends StreamingSOM {
 
     private UbiSOMState currentState;
 
-    private final AbstractRunningMeanFilter quantizationErrorRunningMean;
-    private final AbstractRunningMeanFilter activityRunningMean;
-    private final AbstractRunningMeanFilter driftRunningMean;
+    /** Tile-sharded execution, if enabled. */
+    private LatticeShards shards;
+
+    private final TripleCascadedMeanFilter quantizationErrorRunningMean;
+    private final SimpleRunningMeanFilter activityRunningMean;
+    private final TripleCascadedMeanFilter driftRunningMean;
 
     public UbiSOM(int width, int height, int dimensionality,
                   Lattice lattice, MetricDistance metricDistance,
                   double alpha_0, double alpha_f, double sigma_0, double sigma_f, double beta, int T) {
 
-        super(width, height, dimensionality, lattice, metricDistance);
+        this(width, height, dimensionality, lattice, metricDistance, PrototypeOrdering.LINEAR,
+                alpha_0, alpha_f, sigma_0, sigma_f, beta, T);
+    }
+
+    /**
+     * Instantiates a new UbiSOM, with a specific storage order of the prototypes.
+     * @param width the width of the 2d SOM lattice
+     * @param height the height of the 2d SOM lattice
+     * @param dimensionality the dimensionality of the SOM prototypes
+     * @param lattice the lattice shape
+     * @param metricDistance the metric distance to use to compute the best matching unit
+     * @param prototypeOrdering the order in which the prototypes are stored and iterated
+     * @param alpha_0 the initial learning rate
+     * @param alpha_f the final learning rate
+     * @param sigma_0 the initial neighborhood radius, as a fraction of the lattice diagonal
+     * @param sigma_f the final neighborhood radius, as a fraction of the lattice diagonal
+     * @param beta the weight of the quantization error, against the neuron activity, in the drift function
+     * @param T the length, in iterations, of the ordering state and of the running means
+     * @throws IllegalArgumentException if any of the learning parameters is negative;
+     *                                  if lattice, metricDistance or prototypeOrdering are null.
+     */
+    public UbiSOM(int width, int height, int dimensionality,
+                  Lattice lattice, MetricDistance metricDistance, PrototypeOrdering prototypeOrdering,
+                  double alpha_0, double alpha_f, double sigma_0, double sigma_f, double beta, int T) {
+
+        super(width, height, dimensionality, lattice, metricDistance, prototypeOrdering);
 
         Args.requireNonNegative(alpha_0, "alpha_0");
         Args.requireNonNegative(alpha_f, "alpha_f");
@@ -75,8 +140,15 @@ public class UbiSOM extends StreamingSOM {
         this.beta = beta;
         this.T = T;
 
-        activityTimestamps  = new long[width][height];
-        bmuTimestamps       = new long[width][height];
+        int neuronCount = width * height;
+        lastActivation  = new long[neuronCount];
+        bmuTimestamps   = new long[neuronCount];
+        activePrevious  = new int[neuronCount + 1];
+        activeNext      = new int[neuronCount + 1];
+        activeSentinel  = neuronCount;
+
+        windowX = new int[width];
+        windowY = new int[height];
 
         this.latticeDiagonal = StrictMath.sqrt( (width - 1)*(width - 1) + (height - 1)*(height - 1) );
         this.dimensionalityRatio = StrictMath.sqrt(dimensionality);
@@ -99,17 +171,25 @@ public class UbiSOM extends StreamingSOM {
         int width = getWidth();
         int height = getHeight();
 
-        // Reset activity timestamps
+        // Reset (randomize) prototypes
         for(int w=0; w < width; ++w) {
             for(int h=0; h < height; ++h) {
-                // Reset (randomize) prototypes
                 get(w, h).getPrototype().randomize();
-
-                // Reset timestamps
-                activityTimestamps[w][h] = 0;
-                bmuTimestamps[w][h] = 0;
+                prototypeAdjusted(get(w, h));
             }
         }
+
+        // Reset timestamps; all neurons start as activated at the current iteration
+        iteration = 0;
+        activePrevious[activeSentinel] = activeSentinel;
+        activeNext[activeSentinel] = activeSentinel;
+        activeNeuronCount = 0;
+        for(int cell = 0; cell < width * height; ++cell) {
+            lastActivation[cell] = 0;
+            bmuTimestamps[cell] = 0;
+            activePrevious[cell] = -1;
+            markActivated(cell);
+        }
         // Transition to ordering state
         setState(new UbiSOMStateOrdering(this, alpha_0, alpha_f,sigma_0, sigma_f, T));
     }
@@ -130,11 +210,92 @@ public class UbiSOM extends StreamingSOM {
         this.currentState = newState;
     }
 
+    @Override
+    protected void adapt(PrototypeNeuron bmu, VectorN input) {
+        currentState.process(bmu, input);
+    }
+
     @Override
     public void learn(VectorN input) {
-        PrototypeNeuron bmu = bestMatchingUnitFor(input);
+        if(shards == null) {
+            super.learn(input);
+            return;
+        }
 
-        currentState.process(bmu, input);
+        learnWith(shards.bestMatchingUnitFor(input), input);
+        prototypesUpdated();
+    }
+
+    @Override
+    public void learnBatch(double[][] inputs) {
+        if(shards == null) {
+            super.learnBatch(inputs);
+            return;
+        }
+
+        // The workers are already busy with each input; there is no point in searching several inputs ahead
+        Args.nullNotPermitted(inputs, "inputs");
+        for (double[] row : inputs) {
+            Args.nullNotPermitted(row, "inputs[i]");
+            Args.requireEqual(row.length, "inputs[i].length", getDimensionality(), "dimensionality");
+        }
+        if(inputs.length == 0) return;
+
+        for (double[] row : inputs) {
+            VectorN input = VectorN.fromArray(row);
+            learnWith(shards.bestMatchingUnitFor(input), input);
+        }
+        prototypesUpdated();
+    }
+
+    /**
+     * Enables the tile-sharded execution mode, meant for very large lattices.
+     * <br/>
+     * The lattice is split into rectangular tiles, each owned by a worker thread (the learning thread is one of them).
+     * For each input, workers search their local best matching unit in parallel, a reduction picks the global one
+     * and each worker adjusts the prototypes of its own tile. The learned model, activity and drift are the same as
+     * with the sequential execution.
+     * <br/>
+     * The worker threads live until {@link #setSequentialExecution()} is called, or until the model is garbage
+     * collected.
+     *
+     * @param workers the number of worker threads, including the learning thread; may be reduced to fit the lattice
+     * @throws IllegalArgumentException if workers is lower than 2
+     */
+    public void setShardedExecution(int workers) {
+        Args.requireGreaterEqualThan(workers, "workers", 2);
+
+        setSequentialExecution();
+        shards = new LatticeShards(this, workers);
+    }
+
+    /**
+     * Enables the tile-sharded execution mode with one worker per available processor.
+     * @see #setShardedExecution(int)
+     */
+    public void setShardedExecution() {
+        setShardedExecution(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Restores the default execution mode, stopping the worker threads of the sharded or pipelined modes, if enabled.
+     */
+    @Override
+    public void setSequentialExecution() {
+        super.setSequentialExecution();
+
+        if(shards != null) {
+            shards.shutdown();
+            shards = null;
+        }
+    }
+
+    /**
+     * Checks whether the tile-sharded execution mode is enabled.
+     * @return true if the tile-sharded execution mode is enabled, false otherwise
+     */
+    public boolean isShardedExecution() {
+        return shards != null;
     }
 
     @Override
@@ -146,9 +307,10 @@ public class UbiSOM extends StreamingSOM {
         // This method is called by the 'currentState' to effectively modify the SOM model.
         // Each state merely computes the 'alpha' and 'sigma' values to use.
 
-        // I changed my original implementation (where the timestamp was the current iteration number) to:
-        // - Set a timestamp of 0 (zero) to activated neurons during this learning iteration;
-        // - Decrement the timestamp of all others (i.e., those unaffected by prototype adjustment)
+        // The activity timestamp of a neuron is 0 (zero) if it was activated during the last learning iteration
+        // and is decremented for every iteration it is unaffected by prototype adjustment. It is not stored as such;
+        // it is derived from the global iteration counter and the iteration of the last activation of the neuron,
+        // so only the neurons within the neighborhood of the BMU are visited.
         //
         // Before (un-refactored implementation), the activity value of the lattice was computed during the BMU computation;
         // Now it is being performed during these prototype adjustments.
@@ -157,49 +319,47 @@ public class UbiSOM extends StreamingSOM {
         // Timestamp the BMU
         int bmuX = bmu.getIndexX();
         int bmuY = bmu.getIndexY();
-        bmuTimestamps[bmuX][bmuY] = activatedTimestamp;
-
-        // During the processing of each neuron, we must check the "recency" of activation during the
-        // last T iterations. We then compute the overall score, divided by the total number of neurons.
-        // In this refactored implementation, neurons whose timestamp > -T are deemed "activated" during T window size
-        int activeNeuronCount = 0;
+        bmuTimestamps[bmuX * height + bmuY] = activatedTimestamp;
+
+        // We must check the "recency" of activation during the last T iterations of all neurons.
+        // We then compute the overall score, divided by the total number of neurons.
+        // Neurons whose timestamp > -T are deemed "activated" during T window size; the others are expired here
+        // from the activation list, which is ordered by last activation.
+        expireInactiveNeurons();
+        int activeNeuronCount = this.activeNeuronCount;
         double totalNeuronCount = width * height;
 
-        for (PrototypeNeuron neuron : this) {
-
-            int x = neuron.getIndexX();
-            int y = neuron.getIndexY();
-
-            // Activity monitoring of previous weight adjustment
-            if(activityTimestamps[x][y] > -T) {
-                activeNeuronCount++;
+        ++iteration;
+
+        // Neurons outside the window are guaranteed to be unaffected by the adjustment
+        double scaledSigma = (sigma * (this.latticeDiagonal));
+        int radius = neighborhoodWindowRadius(scaledSigma);
+        boolean wraps = getLattice() instanceof TorusRectangularLattice || getLattice() instanceof TorusHexagonalLattice;
+        int windowWidth = neighborhoodWindow(bmuX, radius, width, wraps, windowX);
+        int windowHeight = neighborhoodWindow(bmuY, radius, height, wraps, windowY);
+
+        if(shards == null) {
+            for (int i = 0; i < windowWidth; ++i) {
+                for (int j = 0; j < windowHeight; ++j) {
+                    int x = windowX[i];
+                    int y = windowY[j];
+
+                    if(adjustPrototype(bmu, get(x, y), input, alpha, scaledSigma)) {
+                        neuronActivated(x, y, bmuX, bmuY);
+                    }
+                }
             }
-
-            // Weight adjustment
-            double dist = latticeDistanceBetween(bmu, neuron);
-            double scaledSigma = (sigma * (this.latticeDiagonal));
-
-            double neigh = NeighboringFunction.gaussian(dist, scaledSigma);
-
-            if( neigh > 1 || neigh < 0.01 || Double.isInfinite(neigh) || Double.isInfinite(-neigh)) {
-                // Decrement timestamp of unaffected neuron and do not adjust the prototype
-                activityTimestamps[x][y]--;
-                continue;
-            }
-
-            // Timestamp the activated neuron
-            activityTimestamps[x][y] = activatedTimestamp;
-            // Decrement the BMU activation, if not the BMU
-            if(x != bmuX && y != bmuY) {
-                bmuTimestamps[x][y]--;
+        } else {
+            // Prototypes are adjusted in parallel, tile by tile; the bookkeeping of the activated neurons
+            // is sequential. The order of activation within an iteration does not affect expiration
+            shards.adjust(bmu, input, alpha, scaledSigma, windowX, windowWidth, windowY, windowHeight);
+
+            for (int t = 0; t < shards.workers(); ++t) {
+                int[] cells = shards.activated(t);
+                for (int k = 0; k < shards.activatedCount(t); ++k) {
+                    neuronActivated(cells[k] / height, cells[k] % height, bmuX, bmuY);
+                }
             }
-
-            // Adjust prototype
-            VectorN delta = input.copy();
-            delta.subtract(neuron.getPrototype());
-            delta.multiply( alpha * neigh);
-
-            neuron.getPrototype().add(delta);
         }
 
         // Self-monitoring processing of model state regarding the underlying distribution
@@ -222,22 +382,457 @@ public class UbiSOM extends StreamingSOM {
 
         double driftValue = (this.beta * qe) + ( (1 - this.beta) * (1 - activity) );
         driftRunningMean.filter(driftValue);
+    }
 
-        prototypesUpdated();
+    /**
+     * Adjusts the prototype of a neuron towards an input, if it is affected by the neighborhood of the BMU.
+     * Touches no state other than the prototype, so it can be called concurrently for different neurons.
+     * @param bmu the best matching unit
+     * @param neuron the neuron to adjust
+     * @param input the input
+     * @param alpha the learning rate
+     * @param scaledSigma the neighborhood radius, in lattice units
+     * @return true if the neuron was affected (activated), false otherwise
+     */
+    boolean adjustPrototype(PrototypeNeuron bmu, PrototypeNeuron neuron, VectorN input, double alpha, double scaledSigma) {
+        // Weight adjustment
+        double dist = latticeDistanceBetween(bmu, neuron);
+
+        double neigh = NeighboringFunction.gaussian(dist, scaledSigma);
+
+        if( neigh > 1 || neigh < 0.01 || Double.isInfinite(neigh) || Double.isInfinite(-neigh)) {
+            // Unaffected neuron, do not adjust the prototype
+            return false;
+        }
+
+        // Adjust prototype
+        VectorN delta = input.copy();
+        delta.subtract(neuron.getPrototype());
+        delta.multiply( alpha * neigh);
+
+        neuron.getPrototype().add(delta);
+        return true;
+    }
+
+    /**
+     * Timestamps a neuron activated by the current adjustment.
+     * @param x the x coordinate of the neuron
+     * @param y the y coordinate of the neuron
+     * @param bmuX the x coordinate of the BMU
+     * @param bmuY the y coordinate of the BMU
+     */
+    private void neuronActivated(int x, int y, int bmuX, int bmuY) {
+        int cell = x * height + y;
+        markActivated(cell);
+        // Decrement the BMU activation, if not the BMU
+        if(x != bmuX && y != bmuY) {
+            bmuTimestamps[cell]--;
+        }
+        prototypeAdjusted(get(x, y));
     }
 
     public long getTimestampBMU(int x, int y) {
         Args.requireInRange(x, "x", 0, width - 1);
-        Args.requireInRange(x, "y", 0, height - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
 
-        return bmuTimestamps[x][y];
+        return bmuTimestamps[x * height + y];
     }
 
     public long getTimestampActivity(int x, int y) {
         Args.requireInRange(x, "x", 0, width - 1);
-        Args.requireInRange(x, "y", 0, height - 1);
+        Args.requireInRange(y, "y", 0, height - 1);
+
+        return lastActivation[x * height + y] - iteration;
+    }
+
+    /**
+     * Stamps a neuron as activated at the current iteration, moving it to the head of the activation list.
+     * @param cell the neuron cell index
+     */
+    private void markActivated(int cell) {
+        lastActivation[cell] = iteration;
+
+        if(activePrevious[cell] >= 0) {
+            // Unlink
+            activeNext[activePrevious[cell]] = activeNext[cell];
+            activePrevious[activeNext[cell]] = activePrevious[cell];
+        } else {
+            activeNeuronCount++;
+        }
+
+        // Link at head
+        int head = activeNext[activeSentinel];
+        activePrevious[cell] = activeSentinel;
+        activeNext[cell] = head;
+        activePrevious[head] = cell;
+        activeNext[activeSentinel] = cell;
+    }
+
+    /**
+     * Removes from the activation list the neurons that were not activated during the last T iterations.
+     */
+    private void expireInactiveNeurons() {
+        int tail = activePrevious[activeSentinel];
+        while(tail != activeSentinel && iteration - lastActivation[tail] >= T) {
+            int previous = activePrevious[tail];
+            activeNext[previous] = activeSentinel;
+            activePrevious[activeSentinel] = previous;
+            activePrevious[tail] = -1;
+            activeNeuronCount--;
+            tail = previous;
+        }
+    }
+
+    /**
+     * Computes the radius of the lattice window, around the BMU, that contains all neurons affected by an adjustment.
+     * @param scaledSigma the neighborhood radius, in lattice units
+     * @return the window radius, or <code>Integer.MAX_VALUE</code> if the whole lattice must be visited
+     */
+    private int neighborhoodWindowRadius(double scaledSigma) {
+        Lattice lattice = getLattice();
+        // The window is only valid for lattices whose distances are not lower than the Chebyshev distance
+        boolean bounded = lattice instanceof SimpleRectangularLattice || lattice instanceof SimpleHexagonalLattice
+                || lattice instanceof TorusRectangularLattice || lattice instanceof TorusHexagonalLattice;
+
+        if(!bounded || !(scaledSigma > 0) || Double.isInfinite(scaledSigma)) {
+            return Integer.MAX_VALUE;
+        }
+
+        double radius = Math.floor(scaledSigma * NEIGHBORHOOD_CUTOFF) + 1;
+        return radius < Math.max(width, height) ? (int)radius : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Fills the coordinates, along one lattice dimension, of a window centered on a BMU coordinate.
+     * @param center the BMU coordinate
+     * @param radius the window radius
+     * @param size the lattice size along the dimension
+     * @param wraps whether the lattice wraps around its borders
+     * @param coordinates the array to fill with the window coordinates
+     * @return the number of coordinates in the window
+     */
+    private static int neighborhoodWindow(int center, int radius, int size, boolean wraps, int[] coordinates) {
+        int count = 0;
+        if(radius >= size || (wraps && 2 * radius + 1 >= size)) {
+            for(int c = 0; c < size; ++c) {
+                coordinates[count++] = c;
+            }
+        } else if(wraps) {
+            for(int c = center - radius; c <= center + radius; ++c) {
+                coordinates[count++] = Math.floorMod(c, size);
+            }
+        } else {
+            for(int c = Math.max(0, center - radius); c <= Math.min(size - 1, center + radius); ++c) {
+                coordinates[count++] = c;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Saves the full state of the model to a compact binary file, so that it can be restored with
+     * {@link #loadState(String)}, e.g., to resume learning after a restart of the application.
+     * <br/>
+     * The state comprises the codebook, the activity and BMU timestamps, the buffers of the running mean filters
+     * (quantization error, activity and drift) and the current state (ordering or converging) with its counters.
+     * The file is written to a temporary file first and then moved, so an existing file is never left half-written.
+     *
+     * @param filename the name of the file
+     * @throws IOException if the file cannot be written
+     */
+    public void saveState(String filename) throws IOException {
+        Args.nullNotPermitted(filename, "filename");
+
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, stateHeader());
+
+            // Codebook, in lattice order, and timestamps, streamed through a direct buffer
+            ByteBuffer buffer = ByteBuffer.allocateDirect(STATE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int x = 0; x < width; ++x) {
+                for (int y = 0; y < height; ++y) {
+                    VectorN prototype = get(x, y).getPrototype();
+                    for (int d = 0; d < dimensionality; ++d) {
+                        flushIfFull(channel, buffer, Double.BYTES);
+                        buffer.putDouble(prototype.get(d));
+                    }
+                }
+            }
+            for (long timestamp : lastActivation) {
+                flushIfFull(channel, buffer, Long.BYTES);
+                buffer.putLong(timestamp);
+            }
+            for (long timestamp : bmuTimestamps) {
+                flushIfFull(channel, buffer, Long.BYTES);
+                buffer.putLong(timestamp);
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+
+            writeFully(channel, stateTail());
+            channel.force(false);
+        }
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the header and configuration, validated when loading, followed by the iteration counter.
+     */
+    private ByteBuffer stateHeader() {
+        byte[] latticeName = getLattice().getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] metricName = getMetricDistance().getClass().getName().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + 5 * Double.BYTES
+                + 2 * Integer.BYTES + latticeName.length + metricName.length
+                + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(STATE_MAGIC).putInt(STATE_VERSION);
+        buffer.putInt(width).putInt(height).putInt(dimensionality).putInt(T);
+        buffer.putDouble(alpha_0).putDouble(alpha_f).putDouble(sigma_0).putDouble(sigma_f).putDouble(beta);
+        buffer.putInt(latticeName.length).put(latticeName);
+        buffer.putInt(metricName.length).put(metricName);
+        buffer.putLong(iteration);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the activation list, most recent first, the buffers of the running mean filters and the current state.
+     */
+    private ByteBuffer stateTail() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + activeNeuronCount * Integer.BYTES
+                + quantizationErrorRunningMean.stateSize() + activityRunningMean.stateSize()
+                + driftRunningMean.stateSize()
+                + 1 + Double.BYTES + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(activeNeuronCount);
+        for (int cell = activeNext[activeSentinel]; cell != activeSentinel; cell = activeNext[cell]) {
+            buffer.putInt(cell);
+        }
+
+        quantizationErrorRunningMean.writeState(buffer);
+        activityRunningMean.writeState(buffer);
+        driftRunningMean.writeState(buffer);
+
+        if (currentState instanceof UbiSOMStateConverging) {
+            UbiSOMStateConverging converging = (UbiSOMStateConverging) currentState;
+            buffer.put(STATE_CONVERGING);
+            buffer.putDouble(converging.getDriftThreshold());
+            buffer.putInt(converging.getParametersHighCount());
+        } else {
+            buffer.put(STATE_ORDERING);
+            buffer.putDouble(0);
+            buffer.putInt(((UbiSOMStateOrdering) currentState).getProcessedIterations());
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Restores the full state of the model from a file written by {@link #saveState(String)}, so that learning resumes
+     * exactly where it stopped. The codebook is streamed through a direct buffer, so files of any size are read
+     * at disk speed.
+     * <br/>
+     * The model must have the same configuration as the saved one, i.e., the same lattice size, dimensionality,
+     * learning parameters, lattice shape and metric distance. Observers are notified afterwards.
+     *
+     * @param filename the name of the file
+     * @throws IOException if the file cannot be read or is not a valid state file
+     * @throws IllegalArgumentException if the saved model has a different configuration
+     */
+    public void loadState(String filename) throws IOException {
+        Args.nullNotPermitted(filename, "filename");
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            readState(channel);
+        } catch (BufferUnderflowException | EOFException e) {
+            throw new IOException("Truncated UbiSOM state file: " + filename, e);
+        }
+
+        prototypesUpdated();
+    }
+
+    private void readState(FileChannel channel) throws IOException {
+        ByteBuffer header = read(channel, 0, (int) Math.min(channel.size(), MAX_STATE_HEADER_SIZE));
+        if (header.getInt() != STATE_MAGIC) {
+            throw new IOException("Not a UbiSOM state file.");
+        }
+        int version = header.getInt();
+        if (version != STATE_VERSION) {
+            throw new IOException("Unsupported UbiSOM state file version: " + version);
+        }
+
+        Args.requireEqual(header.getInt(), "saved width", width, "width");
+        Args.requireEqual(header.getInt(), "saved height", height, "height");
+        Args.requireEqual(header.getInt(), "saved dimensionality", dimensionality, "dimensionality");
+        Args.requireEqual(header.getInt(), "saved T", T, "T");
+        requireSameParameter(header.getDouble(), alpha_0, "alpha_0");
+        requireSameParameter(header.getDouble(), alpha_f, "alpha_f");
+        requireSameParameter(header.getDouble(), sigma_0, "sigma_0");
+        requireSameParameter(header.getDouble(), sigma_f, "sigma_f");
+        requireSameParameter(header.getDouble(), beta, "beta");
+        requireSameClass(header, getLattice(), "lattice");
+        requireSameClass(header, getMetricDistance(), "metric distance");
+
+        // Validate the remainder of the file before modifying the model
+        int neuronCount = width * height;
+        long savedIteration = header.getLong();
+        long codebookPosition = header.position();
+        long tailPosition = codebookPosition + (long) neuronCount * dimensionality * Double.BYTES
+                + 2L * neuronCount * Long.BYTES;
+        long tailSize = channel.size() - tailPosition;
+        if (tailSize < 0) {
+            throw new EOFException();
+        }
+        ByteBuffer tail = read(channel, tailPosition, (int) Math.min(tailSize, Integer.MAX_VALUE));
+
+        int savedActiveCount = tail.getInt();
+        Args.requireInRange(savedActiveCount, "saved active neuron count", 0, neuronCount);
+        int[] savedActive = new int[savedActiveCount];
+        for (int k = 0; k < savedActiveCount; ++k) {
+            savedActive[k] = tail.getInt();
+            Args.requireInRange(savedActive[k], "saved active neuron", 0, neuronCount - 1);
+        }
 
-        return activityTimestamps[x][y];
+        int filtersPosition = tail.position();
+        new TripleCascadedMeanFilter(quantizationErrorRunningMean.getName(), T).readState(tail);
+        new SimpleRunningMeanFilter(activityRunningMean.getName(), T).readState(tail);
+        new TripleCascadedMeanFilter(driftRunningMean.getName(), T).readState(tail);
+
+        byte stateKind = tail.get();
+        double driftThreshold = tail.getDouble();
+        int stateIterations = tail.getInt();
+        if (stateKind != STATE_ORDERING && stateKind != STATE_CONVERGING) {
+            throw new IOException("Invalid UbiSOM state: " + stateKind);
+        }
+
+        // Codebook and timestamps
+        ByteBuffer buffer = ByteBuffer.allocateDirect(STATE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.limit(0);
+        channel.position(codebookPosition);
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                PrototypeNeuron neuron = get(x, y);
+                VectorN prototype = neuron.getPrototype();
+                for (int d = 0; d < dimensionality; ++d) {
+                    fill(channel, buffer, Double.BYTES);
+                    prototype.set(d, buffer.getDouble());
+                }
+                prototypeAdjusted(neuron);
+            }
+        }
+
+        iteration = savedIteration;
+        for (int cell = 0; cell < neuronCount; ++cell) {
+            fill(channel, buffer, Long.BYTES);
+            lastActivation[cell] = buffer.getLong();
+        }
+        for (int cell = 0; cell < neuronCount; ++cell) {
+            fill(channel, buffer, Long.BYTES);
+            bmuTimestamps[cell] = buffer.getLong();
+        }
+
+        // Activation list, rebuilt in the saved order
+        for (int cell = 0; cell < neuronCount; ++cell) {
+            activePrevious[cell] = -1;
+        }
+        int previous = activeSentinel;
+        for (int cell : savedActive) {
+            activeNext[previous] = cell;
+            activePrevious[cell] = previous;
+            previous = cell;
+        }
+        activeNext[previous] = activeSentinel;
+        activePrevious[activeSentinel] = previous;
+        activeNeuronCount = savedActiveCount;
+
+        // Running means and learning state
+        tail.position(filtersPosition);
+        quantizationErrorRunningMean.readState(tail);
+        activityRunningMean.readState(tail);
+        driftRunningMean.readState(tail);
+
+        if (stateKind == STATE_CONVERGING) {
+            UbiSOMStateConverging converging = new UbiSOMStateConverging(this, alpha_0, alpha_f, sigma_0, sigma_f,
+                    T, driftThreshold);
+            converging.setParametersHighCount(stateIterations);
+            setState(converging);
+        } else {
+            UbiSOMStateOrdering ordering = new UbiSOMStateOrdering(this, alpha_0, alpha_f, sigma_0, sigma_f, T);
+            ordering.setProcessedIterations(stateIterations);
+            setState(ordering);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void flushIfFull(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Ensures that <code>buffer</code> has at least <code>bytes</code> remaining, refilling it from the channel.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+    private static void requireSameParameter(double saved, double value, String name) {
+        if (Double.compare(saved, value) != 0) {
+            throw new IllegalArgumentException(String.format("Require saved %s (%f) and %s (%f) to be equal.",
+                    name, saved, name, value));
+        }
+    }
+
+    private static void requireSameClass(ByteBuffer buffer, Object instance, String name) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] savedName = new byte[length];
+        buffer.get(savedName);
+
+        String saved = new String(savedName, StandardCharsets.UTF_8);
+        if (!saved.equals(instance.getClass().getName())) {
+            throw new IllegalArgumentException(String.format("Require saved %s (%s) and %s (%s) to be equal.",
+                    name, saved, name, instance.getClass().getName()));
+        }
     }
 
     public double getCurrentDriftValue() {
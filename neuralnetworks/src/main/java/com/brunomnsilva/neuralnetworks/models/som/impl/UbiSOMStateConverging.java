@@ -98,6 +98,31 @@ public class UbiSOMStateConverging extends UbiSOMState {
         }
     }
 
+    /**
+     * Returns the maximum drift value allowed in this state.
+     * @return the drift threshold
+     */
+    double getDriftThreshold() {
+        return driftThreshold;
+    }
+
+    /**
+     * Returns the number of consecutive iterations with the learning parameters at their highest values.
+     * @return the number of consecutive iterations with high parameters
+     */
+    int getParametersHighCount() {
+        return parametersHighCount;
+    }
+
+    /**
+     * Sets the number of consecutive iterations with the learning parameters at their highest values,
+     * when restoring a saved model.
+     * @param parametersHighCount the number of consecutive iterations with high parameters
+     */
+    void setParametersHighCount(int parametersHighCount) {
+        this.parametersHighCount = parametersHighCount;
+    }
+
     private double computeAlpha(double drift) {
         if (drift > driftThreshold) {
             return alphaF;
@@ -80,6 +80,22 @@ public class UbiSOMStateOrdering extends UbiSOMState {
         }
     }
 
+    /**
+     * Returns the number of iterations processed in this state.
+     * @return the number of processed iterations
+     */
+    int getProcessedIterations() {
+        return processedIterations;
+    }
+
+    /**
+     * Sets the number of iterations processed in this state, when restoring a saved model.
+     * @param processedIterations the number of processed iterations
+     */
+    void setProcessedIterations(int processedIterations) {
+        this.processedIterations = processedIterations;
+    }
+
     @Override
     public String toString() {
         return "UbiSOMStateOrdering{" +
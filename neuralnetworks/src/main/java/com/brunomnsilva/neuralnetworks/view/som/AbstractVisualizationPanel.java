@@ -74,6 +74,9 @@ public abstract class AbstractVisualizationPanel extends JPanel implements Obser
     /** The ColorScalePanel from where to derive the depicted value's colors. */
     private ColorScalePanel colorScalePanel;
 
+    /** The (i) symbol, whose tooltip shows the description of the visualization. */
+    private JLabel infoLabel;
+
     /** Context menu for user interaction. */
     private JPopupMenu contextMenu;
 
@@ -157,6 +160,19 @@ public abstract class AbstractVisualizationPanel extends JPanel implements Obser
      */
     protected abstract String description();
 
+    /**
+     * Shows the current {@link #description()} in the panel's title. It is called at construction, so implementing
+     * classes whose description depends on their own fields should call it again once these are initialized.
+     */
+    protected final void updateDescription() {
+        String description = description();
+        if(description != null) {
+            infoLabel.setToolTipText(description);
+        } else {
+            infoLabel.setToolTipText("No available information.");
+        }
+    }
+
     /**
      * Can be used by implementing classes to add context menu actions.
      * @param menuItemName the menu item name
@@ -187,16 +203,10 @@ public abstract class AbstractVisualizationPanel extends JPanel implements Obser
         nameLabel.setForeground(LookAndFeel.colorFontTitle);
 
         // Information about the visualization while hovering over a (i) symbol.
-        JLabel infoLabel = new JLabel(" \u24d8", JLabel.CENTER);
+        infoLabel = new JLabel(" \u24d8", JLabel.CENTER);
         infoLabel.setFont(LookAndFeel.fontTitle);
         infoLabel.setForeground(LookAndFeel.colorFontTitle);
-
-        String description = description();
-        if(description != null) {
-            infoLabel.setToolTipText(description);
-        } else {
-            infoLabel.setToolTipText("No available information.");
-        }
+        updateDescription();
 
         // Put label and info at top
         JPanel hbox = new JPanel(new FlowLayout());
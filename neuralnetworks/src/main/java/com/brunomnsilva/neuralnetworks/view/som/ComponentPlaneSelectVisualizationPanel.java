@@ -25,7 +25,7 @@
 package com.brunomnsilva.neuralnetworks.view.som;
 
 import com.brunomnsilva.neuralnetworks.core.Args;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.CodebookSnapshot;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 
 /**
@@ -79,12 +79,15 @@ public class ComponentPlaneSelectVisualizationPanel extends AbstractVisualizatio
 
     @Override
     protected void updateGridValues(SelfOrganizingMap som, GenericGridPanel grid) {
-        for (PrototypeNeuron p : som) {
-            int x = p.getIndexX();
-            int y = p.getIndexY();
-            double value = p.getPrototype().values()[currentIndex];
+        // Consistent view of the prototypes, even if the model is learning concurrently
+        CodebookSnapshot snapshot = som.snapshot();
 
-            grid.set(value, x, y);
+        for (int x = 0; x < snapshot.getWidth(); x++) {
+            for (int y = 0; y < snapshot.getHeight(); y++) {
+                double value = snapshot.get(x, y, currentIndex);
+
+                grid.set(value, x, y);
+            }
         }
     }
 
@@ -24,23 +24,31 @@
 
 package com.brunomnsilva.neuralnetworks.view.som;
 
-import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
-import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.Projection;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
+import com.brunomnsilva.neuralnetworks.models.som.impl.HitCounts;
+import com.brunomnsilva.neuralnetworks.models.som.impl.StreamingSOM;
 
 /**
  * An implementation of the Hit-map visualization, where samples from a {@link Dataset} are projected onto a
  * {@link SelfOrganizingMap} and a "hit" means a BMU activation for a prototype. Hence, this visualization depicts
  * how many times the prototypes were chosen as the BMU for the input samples.
+ * <br/>
+ * The BMUs are taken from a {@link Projection}, which can be shared with other visualizations of the same dataset.
+ * <br/>
+ * For a {@link StreamingSOM} with online {@link HitCounts} enabled, the visualization can instead depict the hit
+ * counts maintained by the model while learning, which requires no dataset and no BMU searches.
  *
  * @author brunomnsilva
  */
 public class HitMapVisualizationPanel extends AbstractVisualizationPanel {
 
-    /** Additional reference to the Dataset held by this visualization. */
-    private final Dataset dataset;
+    /** Projection of the dataset held by this visualization; null when depicting online hit counts. */
+    private final Projection projection;
+
+    /** Buffer for the online hit counts of a StreamingSOM. */
+    private double[] hitCounts;
 
     /**
      * Default constructor.
@@ -48,26 +56,48 @@ public class HitMapVisualizationPanel extends AbstractVisualizationPanel {
      * @param dataset the Dataset with input samples to project onto the SelfOrganizingMap
      */
     public HitMapVisualizationPanel(SelfOrganizingMap som, Dataset dataset) {
+        this(new Projection(som, dataset));
+    }
+
+    /**
+     * Constructor for a (possibly shared) projection of a dataset.
+     * @param projection the projection of the dataset onto the SelfOrganizingMap to visualize
+     */
+    public HitMapVisualizationPanel(Projection projection) {
+        super(projection.getModel(), "Hit Map");
+
+        this.projection = projection;
+        updateDescription();
+    }
+
+    /**
+     * Constructor for the online hit counts of a StreamingSOM.
+     * @param som the StreamingSOM to visualize, with hit counts enabled
+     * @throws IllegalArgumentException if the hit counts of som are not enabled
+     */
+    public HitMapVisualizationPanel(StreamingSOM som) {
         super(som, "Hit Map");
 
-        this.dataset = dataset;
+        if(som.getHitCounts() == null) {
+            throw new IllegalArgumentException("Argument 'som' must have hit counts enabled for this visualization.");
+        }
+        this.projection = null;
     }
 
     @Override
     protected void updateGridValues(SelfOrganizingMap som, GenericGridPanel grid) {
-        // If recalled, the existing values will be incremented
-        // Should be initially set to zero
-        grid.resetValuesToZero();
-
-        for (DatasetItem item : dataset) {
-            VectorN input = item.getInput();
-            PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
+        if(projection == null) {
+            updateGridValuesFromHitCounts((StreamingSOM) som, grid);
+            return;
+        }
 
-            int x = bmu.getIndexX();
-            int y = bmu.getIndexY();
+        // BMUs are only searched if no other consumer of the projection did it for the current model
+        projection.refresh();
+        int[] hits = projection.hitCounts();
 
-            double count = grid.get(x, y);
-            grid.set(count + 1, x, y);
+        int height = som.getHeight();
+        for (int cell = 0; cell < hits.length; ++cell) {
+            grid.set(hits[cell], cell / height, cell % height);
         }
 
         // This will ensure that cells are filled proportionally
@@ -75,8 +105,28 @@ public class HitMapVisualizationPanel extends AbstractVisualizationPanel {
         grid.setValuesToSize(true);
     }
 
+    private void updateGridValuesFromHitCounts(StreamingSOM som, GenericGridPanel grid) {
+        HitCounts counts = som.getHitCounts();
+        if(counts == null) return;
+
+        if(hitCounts == null || hitCounts.length != som.getWidth() * som.getHeight()) {
+            hitCounts = new double[som.getWidth() * som.getHeight()];
+        }
+        counts.copyTo(hitCounts);
+
+        int height = som.getHeight();
+        for (int cell = 0; cell < hitCounts.length; ++cell) {
+            grid.set(hitCounts[cell], cell / height, cell % height);
+        }
+
+        grid.setValuesToSize(true);
+    }
+
     @Override
     protected String description() {
+        if(projection == null) {
+            return "Depicts how many times a neuron was recently selected as the BMU while learning (online hit counts).";
+        }
         return "Depicts how many times a neuron is selected as the BMU across the dataset.";
     }
 }
@@ -27,7 +27,9 @@ package com.brunomnsilva.neuralnetworks.view.som;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
 import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMapClusteringResult;
+import com.brunomnsilva.neuralnetworks.models.som.Projection;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
+import com.brunomnsilva.neuralnetworks.models.som.impl.StreamingSOM;
 import com.brunomnsilva.neuralnetworks.models.som.impl.UbiSOM;
 
 /**
@@ -112,6 +114,33 @@ public class SelfOrganizingMapVisualizationFactory {
         return panel;
     }
 
+    /**
+     * Creates a new instance of HitMapVisualizationPanel that depicts the online hit counts of a StreamingSOM.
+     * @see HitMapVisualizationPanel
+     * @see StreamingSOM#getHitCounts()
+     * @param som the StreamingSOM to visualize, with hit counts enabled
+     * @return a new instance of the visualization
+     */
+    public static HitMapVisualizationPanel createHitMap(StreamingSOM som) {
+        HitMapVisualizationPanel panel = new HitMapVisualizationPanel(som);
+        panel.update();
+        return panel;
+    }
+
+    /**
+     * Creates a new instance of HitMapVisualizationPanel over a projection, which can be shared with other
+     * visualizations so that the BMUs are computed only once.
+     * @see HitMapVisualizationPanel
+     * @see Projection
+     * @param projection the projection of a dataset onto the SelfOrganizingMap to visualize
+     * @return a new instance of the visualization
+     */
+    public static HitMapVisualizationPanel createHitMap(Projection projection) {
+        HitMapVisualizationPanel panel = new HitMapVisualizationPanel(projection);
+        panel.update();
+        return panel;
+    }
+
     /**
      * Creates a new instance of UMatrixVisualizationPanel.
      * @see UMatrixVisualizationPanel
@@ -137,6 +166,20 @@ public class SelfOrganizingMapVisualizationFactory {
         return panel;
     }
 
+    /**
+     * Creates a new instance of TargetOutputVisualizationPanel over a projection, which can be shared with other
+     * visualizations so that the BMUs are computed only once.
+     * @see TargetOutputVisualizationPanel
+     * @see Projection
+     * @param projection the projection of a dataset (with target outputs) onto the SelfOrganizingMap to visualize
+     * @return a new instance of the visualization
+     */
+    public static TargetOutputVisualizationPanel createTargetOutputProjection(Projection projection) {
+        TargetOutputVisualizationPanel panel = new TargetOutputVisualizationPanel(projection);
+        panel.update();
+        return panel;
+    }
+
     /**
      * Creates a new instance of NeuronActivityVisualizationPanel. This visualization is only available for the
      * {@link UbiSOM} model.
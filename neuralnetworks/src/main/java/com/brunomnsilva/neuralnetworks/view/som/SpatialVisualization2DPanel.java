@@ -27,6 +27,7 @@ package com.brunomnsilva.neuralnetworks.view.som;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
 import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
+import com.brunomnsilva.neuralnetworks.models.som.CodebookSnapshot;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 import com.brunomnsilva.neuralnetworks.view.LookAndFeel;
 import com.brunomnsilva.neuralnetworks.view.Point2D;
@@ -81,8 +82,10 @@ public class SpatialVisualization2DPanel extends AbstractSpatialVisualizationPan
         Graphics2D g2 = (Graphics2D) g;
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        int width = som.getWidth();
-        int height = som.getHeight();
+        // Consistent view of the prototypes, even if the model is learning concurrently
+        CodebookSnapshot snapshot = som.snapshot();
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
 
         // Repaint canvas with background color
         g2.setColor(LookAndFeel.colorBackground);
@@ -103,15 +106,10 @@ public class SpatialVisualization2DPanel extends AbstractSpatialVisualizationPan
         g.setColor(colorLattice);
         for(int w=1; w < width; ++w) {
             for (int h = 1; h < height; ++h) {
-                VectorN prototypeD = som.get(w, h).getPrototype();
-                VectorN prototypeA = som.get(w - 1, h - 1).getPrototype();
-                VectorN prototypeB = som.get(w, h - 1).getPrototype();
-                VectorN prototypeC = som.get(w - 1, h).getPrototype();
-
-                Point2D d = convertToAreaCoordinates(prototypeD.get(0), prototypeD.get(1), scrWidth, scrHeight);
-                Point2D a = convertToAreaCoordinates(prototypeA.get(0), prototypeA.get(1), scrWidth, scrHeight);
-                Point2D b = convertToAreaCoordinates(prototypeB.get(0), prototypeB.get(1), scrWidth, scrHeight);
-                Point2D c = convertToAreaCoordinates(prototypeC.get(0), prototypeC.get(1), scrWidth, scrHeight);
+                Point2D d = convertToAreaCoordinates(snapshot.get(w, h, 0), snapshot.get(w, h, 1), scrWidth, scrHeight);
+                Point2D a = convertToAreaCoordinates(snapshot.get(w - 1, h - 1, 0), snapshot.get(w - 1, h - 1, 1), scrWidth, scrHeight);
+                Point2D b = convertToAreaCoordinates(snapshot.get(w, h - 1, 0), snapshot.get(w, h - 1, 1), scrWidth, scrHeight);
+                Point2D c = convertToAreaCoordinates(snapshot.get(w - 1, h, 0), snapshot.get(w - 1, h, 1), scrWidth, scrHeight);
 
                 g.drawLine((int) a.x, (int) a.y, (int) b.x, (int) b.y);
                 g.drawLine((int) a.x, (int) a.y, (int) c.x, (int) c.y);
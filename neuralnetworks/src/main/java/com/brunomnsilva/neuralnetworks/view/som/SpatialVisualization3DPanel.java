@@ -27,7 +27,7 @@ package com.brunomnsilva.neuralnetworks.view.som;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
 import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.CodebookSnapshot;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 import com.brunomnsilva.neuralnetworks.view.LookAndFeel;
 import org.math.plot.Plot3DPanel;
@@ -116,18 +116,19 @@ public class SpatialVisualization3DPanel extends AbstractSpatialVisualizationPan
 
         /////////////////////////////////////////////////////////
         //DRAW SELF-ORGANIZING MAP
-        SelfOrganizingMap som = getSOM();
-        int width = som.getWidth();
-        int height = som.getHeight();
+        // Consistent view of the prototypes, even if the model is learning concurrently
+        CodebookSnapshot snapshot = getSOM().snapshot();
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
 
         double[][][] map = new double[width][height][3];
 
-        for (PrototypeNeuron p : som) {
-            int x = p.getIndexX();
-            int y = p.getIndexY();
-            map[x][y][0] = p.getPrototype().get(0);
-            map[x][y][1] = p.getPrototype().get(1);
-            map[x][y][2] = p.getPrototype().get(2);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                map[x][y][0] = snapshot.get(x, y, 0);
+                map[x][y][1] = snapshot.get(x, y, 1);
+                map[x][y][2] = snapshot.get(x, y, 2);
+            }
         }
 
         if(plotSOM == null) {
@@ -27,7 +27,7 @@ package com.brunomnsilva.neuralnetworks.view.som;
 import com.brunomnsilva.neuralnetworks.core.VectorN;
 import com.brunomnsilva.neuralnetworks.dataset.Dataset;
 import com.brunomnsilva.neuralnetworks.dataset.DatasetItem;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.Projection;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
 
 import java.util.Arrays;
@@ -58,6 +58,9 @@ public class TargetOutputVisualizationPanel extends AbstractVisualizationPanel {
     /** Additional reference to the Dataset held by this visualization. */
     private Dataset dataset;
 
+    /** Projection of the dataset, possibly shared with other visualizations. */
+    private final Projection projection;
+
     /** Map that translates all the different (hashed) target outputs to a numeric code value. */
     private final Map<Integer, Integer> targetOutputHashMapping;
 
@@ -70,9 +73,18 @@ public class TargetOutputVisualizationPanel extends AbstractVisualizationPanel {
      * @param dataset the Dataset with input samples (and target outputs) to project onto the SelfOrganizingMap
      */
     public TargetOutputVisualizationPanel(SelfOrganizingMap som, Dataset dataset) {
-        super(som, "Target Outputs");
+        this(new Projection(som, dataset));
+    }
+
+    /**
+     * Constructor for a (possibly shared) projection of a dataset.
+     * @param projection the projection of the dataset (with target outputs) onto the SelfOrganizingMap to visualize
+     */
+    public TargetOutputVisualizationPanel(Projection projection) {
+        super(projection.getModel(), "Target Outputs");
 
-        this.dataset = dataset;
+        this.projection = projection;
+        this.dataset = projection.getDataset();
         this.targetOutputHashMapping = new HashMap<>();
         /*this.targetOutputMapping = new HashMap<>();*/
 
@@ -96,14 +108,20 @@ public class TargetOutputVisualizationPanel extends AbstractVisualizationPanel {
             hashAndCodifyTargetOutputs(dataset);
         }
 
-        for (DatasetItem item : dataset) {
-            VectorN input = item.getInput();
-            VectorN output = item.getTargetOutput();
+        // BMUs are only searched if no other consumer of the projection did it for the current model
+        projection.refresh();
+        int height = som.getHeight();
 
-            PrototypeNeuron bmu = som.bestMatchingUnitFor(input);
+        for (int i = 0; i < dataset.size(); i++) {
+            VectorN output = dataset.get(i).getTargetOutput();
+
+            int bmu = projection.getBmuCell(i);
+            if(bmu < 0) {
+                continue; // no BMU, e.g., all distances are NaN
+            }
             int hash = Arrays.hashCode(output.values());
             int classValue = targetOutputHashMapping.get(hash);
-            grid.set(classValue, bmu.getIndexX(), bmu.getIndexY());
+            grid.set(classValue, bmu / height, bmu % height);
         }
 
         // Set number of steps for the colorscale to the same number of
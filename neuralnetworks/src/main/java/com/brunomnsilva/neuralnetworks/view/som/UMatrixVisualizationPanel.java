@@ -24,15 +24,9 @@
 
 package com.brunomnsilva.neuralnetworks.view.som;
 
-import com.brunomnsilva.neuralnetworks.core.VectorN;
-import com.brunomnsilva.neuralnetworks.models.som.Lattice;
-import com.brunomnsilva.neuralnetworks.models.som.MetricDistance;
-import com.brunomnsilva.neuralnetworks.models.som.PrototypeNeuron;
+import com.brunomnsilva.neuralnetworks.models.som.CodebookSnapshot;
 import com.brunomnsilva.neuralnetworks.models.som.SelfOrganizingMap;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import com.brunomnsilva.neuralnetworks.models.som.UMatrix;
 
 /**
  * An implementation of the U-Matrix visualization. It is an exploratory cluster analysis visualization.
@@ -58,6 +52,7 @@ import java.util.List;
  * the clustering structure of SOMs and to gain insights into the relationship between the input data and the SOM neurons.
  *
  * @see ComponentPlaneVisualizationPanel
+ * @see UMatrix
  *
  * @author brunomnsilva
  */
@@ -67,6 +62,9 @@ public class UMatrixVisualizationPanel extends AbstractVisualizationPanel {
 
     private Mode mode;
 
+    /** Kept between repaints, so that only the changed prototypes are revisited. */
+    private UMatrix uMatrix;
+
     public UMatrixVisualizationPanel(SelfOrganizingMap som, Mode mode) {
         super(som, "U-Matrix", som.getWidth(), som.getHeight());
 
@@ -97,72 +95,20 @@ public class UMatrixVisualizationPanel extends AbstractVisualizationPanel {
     }
 
     @Override
-    protected void updateGridValues(SelfOrganizingMap som, GenericGridPanel grid) {
-        int w = som.getWidth();
-        int h = som.getHeight();
-
-        // Neighbors depend on the lattice structure
-        Lattice lattice = som.getLattice();
-        List<Double> neighborDistances = new ArrayList<>();
-        // Use the same metric used to construct the model
-        MetricDistance metricDistance = som.getMetricDistance();
-
-        for (PrototypeNeuron neuron : som) {
-            int x = neuron.getIndexX();
-            int y = neuron.getIndexY();
-
-            for (int dx = -1; dx <= 1; dx++) {
-                for (int dy = -1; dy <= 1; dy++) {
-                    if (dx == 0 && dy == 0) {
-                        continue; // Skip the current prototype (no need to calculate distance to itself)
-                    }
-
-                    int neighborX = x + dx;
-                    int neighborY = y + dy;
-
-                    // Valid lattice coordinates
-                    if(neighborX >= 0 && neighborX < w && neighborY >= 0 && neighborY < h) {
-                        PrototypeNeuron neighbor = som.get(neighborX, neighborY);
-                        // Are effectively neighbors
-                        if(lattice.areNeighbors(neuron, neighbor)) {
-                            VectorN neuronPrototype = neuron.getPrototype();
-                            VectorN neighborPrototype = neighbor.getPrototype();
-
-                            double dist = metricDistance.distanceBetween(neuronPrototype, neighborPrototype);
-                            neighborDistances.add( dist );
-                        }
-                    }
-
-                }
-            }
-
-            double neuronValue = computeNeuronValue(neighborDistances, this.mode);
-            neighborDistances.clear();
-            grid.set(neuronValue, x, y);
-        }
-    }
-
-    private static double computeNeuronValue(List<Double> neighborDistances, Mode mode) {
-        int size = neighborDistances.size();
-
-        if(mode == Mode.MEAN) {
-            double sum = 0;
-            for (Double dist : neighborDistances) {
-                sum += dist;
-            }
-            return sum / size;
+    protected synchronized void updateGridValues(SelfOrganizingMap som, GenericGridPanel grid) {
+        // Consistent view of the prototypes, even if the model is learning concurrently;
+        // only the distances around prototypes changed since the last repaint are recomputed
+        CodebookSnapshot snapshot = som.snapshot();
+        if(uMatrix == null) {
+            uMatrix = new UMatrix(snapshot);
+        } else {
+            uMatrix.update(snapshot);
         }
 
-        Collections.sort(neighborDistances);
-
-        if(mode == Mode.MIN) return neighborDistances.get(0);
-        else if(mode == Mode.MAX) return neighborDistances.get( size - 1);
-        else { // MEDIAN
-            if(size % 2 == 0) {
-                return neighborDistances.get( size / 2 );
-            } else {
-                int middle = size / 2;
-                return (neighborDistances.get(middle) + neighborDistances.get(middle + 1)) / 2;
+        UMatrix.Aggregation aggregation = UMatrix.Aggregation.valueOf(mode.name());
+        for (int x = 0; x < uMatrix.getWidth(); x++) {
+            for (int y = 0; y < uMatrix.getHeight(); y++) {
+                grid.set(uMatrix.get(x, y, aggregation), x, y);
             }
         }
     }